@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.sql.DataSource;
+
+/**
+ * DBとドライバがサポートする機能の一覧です.
+ * DataSourceごとに一度だけ {@link DatabaseMetaData} から調べて保持し、複数スレッドから共有して使用します.
+ * 実行処理はこの一覧を参照して、失敗と再試行をせずに使用できる方法を選択します.
+ * <ul>
+ * <li>パラメータのメタデータ: ドライバが未サポートを通知した時点で、同じDataSourceでは使用しなくなります.</li>
+ * <li>自動採番値、バッチ実行時の自動採番値、複数行の VALUES 句、fetchSizeによる逐次読み出し: DB製品名とメタデータから判定します.</li>
+ * </ul>
+ */
+public final class Capabilities {
+
+  private static final Map<DataSource, Capabilities> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+
+  private final String productName;
+  private final boolean generatedKeys;
+  private final boolean batchKeys;
+  private final boolean multiRowValues;
+  private final boolean fetchSizeStreaming;
+  private volatile boolean parameterMetaData = true;
+
+  private Capabilities(String productName, boolean generatedKeys, boolean batchKeys, boolean multiRowValues,
+      boolean fetchSizeStreaming) {
+    this.productName = productName;
+    this.generatedKeys = generatedKeys;
+    this.batchKeys = batchKeys;
+    this.multiRowValues = multiRowValues;
+    this.fetchSizeStreaming = fetchSizeStreaming;
+  }
+
+  /**
+   * DataSourceの機能の一覧を取得します.
+   * 初回のみ指定されたコネクションから調べ、以降は同じインスタンスを返します.
+   * @param dataSource データソース. nullの場合はキャッシュせずに調べます
+   * @param conn 調べるために使用するコネクション
+   * @return 機能の一覧
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public static Capabilities of(DataSource dataSource, Connection conn) throws SQLException {
+    if (dataSource == null) {
+      return probe(conn);
+    }
+    Capabilities capabilities = CACHE.get(dataSource);
+    if (capabilities == null) {
+      capabilities = probe(conn);
+      Capabilities prev = CACHE.putIfAbsent(dataSource, capabilities);
+      capabilities = prev == null ? capabilities : prev;
+    }
+    return capabilities;
+  }
+
+  /**
+   * コネクションから機能の一覧を調べます.
+   * メタデータが取得できない場合は、すべての機能をサポートしているものとします.
+   * 個々の項目の取得でドライバがエラーを通知した場合は例外を送出せず、どのドライバでも動作する側に倒します.
+   * 自動採番値はサポートしているものとし、バッチ実行時の自動採番値は1行ずつ取得します.
+   * 調べた結果はキャッシュされるため、失敗しても検索のたびに調べ直すことはありません.
+   * @param conn 調べるために使用するコネクション
+   * @return 機能の一覧
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public static Capabilities probe(Connection conn) throws SQLException {
+    DatabaseMetaData meta = null;
+    if (conn != null) {
+      try {
+        meta = conn.getMetaData();
+      } catch (SQLException | RuntimeException e) {
+        // メタデータが取得できない場合と同じく扱う
+      }
+    }
+    if (meta == null) {
+      return new Capabilities("", true, true, true, true);
+    }
+    String name = null;
+    try {
+      name = meta.getDatabaseProductName();
+    } catch (SQLException | RuntimeException e) {
+      // 製品名による判定を行わない
+    }
+    String product = name == null ? "" : name.toLowerCase(Locale.ROOT);
+    boolean oracle = product.contains("oracle");
+    boolean generatedKeys = supports(meta::supportsGetGeneratedKeys, true);
+    boolean batchKeys = generatedKeys && supports(meta::supportsBatchUpdates, false) && !oracle
+        && !product.contains("microsoft") && !product.contains("derby");
+    boolean fetchSizeStreaming = !product.contains("mysql") && !product.contains("mariadb");
+    return new Capabilities(name == null ? "" : name, generatedKeys, batchKeys, !oracle, fetchSizeStreaming);
+  }
+
+  private static boolean supports(Probe probe, boolean fallback) {
+    try {
+      return probe.get();
+    } catch (SQLException | RuntimeException e) {
+      return fallback;
+    }
+  }
+
+  /**
+   * メタデータから機能の有無を取得する処理です.
+   */
+  @FunctionalInterface
+  private interface Probe {
+    boolean get() throws SQLException;
+  }
+
+  /**
+   * DB製品名を取得します.
+   * @return DB製品名. 取得できない場合は空文字
+   */
+  public String getProductName() {
+    return productName;
+  }
+
+  /**
+   * パラメータのメタデータを取得できるかどうかを判定します.
+   * @return 取得できる場合true
+   */
+  public boolean supportsParameterMetaData() {
+    return parameterMetaData;
+  }
+
+  /**
+   * パラメータのメタデータを取得できないことを記録します.
+   * ドライバが {@link java.sql.SQLFeatureNotSupportedException} を通知した場合に呼び出します.
+   */
+  public void disableParameterMetaData() {
+    parameterMetaData = false;
+  }
+
+  /**
+   * 自動採番値を取得できるかどうかを判定します.
+   * @return 取得できる場合true
+   */
+  public boolean supportsGeneratedKeys() {
+    return generatedKeys;
+  }
+
+  /**
+   * バッチ実行時に全行の自動採番値を取得できるかどうかを判定します.
+   * @return 取得できる場合true
+   */
+  public boolean supportsBatchKeys() {
+    return batchKeys;
+  }
+
+  /**
+   * 複数行の VALUES 句による挿入ができるかどうかを判定します.
+   * @return できる場合true
+   */
+  public boolean supportsMultiRowValues() {
+    return multiRowValues;
+  }
+
+  /**
+   * fetchSizeの指定で検索結果を少しずつ読み出せるかどうかを判定します.
+   * 読み出せない場合も、明示的に設定された fetchSize はドライバに渡します.
+   * @return 読み出せる場合true
+   */
+  public boolean supportsFetchSizeStreaming() {
+    return fetchSizeStreaming;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return String.format("Capabilities[product=%s, parameterMetaData=%s, generatedKeys=%s, batchKeys=%s, "
+        + "multiRowValues=%s, fetchSizeStreaming=%s]", productName, parameterMetaData, generatedKeys, batchKeys,
+        multiRowValues, fetchSizeStreaming);
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb;
+
+import java.util.Locale;
+
+import yamane.tritedb.cache.BoundedCache;
+import yamane.tritedb.sql.SqlScanner;
+
+/**
+ * 1行分の INSERT ... VALUES (?, ...) を、複数行分の VALUES (...), (...) に書き換えるクラスです.
+ * 書き換えたSQLは行数ごとに保持し、同じ行数のSQLは同じ文字列を返すため PreparedStatement キャッシュが有効に働きます.
+ * 呼び出し側は行数を一定の行数と2のべき乗に限定し、SQLの種類が増えないようにしてください.
+ * VALUES句が1つでない場合、VALUES句の外にパラメータがある場合など、書き換えられないSQLは {@link #isRewritable()} がfalseとなります.
+ */
+final class MultiRowInsert {
+
+  private final String prefix;
+  private final String group;
+  private final String suffix;
+  private final int parameterCount;
+  private final BoundedCache<Integer, String> shapes = new BoundedCache<>(32);
+
+  private MultiRowInsert(String prefix, String group, String suffix, int parameterCount) {
+    this.prefix = prefix;
+    this.group = group;
+    this.suffix = suffix;
+    this.parameterCount = parameterCount;
+  }
+
+  /**
+   * SQLを解析します.
+   * @param sql 1行分の挿入系SQL
+   * @return 解析結果
+   */
+  static MultiRowInsert parse(String sql) {
+    MultiRowInsert none = new MultiRowInsert(null, null, null, 0);
+    if (!sql.trim().toLowerCase(Locale.ROOT).startsWith("insert")) {
+      return none;
+    }
+    int values = -1;
+    for (int i = 0; i < sql.length(); i = SqlScanner.skip(sql, i)) {
+      if (sql.regionMatches(true, i, "values", 0, 6) && boundary(sql, i - 1) && boundary(sql, i + 6)) {
+        if (values >= 0) {
+          return none;
+        }
+        values = i + 6;
+      }
+    }
+    if (values < 0) {
+      return none;
+    }
+    int start = values;
+    while (start < sql.length() && Character.isWhitespace(sql.charAt(start))) {
+      start++;
+    }
+    if (start >= sql.length() || sql.charAt(start) != '(') {
+      return none;
+    }
+    int depth = 0;
+    int end = -1;
+    for (int i = start; i < sql.length() && end < 0; i = SqlScanner.skip(sql, i)) {
+      char c = sql.charAt(i);
+      if (c == '(') {
+        depth++;
+      } else if (c == ')' && --depth == 0) {
+        end = i + 1;
+      }
+    }
+    if (end < 0 || sql.substring(end).trim().startsWith(",")) {
+      return none;
+    }
+    String prefix = sql.substring(0, start);
+    String group = sql.substring(start, end);
+    String suffix = sql.substring(end);
+    int count = count(group);
+    if (count == 0 || count(prefix) > 0 || count(suffix) > 0) {
+      return none;
+    }
+    return new MultiRowInsert(prefix, group, suffix, count);
+  }
+
+  /**
+   * 複数行に書き換えられるかどうかを判定します.
+   * @return 書き換えられる場合true
+   */
+  boolean isRewritable() {
+    return parameterCount > 0;
+  }
+
+  /**
+   * 1行あたりのパラメータ数を取得します.
+   * @return 1行あたりのパラメータ数
+   */
+  int getParameterCount() {
+    return parameterCount;
+  }
+
+  /**
+   * 指定された行数分のVALUES句を持つSQLを取得します.
+   * @param rows 行数
+   * @return 書き換えたSQL
+   */
+  String sql(int rows) {
+    return shapes.computeIfAbsent(rows, (n) -> {
+      StringBuilder sb = new StringBuilder(prefix.length() + suffix.length() + (group.length() + 2) * n);
+      sb.append(prefix);
+      for (int i = 0; i < n; i++) {
+        sb.append(i == 0 ? "" : ", ").append(group);
+      }
+      return sb.append(suffix).toString();
+    });
+  }
+
+  private static int count(String sql) {
+    int count = 0;
+    for (int i = 0; i < sql.length(); i = SqlScanner.skip(sql, i)) {
+      if (sql.charAt(i) == '?') {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static boolean boundary(String sql, int index) {
+    return index < 0 || index >= sql.length() || !Character.isLetterOrDigit(sql.charAt(index))
+        && sql.charAt(index) != '_';
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Objects;
+
+/**
+ * Statementの生成時に設定する、取得行数のヒントやタイムアウトなどのオプションです.
+ * 設定されていない項目にはドライバのデフォルトが使用されます.
+ * インスタンスは変更不可で、with～メソッドは値を変更した新しいインスタンスを返します.
+ * <pre>
+ * QueryOptions options = QueryOptions.DEFAULT.withFetchSize(1000).withQueryTimeout(30);
+ * List&lt;Foo&gt; list = db.withOptions(options).selectList(mapper, sql);
+ * </pre>
+ */
+public final class QueryOptions {
+
+  /** すべての項目がドライバのデフォルトのオプション */
+  public static final QueryOptions DEFAULT = new QueryOptions(null, null, null, null, null, null);
+
+  private final Integer fetchSize;
+  private final Integer maxRows;
+  private final Integer queryTimeout;
+  private final Integer resultSetType;
+  private final Integer concurrency;
+  private final Integer fetchDirection;
+
+  private QueryOptions(Integer fetchSize, Integer maxRows, Integer queryTimeout, Integer resultSetType,
+      Integer concurrency, Integer fetchDirection) {
+    this.fetchSize = fetchSize;
+    this.maxRows = maxRows;
+    this.queryTimeout = queryTimeout;
+    this.resultSetType = resultSetType;
+    this.concurrency = concurrency;
+    this.fetchDirection = fetchDirection;
+  }
+
+  /**
+   * ResultSetから一度に取得する行数のヒントを設定したオプションを取得します.
+   * @param fetchSize 一度に取得する行数
+   * @return 新しいオプション
+   */
+  public QueryOptions withFetchSize(int fetchSize) {
+    return new QueryOptions(fetchSize, maxRows, queryTimeout, resultSetType, concurrency, fetchDirection);
+  }
+
+  /**
+   * ResultSetが保持する最大行数を設定したオプションを取得します.
+   * @param maxRows 最大行数（0の場合は無制限）
+   * @return 新しいオプション
+   */
+  public QueryOptions withMaxRows(int maxRows) {
+    return new QueryOptions(fetchSize, maxRows, queryTimeout, resultSetType, concurrency, fetchDirection);
+  }
+
+  /**
+   * SQLの実行を待つ時間の上限を設定したオプションを取得します.
+   * @param queryTimeout 待ち時間の上限（秒. 0の場合は無制限）
+   * @return 新しいオプション
+   */
+  public QueryOptions withQueryTimeout(int queryTimeout) {
+    return new QueryOptions(fetchSize, maxRows, queryTimeout, resultSetType, concurrency, fetchDirection);
+  }
+
+  /**
+   * ResultSetの種類を設定したオプションを取得します.
+   * 自動採番値を取得する更新系SQLには適用されません.
+   * @param resultSetType {@link ResultSet#TYPE_FORWARD_ONLY} など
+   * @return 新しいオプション
+   */
+  public QueryOptions withResultSetType(int resultSetType) {
+    return new QueryOptions(fetchSize, maxRows, queryTimeout, resultSetType, concurrency, fetchDirection);
+  }
+
+  /**
+   * ResultSetの並行処理モードを設定したオプションを取得します.
+   * 自動採番値を取得する更新系SQLには適用されません.
+   * @param concurrency {@link ResultSet#CONCUR_READ_ONLY} など
+   * @return 新しいオプション
+   */
+  public QueryOptions withConcurrency(int concurrency) {
+    return new QueryOptions(fetchSize, maxRows, queryTimeout, resultSetType, concurrency, fetchDirection);
+  }
+
+  /**
+   * ResultSetの行を処理する方向のヒントを設定したオプションを取得します.
+   * @param fetchDirection {@link ResultSet#FETCH_FORWARD} など
+   * @return 新しいオプション
+   */
+  public QueryOptions withFetchDirection(int fetchDirection) {
+    return new QueryOptions(fetchSize, maxRows, queryTimeout, resultSetType, concurrency, fetchDirection);
+  }
+
+  /**
+   * このオプションに、引数のオプションで設定されている項目を上書きしたオプションを取得します.
+   * @param other 上書きするオプション
+   * @return 新しいオプション
+   */
+  public QueryOptions merge(QueryOptions other) {
+    return new QueryOptions(
+        other.fetchSize != null ? other.fetchSize : fetchSize,
+        other.maxRows != null ? other.maxRows : maxRows,
+        other.queryTimeout != null ? other.queryTimeout : queryTimeout,
+        other.resultSetType != null ? other.resultSetType : resultSetType,
+        other.concurrency != null ? other.concurrency : concurrency,
+        other.fetchDirection != null ? other.fetchDirection : fetchDirection);
+  }
+
+  /**
+   * ResultSetから一度に取得する行数のヒントを取得します.
+   * @return 一度に取得する行数. 設定されていない場合はnull
+   */
+  public Integer getFetchSize() {
+    return fetchSize;
+  }
+
+  /**
+   * ResultSetが保持する最大行数を取得します.
+   * @return 最大行数. 設定されていない場合はnull
+   */
+  public Integer getMaxRows() {
+    return maxRows;
+  }
+
+  /**
+   * SQLの実行を待つ時間の上限を取得します.
+   * @return 待ち時間の上限（秒）. 設定されていない場合はnull
+   */
+  public Integer getQueryTimeout() {
+    return queryTimeout;
+  }
+
+  /**
+   * ResultSetの種類を取得します.
+   * @return ResultSetの種類. 設定されていない場合は {@link ResultSet#TYPE_FORWARD_ONLY}
+   */
+  public int getResultSetType() {
+    return resultSetType != null ? resultSetType : ResultSet.TYPE_FORWARD_ONLY;
+  }
+
+  /**
+   * ResultSetの並行処理モードを取得します.
+   * @return 並行処理モード. 設定されていない場合は {@link ResultSet#CONCUR_READ_ONLY}
+   */
+  public int getConcurrency() {
+    return concurrency != null ? concurrency : ResultSet.CONCUR_READ_ONLY;
+  }
+
+  /**
+   * ResultSetの行を処理する方向のヒントを取得します.
+   * @return 行を処理する方向. 設定されていない場合はnull
+   */
+  public Integer getFetchDirection() {
+    return fetchDirection;
+  }
+
+  /**
+   * ResultSetの種類か並行処理モードが、ドライバのデフォルトから変更されているかどうかを判定します.
+   * @return 変更されている場合true
+   */
+  public boolean hasResultSetType() {
+    return getResultSetType() != ResultSet.TYPE_FORWARD_ONLY || getConcurrency() != ResultSet.CONCUR_READ_ONLY;
+  }
+
+  /**
+   * Statementにオプションを設定します.
+   * reset がtrueの場合は、設定されていない項目をドライバのデフォルトに戻します.
+   * 再利用するStatementに、前回の実行時のオプションが残らないようにするために使用します.
+   * @param stmt 設定するStatement
+   * @param reset 設定されていない項目をデフォルトに戻すかどうか
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public void apply(Statement stmt, boolean reset) throws SQLException {
+    apply(stmt, reset, true);
+  }
+
+  /**
+   * Statementにオプションを設定します.
+   * fetchSizeで検索結果を少しずつ読み出せないドライバでは、効果のない fetchSize のデフォルトへの再設定を省略できます.
+   * 明示的に設定された fetchSize は、MySQLの Integer.MIN_VALUE による逐次読み出しなどに使われるため常に設定します.
+   * 省略できる場合でも、キャッシュしたStatementに以前の fetchSize が残っている場合はデフォルトに戻します.
+   * @param stmt 設定するStatement
+   * @param reset 設定されていない項目をデフォルトに戻すかどうか
+   * @param fetchSize 設定されていない fetchSize をデフォルトに戻すかどうか
+   * @throws SQLException DBがエラーを通知した場合
+   * @see Capabilities#supportsFetchSizeStreaming()
+   */
+  public void apply(Statement stmt, boolean reset, boolean fetchSize) throws SQLException {
+    if (this.fetchSize != null) {
+      stmt.setFetchSize(this.fetchSize);
+    } else if (reset && (fetchSize || stmt.getFetchSize() != 0)) {
+      stmt.setFetchSize(0);
+    }
+    if (maxRows != null || reset) {
+      stmt.setMaxRows(maxRows != null ? maxRows : 0);
+    }
+    if (queryTimeout != null || reset) {
+      stmt.setQueryTimeout(queryTimeout != null ? queryTimeout : 0);
+    }
+    if (fetchDirection != null || reset) {
+      stmt.setFetchDirection(fetchDirection != null ? fetchDirection : ResultSet.FETCH_FORWARD);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof QueryOptions)) {
+      return false;
+    }
+    QueryOptions other = (QueryOptions) obj;
+    return Objects.equals(fetchSize, other.fetchSize) && Objects.equals(maxRows, other.maxRows)
+        && Objects.equals(queryTimeout, other.queryTimeout) && Objects.equals(resultSetType, other.resultSetType)
+        && Objects.equals(concurrency, other.concurrency) && Objects.equals(fetchDirection, other.fetchDirection);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int hashCode() {
+    return Objects.hash(fetchSize, maxRows, queryTimeout, resultSetType, concurrency, fetchDirection);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return String.format("QueryOptions[fetchSize=%s, maxRows=%s, queryTimeout=%s, type=%d, concurrency=%d, direction=%s]",
+        fetchSize, maxRows, queryTimeout, getResultSetType(), getConcurrency(), fetchDirection);
+  }
+}
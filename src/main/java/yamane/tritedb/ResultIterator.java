@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import yamane.tritedb.utils.UncheckedSQLException;
+
+/**
+ * ResultSetを1行ずつMapperで変換しながら返すIteratorです.
+ * 検索結果をメモリ上にため込まないため、大量の行を扱う場合に使用します.
+ * 最終行まで読み終えた時点、またはclose()が呼ばれた時点でResultSetをクローズし、Statementを解放します.
+ * Iteratorの各メソッドで発生したSQLExceptionは {@link UncheckedSQLException} として送出されます.
+ * @param <T> 処理結果を格納する型
+ */
+public class ResultIterator<T> implements Iterator<T>, AutoCloseable {
+
+  private final TriteDbBase db;
+  private final Connection conn;
+  private final Statement stmt;
+  private final ResultSet rs;
+  private final ResultSetMetaData meta;
+  private final Mapper<T> mapper;
+  private final String sql;
+  private final Object[] params;
+  private boolean ownConnection;
+  private boolean fetched;
+  private boolean hasNext;
+  private boolean closed;
+
+  /**
+   * コンストラクタ.
+   * @param db 例外の変換などに使用するTriteDb
+   * @param conn コネクション
+   * @param stmt 実行済みのStatement
+   * @param rs 処理対象となるResultSet
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行したSQL
+   * @param params SQL実行時の可変パラメータ
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public ResultIterator(TriteDbBase db, Connection conn, Statement stmt, ResultSet rs, Mapper<T> mapper, String sql,
+      Object... params) throws SQLException {
+    this.db = db;
+    this.conn = conn;
+    this.stmt = stmt;
+    this.rs = rs;
+    this.meta = rs.getMetaData();
+    this.mapper = mapper;
+    this.sql = sql;
+    this.params = params;
+  }
+
+  /**
+   * close()時にコネクションもクローズするようにします.
+   * @return このインスタンス
+   */
+  public ResultIterator<T> ownConnection() {
+    this.ownConnection = true;
+    return this;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean hasNext() {
+    if (closed) {
+      return false;
+    }
+    if (!fetched) {
+      try {
+        hasNext = rs.next();
+        fetched = true;
+      } catch (SQLException e) {
+        throw fail(e);
+      }
+      if (!hasNext) {
+        closeUnchecked();
+      }
+    }
+    return hasNext;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    fetched = false;
+    try {
+      return mapper.map(rs, meta);
+    } catch (SQLException e) {
+      throw fail(e);
+    }
+  }
+
+  /**
+   * このIteratorを元にした逐次Streamを生成します.
+   * Streamをクローズした場合、このIteratorもクローズされます.
+   * @return Stream
+   */
+  public Stream<T> stream() {
+    Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED);
+    return StreamSupport.stream(spliterator, false).onClose(this::closeUnchecked);
+  }
+
+  /**
+   * ResultSetをクローズし、Statementを解放します.
+   * コネクションを所有している場合は、コネクションもクローズします.
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  @Override
+  public void close() throws SQLException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    SQLException error = null;
+    try {
+      rs.close();
+    } catch (SQLException e) {
+      error = e;
+    }
+    try {
+      db.release(conn, stmt);
+    } catch (SQLException e) {
+      error = error == null ? e : error;
+    }
+    if (ownConnection) {
+      try {
+        db.close(conn);
+      } catch (SQLException e) {
+        error = error == null ? e : error;
+      }
+    }
+    if (error != null) {
+      throw db.wrap(error, sql, params);
+    }
+  }
+
+  private void closeUnchecked() {
+    try {
+      close();
+    } catch (SQLException e) {
+      throw new UncheckedSQLException(e);
+    }
+  }
+
+  private UncheckedSQLException fail(SQLException cause) {
+    SQLException e = db.wrap(cause, sql, params);
+    try {
+      close();
+    } catch (SQLException suppressed) {
+      e.addSuppressed(suppressed);
+    }
+    return new UncheckedSQLException(e);
+  }
+}
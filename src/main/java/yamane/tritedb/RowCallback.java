@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb;
+
+import java.sql.SQLException;
+
+/**
+ * 検索結果を1行ずつ受け取るコールバックのインターフェイスです.
+ * @param <T> 処理結果を格納する型
+ */
+@FunctionalInterface
+public interface RowCallback<T> {
+
+  /**
+   * Mapperで変換された1行分の処理結果を受け取ります.
+   * @param row 処理結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  void accept(T row) throws SQLException;
+}
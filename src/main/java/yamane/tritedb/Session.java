@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Stream;
+
+import yamane.tritedb.TriteDbBase.SqlSet;
+import yamane.tritedb.result.ColumnarResult;
+import yamane.tritedb.result.OffHeapResult;
+import yamane.tritedb.utils.DoubleArray;
+import yamane.tritedb.utils.IntArray;
+import yamane.tritedb.utils.LongArray;
+
+/**
+ * 1つのコネクションを共有して複数のSQLを実行するためのセッションです.
+ * {@link TriteDb#inSession(yamane.tritedb.utils.SqlFunction)}、
+ * {@link TriteDb#inTransaction(yamane.tritedb.utils.SqlFunction)} から受け取って使用します.
+ * 各メソッドはTriteDbのコネクションを引数に取るメソッドに、セッションのコネクションを渡して処理を委譲します.
+ */
+public class Session {
+
+  private final TriteDb db;
+  private final Connection conn;
+
+  /**
+   * コンストラクタ.
+   * @param db 処理を委譲するTriteDb
+   * @param conn このセッションで使用するコネクション
+   */
+  public Session(TriteDb db, Connection conn) {
+    this.db = db;
+    this.conn = conn;
+  }
+
+  /**
+   * このセッションで使用しているコネクションを取得します.
+   * @return コネクション
+   */
+  public Connection getConnection() {
+    return conn;
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を１行取得します.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param set SQLセット
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public <T> T select(Mapper<T> mapper, SqlSet set) throws SQLException {
+    return db.select(conn, mapper, set.getSql(), set.getParams());
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を１行取得します.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public <T> T select(Mapper<T> mapper, String sql, Object... params) throws SQLException {
+    return db.select(conn, mapper, sql, params);
+  }
+
+  /**
+   * 検索系SQLを実行し、複数行の処理結果を取得します.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param set SQLセット
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public <T> List<T> selectList(Mapper<T> mapper, SqlSet set) throws SQLException {
+    return db.selectList(conn, mapper, set.getSql(), set.getParams());
+  }
+
+  /**
+   * 検索系SQLを実行し、複数行の処理結果を取得します.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public <T> List<T> selectList(Mapper<T> mapper, String sql, Object... params) throws SQLException {
+    return db.selectList(conn, mapper, sql, params);
+  }
+
+  /**
+   * 検索系SQLを実行し、複数行の処理結果を指定されたListに追加します.
+   * @param <T> 処理結果を格納する型
+   * @param <L> 処理結果を追加するListの型
+   * @param result 処理結果を追加するList
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 処理結果を追加したList
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public <T, L extends List<T>> L selectInto(L result, Mapper<T> mapper, String sql, Object... params)
+      throws SQLException {
+    return db.selectInto(conn, result, mapper, sql, params);
+  }
+
+  /**
+   * 1列だけを返す検索系SQLを実行し、1列目の値をlongの配列として取得します.
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public LongArray selectLongs(String sql, Object... params) throws SQLException {
+    return db.selectLongs(conn, sql, params);
+  }
+
+  /**
+   * 1列だけを返す検索系SQLを実行し、1列目の値をintの配列として取得します.
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public IntArray selectInts(String sql, Object... params) throws SQLException {
+    return db.selectInts(conn, sql, params);
+  }
+
+  /**
+   * 1列だけを返す検索系SQLを実行し、1列目の値をdoubleの配列として取得します.
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public DoubleArray selectDoubles(String sql, Object... params) throws SQLException {
+    return db.selectDoubles(conn, sql, params);
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を列指向の検索結果として取得します.
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public ColumnarResult selectColumnar(String sql, Object... params) throws SQLException {
+    return db.selectColumnar(conn, sql, params);
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果をヒープ外のメモリに保持した検索結果として取得します.
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public OffHeapResult selectOffHeap(String sql, Object... params) throws SQLException {
+    return db.selectOffHeap(conn, sql, params);
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を1行ずつ返すIteratorを取得します.
+   * Iteratorはセッションの終了前にクローズしてください.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果のIterator
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public <T> ResultIterator<T> selectIterator(Mapper<T> mapper, String sql, Object... params) throws SQLException {
+    return db.selectIterator(conn, mapper, sql, params);
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を逐次読み出すStreamを取得します.
+   * Streamはセッションの終了前にクローズしてください.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果のStream
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public <T> Stream<T> selectStream(Mapper<T> mapper, String sql, Object... params) throws SQLException {
+    return db.selectStream(conn, mapper, sql, params);
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を1行ずつコールバックに渡します.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param callback 処理結果を受け取るコールバック
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public <T> void forEach(Mapper<T> mapper, RowCallback<T> callback, String sql, Object... params)
+      throws SQLException {
+    db.forEach(conn, mapper, callback, sql, params);
+  }
+
+  /**
+   * 更新系SQLを実行します.
+   * @param set SQLセット
+   * @return 処理行数
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public int update(SqlSet set) throws SQLException {
+    return db.update(conn, set.getSql(), set.getParams());
+  }
+
+  /**
+   * 更新系SQLを実行します.
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 処理行数
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public int update(String sql, Object... params) throws SQLException {
+    return db.update(conn, sql, params);
+  }
+
+  /**
+   * 更新系SQLを実行し、自動採番値を取得します.
+   * @param set SQLセット
+   * @return 自動採番値
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public Number updateAndKey(SqlSet set) throws SQLException {
+    return db.updateAndKey(conn, set.getSql(), set.getParams());
+  }
+
+  /**
+   * 更新系SQLを実行し、自動採番値を取得します.
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 自動採番値
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public Number updateAndKey(String sql, Object... params) throws SQLException {
+    return db.updateAndKey(conn, sql, params);
+  }
+
+  /**
+   * 更新系SQLをバッチ実行します.
+   * @param sets 実行するSQLとパラメータのセット
+   * @return 行ごとの処理行数
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public int[] updateBatch(Iterable<SqlSet> sets) throws SQLException {
+    return db.updateBatch(conn, sets);
+  }
+
+  /**
+   * 更新系SQLをバッチ実行します.
+   * @param sql 実行するSQL
+   * @param params 行ごとのSQL実行時パラメータ
+   * @return 行ごとの処理行数
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public int[] updateBatch(String sql, Iterable<Object[]> params) throws SQLException {
+    return db.updateBatch(conn, sql, params);
+  }
+
+  /**
+   * 挿入系SQLをバッチ実行し、全行の自動採番値を取得します.
+   * @param sql 実行するSQL
+   * @param params 行ごとのSQL実行時パラメータ
+   * @return 自動採番値
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public long[] insertBatchAndKeys(String sql, Iterable<Object[]> params) throws SQLException {
+    return db.insertBatchAndKeys(conn, sql, params);
+  }
+
+  /**
+   * 1行分の挿入系SQLを複数行分の VALUES 句に書き換えて、まとめて挿入します.
+   * @param sql 1行分の挿入系SQL
+   * @param params 行ごとのSQL実行時パラメータ
+   * @return 挿入した行数
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public int insertBulk(String sql, Iterable<Object[]> params) throws SQLException {
+    return db.insertBulk(conn, sql, params);
+  }
+}
@@ -8,7 +8,21 @@ package yamane.tritedb;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import yamane.tritedb.reactive.Flow;
+import yamane.tritedb.reactive.RowPublisher;
+import yamane.tritedb.result.ColumnarResult;
+import yamane.tritedb.result.OffHeapResult;
+import yamane.tritedb.utils.DoubleArray;
+import yamane.tritedb.utils.IntArray;
+import yamane.tritedb.utils.LongArray;
+import yamane.tritedb.utils.SqlFunction;
 
 /**
  * このライブラリのメインとなるインターフェイスです.
@@ -100,6 +114,455 @@ public interface TriteDb extends TriteDbBase {
    */
   <T> List<T> selectList(Connection conn, Mapper<T> mapper, String sql, Object... params) throws SQLException;
 
+  /**
+   * 検索系SQLを実行し、複数行の処理結果を指定されたListに追加します.
+   * {@link yamane.tritedb.result.SpillList} など、格納方法を制御するListを使う場合に使用します.
+   * @param <T> 処理結果を格納する型
+   * @param <L> 処理結果を追加するListの型
+   * @param result 処理結果を追加するList
+   * @param mapper 処理結果変換クラス
+   * @param set SQLセット
+   * @return 処理結果を追加したList
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default <T, L extends List<T>> L selectInto(L result, Mapper<T> mapper, SqlSet set) throws SQLException {
+    return selectInto(result, mapper, set.getSql(), set.getParams());
+  }
+
+  /**
+   * 検索系SQLを実行し、複数行の処理結果を指定されたListに追加します.
+   * {@link yamane.tritedb.result.SpillList} など、格納方法を制御するListを使う場合に使用します.
+   * @param <T> 処理結果を格納する型
+   * @param <L> 処理結果を追加するListの型
+   * @param result 処理結果を追加するList
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 処理結果を追加したList
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default <T, L extends List<T>> L selectInto(L result, Mapper<T> mapper, String sql, Object... params)
+      throws SQLException {
+    Connection conn = getConnection();
+    try {
+      return selectInto(conn, result, mapper, sql, params);
+    } finally {
+      close(conn);
+    }
+  }
+
+  /**
+   * 検索系SQLを実行し、複数行の処理結果を指定されたListに追加します.
+   * {@link yamane.tritedb.result.SpillList} など、格納方法を制御するListを使う場合に使用します.
+   * 検索に失敗した場合、{@link AutoCloseable} を実装したListは閉じてから例外を送出します.
+   * @param <T> 処理結果を格納する型
+   * @param <L> 処理結果を追加するListの型
+   * @param conn コネクション
+   * @param result 処理結果を追加するList
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 処理結果を追加したList
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  <T, L extends List<T>> L selectInto(Connection conn, L result, Mapper<T> mapper, String sql, Object... params)
+      throws SQLException;
+
+  /**
+   * 検索系SQLを実行し、複数行の処理結果を取得します.
+   * ResultSetからの読み出しと、Mapperによる変換を別スレッドで並行して行います.
+   * 処理結果は検索結果の順序を保ちます.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス. 複数スレッドから同時に呼び出されます
+   * @param set SQLセット
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default <T> List<T> selectListPipelined(Mapper<T> mapper, SqlSet set) throws SQLException {
+    return selectListPipelined(mapper, true, set.getSql(), set.getParams());
+  }
+
+  /**
+   * 検索系SQLを実行し、複数行の処理結果を取得します.
+   * ResultSetからの読み出しと、Mapperによる変換を別スレッドで並行して行います.
+   * 処理結果は検索結果の順序を保ちます.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス. 複数スレッドから同時に呼び出されます
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default <T> List<T> selectListPipelined(Mapper<T> mapper, String sql, Object... params) throws SQLException {
+    return selectListPipelined(mapper, true, sql, params);
+  }
+
+  /**
+   * 検索系SQLを実行し、複数行の処理結果を取得します.
+   * ResultSetからの読み出しと、Mapperによる変換を別スレッドで並行して行います.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス. 複数スレッドから同時に呼び出されます
+   * @param ordered 処理結果の順序を検索結果の順序と一致させるかどうか
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default <T> List<T> selectListPipelined(Mapper<T> mapper, boolean ordered, String sql, Object... params)
+      throws SQLException {
+    Connection conn = getConnection();
+    try {
+      return selectListPipelined(conn, mapper, ordered, sql, params);
+    } finally {
+      close(conn);
+    }
+  }
+
+  /**
+   * 検索系SQLを実行し、複数行の処理結果を取得します.
+   * ResultSetからの読み出しと、Mapperによる変換を別スレッドで並行して行います.
+   * @param <T> 処理結果を格納する型
+   * @param conn コネクション
+   * @param mapper 処理結果変換クラス. 複数スレッドから同時に呼び出されます
+   * @param ordered 処理結果の順序を検索結果の順序と一致させるかどうか
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  <T> List<T> selectListPipelined(Connection conn, Mapper<T> mapper, boolean ordered, String sql, Object... params)
+      throws SQLException;
+
+  /**
+   * 1列だけを返す検索系SQLを実行し、1列目の値をlongの配列として取得します.
+   * 値はボクシングされずに保持され、NULLは {@link LongArray#isNull(int)} で判定できます.
+   * @param set SQLセット
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default LongArray selectLongs(SqlSet set) throws SQLException {
+    return selectLongs(set.getSql(), set.getParams());
+  }
+
+  /**
+   * 1列だけを返す検索系SQLを実行し、1列目の値をlongの配列として取得します.
+   * 値はボクシングされずに保持され、NULLは {@link LongArray#isNull(int)} で判定できます.
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default LongArray selectLongs(String sql, Object... params) throws SQLException {
+    Connection conn = getConnection();
+    try {
+      return selectLongs(conn, sql, params);
+    } finally {
+      close(conn);
+    }
+  }
+
+  /**
+   * 1列だけを返す検索系SQLを実行し、1列目の値をlongの配列として取得します.
+   * 値はボクシングされずに保持され、NULLは {@link LongArray#isNull(int)} で判定できます.
+   * @param conn コネクション
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  LongArray selectLongs(Connection conn, String sql, Object... params) throws SQLException;
+
+  /**
+   * 1列だけを返す検索系SQLを実行し、1列目の値をintの配列として取得します.
+   * 値はボクシングされずに保持され、NULLは {@link IntArray#isNull(int)} で判定できます.
+   * @param set SQLセット
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default IntArray selectInts(SqlSet set) throws SQLException {
+    return selectInts(set.getSql(), set.getParams());
+  }
+
+  /**
+   * 1列だけを返す検索系SQLを実行し、1列目の値をintの配列として取得します.
+   * 値はボクシングされずに保持され、NULLは {@link IntArray#isNull(int)} で判定できます.
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default IntArray selectInts(String sql, Object... params) throws SQLException {
+    Connection conn = getConnection();
+    try {
+      return selectInts(conn, sql, params);
+    } finally {
+      close(conn);
+    }
+  }
+
+  /**
+   * 1列だけを返す検索系SQLを実行し、1列目の値をintの配列として取得します.
+   * 値はボクシングされずに保持され、NULLは {@link IntArray#isNull(int)} で判定できます.
+   * @param conn コネクション
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  IntArray selectInts(Connection conn, String sql, Object... params) throws SQLException;
+
+  /**
+   * 1列だけを返す検索系SQLを実行し、1列目の値をdoubleの配列として取得します.
+   * 値はボクシングされずに保持され、NULLは {@link DoubleArray#isNull(int)} で判定できます.
+   * @param set SQLセット
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default DoubleArray selectDoubles(SqlSet set) throws SQLException {
+    return selectDoubles(set.getSql(), set.getParams());
+  }
+
+  /**
+   * 1列だけを返す検索系SQLを実行し、1列目の値をdoubleの配列として取得します.
+   * 値はボクシングされずに保持され、NULLは {@link DoubleArray#isNull(int)} で判定できます.
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default DoubleArray selectDoubles(String sql, Object... params) throws SQLException {
+    Connection conn = getConnection();
+    try {
+      return selectDoubles(conn, sql, params);
+    } finally {
+      close(conn);
+    }
+  }
+
+  /**
+   * 1列だけを返す検索系SQLを実行し、1列目の値をdoubleの配列として取得します.
+   * 値はボクシングされずに保持され、NULLは {@link DoubleArray#isNull(int)} で判定できます.
+   * @param conn コネクション
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  DoubleArray selectDoubles(Connection conn, String sql, Object... params) throws SQLException;
+
+  /**
+   * 検索系SQLを実行し、処理結果を列指向の検索結果として取得します.
+   * 列ごとにプリミティブ型の配列や文字列の辞書で保持するため、大量の行を少ないメモリで扱えます.
+   * @param set SQLセット
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default ColumnarResult selectColumnar(SqlSet set) throws SQLException {
+    return selectColumnar(set.getSql(), set.getParams());
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を列指向の検索結果として取得します.
+   * 列ごとにプリミティブ型の配列や文字列の辞書で保持するため、大量の行を少ないメモリで扱えます.
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default ColumnarResult selectColumnar(String sql, Object... params) throws SQLException {
+    Connection conn = getConnection();
+    try {
+      return selectColumnar(conn, sql, params);
+    } finally {
+      close(conn);
+    }
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を列指向の検索結果として取得します.
+   * @param conn コネクション
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  ColumnarResult selectColumnar(Connection conn, String sql, Object... params) throws SQLException;
+
+  /**
+   * 検索系SQLを実行し、処理結果をヒープ外のメモリに保持した検索結果として取得します.
+   * 検索結果は使用後にクローズしてメモリを解放してください.
+   * @param set SQLセット
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default OffHeapResult selectOffHeap(SqlSet set) throws SQLException {
+    return selectOffHeap(set.getSql(), set.getParams());
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果をヒープ外のメモリに保持した検索結果として取得します.
+   * 検索結果は使用後にクローズしてメモリを解放してください.
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default OffHeapResult selectOffHeap(String sql, Object... params) throws SQLException {
+    Connection conn = getConnection();
+    try {
+      return selectOffHeap(conn, sql, params);
+    } finally {
+      close(conn);
+    }
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果をヒープ外のメモリに保持した検索結果として取得します.
+   * 検索結果は使用後にクローズしてメモリを解放してください.
+   * @param conn コネクション
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  OffHeapResult selectOffHeap(Connection conn, String sql, Object... params) throws SQLException;
+
+  /**
+   * 検索系SQLを実行し、処理結果を1行ずつ返すIteratorを取得します.
+   * 検索結果はメモリ上にため込まれず、Iteratorを進めるたびにResultSetから読み出されます.
+   * 最終行まで読み終えるかIteratorをクローズした時点で、取得したコネクションもクローズされます.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param set SQLセット
+   * @return 検索結果のIterator
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default <T> ResultIterator<T> selectIterator(Mapper<T> mapper, SqlSet set) throws SQLException {
+    return selectIterator(mapper, set.getSql(), set.getParams());
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を1行ずつ返すIteratorを取得します.
+   * 検索結果はメモリ上にため込まれず、Iteratorを進めるたびにResultSetから読み出されます.
+   * 最終行まで読み終えるかIteratorをクローズした時点で、取得したコネクションもクローズされます.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果のIterator
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default <T> ResultIterator<T> selectIterator(Mapper<T> mapper, String sql, Object... params) throws SQLException {
+    Connection conn = getConnection();
+    try {
+      return selectIterator(conn, mapper, sql, params).ownConnection();
+    } catch (SQLException | RuntimeException e) {
+      try {
+        close(conn);
+      } catch (SQLException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を1行ずつ返すIteratorを取得します.
+   * 最終行まで読み終えるかIteratorをクローズした時点で、ResultSetとStatementがクローズされます.
+   * @param <T> 処理結果を格納する型
+   * @param conn コネクション
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果のIterator
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  <T> ResultIterator<T> selectIterator(Connection conn, Mapper<T> mapper, String sql, Object... params) throws SQLException;
+
+  /**
+   * 検索系SQLを実行し、処理結果を逐次読み出すStreamを取得します.
+   * 使用後はStreamをクローズしてください（try-with-resources を推奨します）.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param set SQLセット
+   * @return 検索結果のStream
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default <T> Stream<T> selectStream(Mapper<T> mapper, SqlSet set) throws SQLException {
+    return selectStream(mapper, set.getSql(), set.getParams());
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を逐次読み出すStreamを取得します.
+   * 使用後はStreamをクローズしてください（try-with-resources を推奨します）.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果のStream
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default <T> Stream<T> selectStream(Mapper<T> mapper, String sql, Object... params) throws SQLException {
+    return selectIterator(mapper, sql, params).stream();
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を逐次読み出すStreamを取得します.
+   * 使用後はStreamをクローズしてください（try-with-resources を推奨します）.
+   * @param <T> 処理結果を格納する型
+   * @param conn コネクション
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果のStream
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default <T> Stream<T> selectStream(Connection conn, Mapper<T> mapper, String sql, Object... params) throws SQLException {
+    return selectIterator(conn, mapper, sql, params).stream();
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を1行ずつコールバックに渡します.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param callback 処理結果を受け取るコールバック
+   * @param set SQLセット
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default <T> void forEach(Mapper<T> mapper, RowCallback<T> callback, SqlSet set) throws SQLException {
+    forEach(mapper, callback, set.getSql(), set.getParams());
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を1行ずつコールバックに渡します.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param callback 処理結果を受け取るコールバック
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default <T> void forEach(Mapper<T> mapper, RowCallback<T> callback, String sql, Object... params) throws SQLException {
+    Connection conn = getConnection();
+    try {
+      forEach(conn, mapper, callback, sql, params);
+    } finally {
+      close(conn);
+    }
+  }
+
+  /**
+   * 検索系SQLを実行し、処理結果を1行ずつコールバックに渡します.
+   * @param <T> 処理結果を格納する型
+   * @param conn コネクション
+   * @param mapper 処理結果変換クラス
+   * @param callback 処理結果を受け取るコールバック
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  <T> void forEach(Connection conn, Mapper<T> mapper, RowCallback<T> callback, String sql, Object... params) throws SQLException;
+
   /**
    * 更新系SQLを実行します.
    * @param set SQLセット
@@ -136,6 +599,92 @@ public interface TriteDb extends TriteDbBase {
    */
   int update(Connection conn, String sql, Object... params) throws SQLException;
 
+  /**
+   * 更新系SQLをバッチ実行します.
+   * 同じSQLが連続する間は1つのPreparedStatementを使いまわし、一定件数ごとにまとめて実行します.
+   * @param sets 実行するSQLとパラメータのセット
+   * @return 行ごとの処理行数
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default int[] updateBatch(Iterable<SqlSet> sets) throws SQLException {
+    Connection conn = getConnection();
+    try {
+      return updateBatch(conn, sets);
+    } finally {
+      close(conn);
+    }
+  }
+
+  /**
+   * 更新系SQLをバッチ実行します.
+   * 同じSQLが連続する間は1つのPreparedStatementを使いまわし、一定件数ごとにまとめて実行します.
+   * @param conn コネクション
+   * @param sets 実行するSQLとパラメータのセット
+   * @return 行ごとの処理行数
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  int[] updateBatch(Connection conn, Iterable<SqlSet> sets) throws SQLException;
+
+  /**
+   * 更新系SQLをバッチ実行します.
+   * 1つのPreparedStatementを使いまわし、一定件数ごとにまとめて実行します.
+   * @param sql 実行するSQL
+   * @param params 行ごとのSQL実行時パラメータ
+   * @return 行ごとの処理行数
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default int[] updateBatch(String sql, Iterable<Object[]> params) throws SQLException {
+    Connection conn = getConnection();
+    try {
+      return updateBatch(conn, sql, params);
+    } finally {
+      close(conn);
+    }
+  }
+
+  /**
+   * 更新系SQLをバッチ実行します.
+   * 1つのPreparedStatementを使いまわし、一定件数ごとにまとめて実行します.
+   * @param conn コネクション
+   * @param sql 実行するSQL
+   * @param params 行ごとのSQL実行時パラメータ
+   * @return 行ごとの処理行数
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  int[] updateBatch(Connection conn, String sql, Iterable<Object[]> params) throws SQLException;
+
+  /**
+   * 1行分の挿入系SQLを複数行分の VALUES 句に書き換えて、まとめて挿入します.
+   * INSERT INTO t(a, b) VALUES (?, ?) を INSERT INTO t(a, b) VALUES (?, ?), (?, ?), ... のように書き換えて実行するため、
+   * 1行ずつ送信するドライバでもバッチ実行より少ない往復で挿入できます.
+   * 書き換えられないSQLの場合は {@link #updateBatch(String, Iterable)} で実行します.
+   * @param sql 1行分の挿入系SQL
+   * @param params 行ごとのSQL実行時パラメータ
+   * @return 挿入した行数
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default int insertBulk(String sql, Iterable<Object[]> params) throws SQLException {
+    Connection conn = getConnection();
+    try {
+      return insertBulk(conn, sql, params);
+    } finally {
+      close(conn);
+    }
+  }
+
+  /**
+   * 1行分の挿入系SQLを複数行分の VALUES 句に書き換えて、まとめて挿入します.
+   * INSERT INTO t(a, b) VALUES (?, ?) を INSERT INTO t(a, b) VALUES (?, ?), (?, ?), ... のように書き換えて実行するため、
+   * 1行ずつ送信するドライバでもバッチ実行より少ない往復で挿入できます.
+   * 書き換えられないSQLの場合は {@link #updateBatch(Connection, String, Iterable)} で実行します.
+   * @param conn コネクション
+   * @param sql 1行分の挿入系SQL
+   * @param params 行ごとのSQL実行時パラメータ
+   * @return 挿入した行数
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  int insertBulk(Connection conn, String sql, Iterable<Object[]> params) throws SQLException;
+
   /**
    * 更新系SQLを実行し、自動採番値を取得します.
    * @param set SQLセット
@@ -172,4 +721,301 @@ public interface TriteDb extends TriteDbBase {
    */
   Number updateAndKey(Connection conn, String sql, Object... params) throws SQLException;
 
-}
\ No newline at end of file
+  /**
+   * 挿入系SQLをバッチ実行し、全行の自動採番値を取得します.
+   * 自動採番値は行の順番どおりに格納されます.
+   * バッチ実行時に自動採番値を返さないドライバでは、1行ずつ実行する方法に切り替えて処理します.
+   * @param sql 実行するSQL
+   * @param params 行ごとのSQL実行時パラメータ
+   * @return 自動採番値
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default long[] insertBatchAndKeys(String sql, Iterable<Object[]> params) throws SQLException {
+    Connection conn = getConnection();
+    try {
+      return insertBatchAndKeys(conn, sql, params);
+    } finally {
+      close(conn);
+    }
+  }
+
+  /**
+   * 挿入系SQLをバッチ実行し、全行の自動採番値を取得します.
+   * 自動採番値は行の順番どおりに格納されます.
+   * バッチ実行時に自動採番値を返さないドライバでは、1行ずつ実行する方法に切り替えて処理します.
+   * @param conn コネクション
+   * @param sql 実行するSQL
+   * @param params 行ごとのSQL実行時パラメータ
+   * @return 自動採番値
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  long[] insertBatchAndKeys(Connection conn, String sql, Iterable<Object[]> params) throws SQLException;
+
+  /**
+   * オプションを指定してSQLを実行するTriteDbを取得します.
+   * 返されるTriteDbは、このTriteDbの設定に指定したオプションを上書きしたものになり、
+   * すべての select、selectList、update などで指定したオプションを使用してStatementを生成します.
+   * このTriteDbの設定は変更されません.
+   * <pre>
+   * db.withOptions(QueryOptions.DEFAULT.withFetchSize(1000)).forEach(mapper, callback, sql);
+   * </pre>
+   * @param options 上書きするオプション
+   * @return オプションを適用したTriteDb
+   */
+  TriteDb withOptions(QueryOptions options);
+
+  /**
+   * 1つのコネクションを共有するセッションで処理を実行します.
+   * コネクションは処理の開始時に取得され、終了時にクローズされます.
+   * @param <R> 処理結果の型
+   * @param f セッションを使用する処理
+   * @return 処理結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default <R> R inSession(SqlFunction<Session, R> f) throws SQLException {
+    Connection conn = getConnection();
+    try {
+      return f.apply(new Session(this, conn));
+    } finally {
+      close(conn);
+    }
+  }
+
+  /**
+   * 1つのコネクションを共有するセッションで、処理をトランザクションとして実行します.
+   * 処理が正常に終了した場合はコミットし、例外が発生した場合はロールバックします.
+   * @param <R> 処理結果の型
+   * @param f セッションを使用する処理
+   * @return 処理結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default <R> R inTransaction(SqlFunction<Session, R> f) throws SQLException {
+    return inSession((session) -> {
+      Connection conn = session.getConnection();
+      boolean autoCommit = conn.getAutoCommit();
+      if (autoCommit) {
+        conn.setAutoCommit(false);
+      }
+      try {
+        R result = f.apply(session);
+        conn.commit();
+        return result;
+      } catch (Throwable e) {
+        try {
+          conn.rollback();
+        } catch (SQLException suppressed) {
+          e.addSuppressed(suppressed);
+        }
+        throw e;
+      } finally {
+        if (autoCommit) {
+          conn.setAutoCommit(true);
+        }
+      }
+    });
+  }
+
+  /**
+   * セッションを使用する処理を非同期に実行します.
+   * 処理は {@link #getExecutor()} で実行され、コネクションの取得と返却はすべて処理の中で行われます.
+   * 処理の開始前にキャンセルされた場合、コネクションは取得されません.
+   * @param <R> 処理結果の型
+   * @param f セッションを使用する処理
+   * @return 処理結果のCompletableFuture
+   */
+  default <R> CompletableFuture<R> async(SqlFunction<Session, R> f) {
+    CompletableFuture<R> future = new CompletableFuture<>();
+    try {
+      getExecutor().execute(() -> {
+        if (future.isDone()) {
+          return;
+        }
+        try {
+          future.complete(inSession(f));
+        } catch (Throwable e) {
+          future.completeExceptionally(e);
+        }
+      });
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * 検索系SQLを非同期に実行し、処理結果を１行取得します.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param set SQLセット
+   * @return 検索結果のCompletableFuture
+   */
+  default <T> CompletableFuture<T> selectAsync(Mapper<T> mapper, SqlSet set) {
+    return selectAsync(mapper, set.getSql(), set.getParams());
+  }
+
+  /**
+   * 検索系SQLを非同期に実行し、処理結果を１行取得します.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果のCompletableFuture
+   */
+  default <T> CompletableFuture<T> selectAsync(Mapper<T> mapper, String sql, Object... params) {
+    return async((s) -> s.select(mapper, sql, params));
+  }
+
+  /**
+   * 検索系SQLを非同期に実行し、複数行の処理結果を取得します.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param set SQLセット
+   * @return 検索結果のCompletableFuture
+   */
+  default <T> CompletableFuture<List<T>> selectListAsync(Mapper<T> mapper, SqlSet set) {
+    return selectListAsync(mapper, set.getSql(), set.getParams());
+  }
+
+  /**
+   * 検索系SQLを非同期に実行し、複数行の処理結果を取得します.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果のCompletableFuture
+   */
+  default <T> CompletableFuture<List<T>> selectListAsync(Mapper<T> mapper, String sql, Object... params) {
+    return async((s) -> s.selectList(mapper, sql, params));
+  }
+
+  /**
+   * 更新系SQLを非同期に実行します.
+   * @param set SQLセット
+   * @return 処理行数のCompletableFuture
+   */
+  default CompletableFuture<Integer> updateAsync(SqlSet set) {
+    return updateAsync(set.getSql(), set.getParams());
+  }
+
+  /**
+   * 更新系SQLを非同期に実行します.
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 処理行数のCompletableFuture
+   */
+  default CompletableFuture<Integer> updateAsync(String sql, Object... params) {
+    return async((s) -> s.update(sql, params));
+  }
+
+  /**
+   * 検索結果を背圧制御付きで配信するPublisherを取得します.
+   * SQLは購読ごとに実行され、配信先から要求された行数だけResultSetから読み出されます.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param set SQLセット
+   * @return 検索結果を配信するPublisher
+   */
+  default <T> Flow.Publisher<T> publish(Mapper<T> mapper, SqlSet set) {
+    return publish(mapper, set.getSql(), set.getParams());
+  }
+
+  /**
+   * 検索結果を背圧制御付きで配信するPublisherを取得します.
+   * SQLは購読ごとに実行され、配信先から要求された行数だけResultSetから読み出されます.
+   * @param <T> 処理結果を格納する型
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @return 検索結果を配信するPublisher
+   */
+  default <T> Flow.Publisher<T> publish(Mapper<T> mapper, String sql, Object... params) {
+    return new RowPublisher<T>(this, mapper, sql, params);
+  }
+
+  /**
+   * 互いに依存しない複数の検索系SQLを並列に実行し、それぞれの複数行の処理結果を取得します.
+   * 並列度は実行環境のプロセッサ数までとなります.
+   * @param queries 実行するSQLと処理結果変換クラスの一覧
+   * @return 検索結果の一覧. 引数と同じ順番で格納されます
+   * @throws SQLException DBがエラーを通知した場合
+   * @see #selectAll(int, List)
+   */
+  default List<List<?>> selectAll(List<? extends QuerySet<?>> queries) throws SQLException {
+    return selectAll(Runtime.getRuntime().availableProcessors(), queries);
+  }
+
+  /**
+   * 互いに依存しない複数の検索系SQLを並列に実行し、それぞれの複数行の処理結果を取得します.
+   * 各SQLはそれぞれ別のコネクションで、{@link #getExecutor()} のスレッドを使って実行されます.
+   * いずれかのSQLが失敗した場合は、全SQLの終了を待ったうえで、最初に失敗したSQLの例外を送出します.
+   * 他に失敗したSQLの例外は {@link SQLException#getNextException()} でたどることができます.
+   * @param parallelism 同時に実行するSQLの上限
+   * @param queries 実行するSQLと処理結果変換クラスの一覧
+   * @return 検索結果の一覧. 引数と同じ順番で格納されます
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default List<List<?>> selectAll(int parallelism, List<? extends QuerySet<?>> queries) throws SQLException {
+    int size = queries.size();
+    List<List<?>> results = new ArrayList<>(Collections.nCopies(size, null));
+    SQLException[] errors = new SQLException[size];
+    AtomicInteger next = new AtomicInteger();
+    int workers = Math.max(1, Math.min(parallelism, size));
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[workers];
+    for (int w = 0; w < workers; w++) {
+      futures[w] = CompletableFuture.runAsync(() -> {
+        for (int i = next.getAndIncrement(); i < size; i = next.getAndIncrement()) {
+          QuerySet<?> query = queries.get(i);
+          try {
+            results.set(i, selectList(query.getMapper(), query));
+          } catch (SQLException e) {
+            errors[i] = e;
+          } catch (RuntimeException e) {
+            errors[i] = wrap(new SQLException(e.getMessage(), e), query.getSql(), query.getParams());
+          }
+        }
+      }, getExecutor());
+    }
+    CompletableFuture.allOf(futures).join();
+    SQLException first = null;
+    for (SQLException e : errors) {
+      if (e == null) {
+        continue;
+      }
+      if (first == null) {
+        first = e;
+      } else {
+        first.setNextException(e);
+      }
+    }
+    if (first != null) {
+      throw first;
+    }
+    return results;
+  }
+
+  /**
+   * 実行するSQLとパラメータ、処理結果変換クラスのセットです.
+   * @param <T> 処理結果を格納する型
+   */
+  static class QuerySet<T> extends SqlSet {
+    private Mapper<T> mapper;
+
+    /**
+     * @param mapper 処理結果変換クラス
+     * @param sql 実行するSQL
+     * @param params SQL実行時の可変パラメータ
+     */
+    public QuerySet(Mapper<T> mapper, String sql, Object... params) {
+      super(sql, params);
+      this.mapper = mapper;
+    }
+
+    /**
+     * 処理結果変換クラスを取得します.
+     * @return 処理結果変換クラス
+     */
+    public Mapper<T> getMapper() {
+      return mapper;
+    }
+  }
+}
@@ -12,6 +12,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Arrays;
 import java.util.ResourceBundle;
+import java.util.concurrent.Executor;
 
 import javax.sql.DataSource;
 
@@ -35,6 +36,18 @@ public interface TriteDbBase {
    */
   DataSource getDataSource();
 
+  /**
+   * 非同期処理に使用するExecutorを設定します.
+   * @param executor 非同期処理に使用するExecutor
+   */
+  void setExecutor(Executor executor);
+
+  /**
+   * 非同期処理に使用するExecutorを取得します.
+   * @return 非同期処理に使用するExecutor
+   */
+  Executor getExecutor();
+
   /**
    * DataSourceからConnectionを取得します.
    * @return コネクション
@@ -74,6 +87,17 @@ public interface TriteDbBase {
    */
   PreparedStatement statement(Connection conn, String sql, int key, Object... prams) throws SQLException;
   
+  /**
+   * 使用済みの Statement を解放します.
+   * デフォルトではクローズしますが、Statementをキャッシュする実装では再利用のために保持します.
+   * @param conn Statement を生成したコネクション
+   * @param stmt 使用済みの Statement
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  default void release(Connection conn, Statement stmt) throws SQLException {
+    stmt.close();
+  }
+  
   /**
    * SQLExceptionにSQL実行時情報を付加します.
    * @param cause 原因となった例外
@@ -11,25 +11,84 @@ import static yamane.tritedb.TriteDbBase.*;
 import java.sql.Connection;
 import java.sql.ParameterMetaData;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 import javax.sql.DataSource;
 
+import yamane.tritedb.cache.BoundedCache;
+import yamane.tritedb.cache.CacheStats;
+import yamane.tritedb.cache.StatementCache;
+import yamane.tritedb.utils.AsyncExecutor;
+
 /**
  * TriteDbで扱うJDBCの基礎部分の処理の実装クラスです.
  */
 public abstract class TriteDbBaseImpl implements TriteDbBase {
 
+  /** 型が取得できなかったパラメータを表す値 */
+  protected static final int UNKNOWN_TYPE = Integer.MIN_VALUE;
+
+  /** パラメータのメタデータが取得できなかったSQLを表す値 */
+  private static final int[] NO_TYPES = new int[0];
+
   /** データソース */
   protected DataSource dataSource;
 
-  protected boolean metaDataFaild = false;
+  /** 非同期処理に使用するExecutor */
+  protected Executor executor = AsyncExecutor.shared();
+
+  /** DBとドライバがサポートする機能の一覧（初回使用時に設定） */
+  protected volatile Capabilities capabilities;
+
+  /** Statementの生成時に設定するオプション */
+  protected QueryOptions options = QueryOptions.DEFAULT;
+
+  /** コネクションごとに保持する PreparedStatement の上限（0の場合はキャッシュしない） */
+  protected int statementCacheSize = 0;
+
+  /** パラメータのメタデータを使用するかどうか */
+  protected boolean parameterMetaData = true;
+
+  /** SQLごとのパラメータの型のキャッシュ */
+  protected BoundedCache<String, int[]> parameterTypes = new BoundedCache<>(1024);
+
+  /** PreparedStatement キャッシュの集計 */
+  protected final CacheStats statementCacheStats = new CacheStats();
+
+  /** コネクションごとの PreparedStatement キャッシュ（コネクションの同一性で管理） */
+  private final Map<Connection, StatementCache> statementCaches = new IdentityHashMap<>();
   
   /** {@inheritDoc} */
   @Override
   public void setDataSource(DataSource dataSource) {
     this.dataSource = dataSource;
+    this.capabilities = null;
+  }
+
+  /**
+   * DBとドライバがサポートする機能の一覧を取得します.
+   * 初回のみ指定されたコネクションから調べ、以降はDataSourceごとに同じものを返します.
+   * @param conn 調べるために使用するコネクション
+   * @return 機能の一覧
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public Capabilities getCapabilities(Connection conn) throws SQLException {
+    Capabilities result = capabilities;
+    if (result == null) {
+      result = Capabilities.of(dataSource, conn);
+      capabilities = result;
+    }
+    return result;
   }
 
   /** {@inheritDoc} */
@@ -38,16 +97,233 @@ public abstract class TriteDbBaseImpl implements TriteDbBase {
     return this.dataSource;
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Executor getExecutor() {
+    return this.executor;
+  }
+
+  /**
+   * Statementの生成時に設定するオプションを取得します.
+   * @return オプション
+   */
+  public QueryOptions getOptions() {
+    return options;
+  }
+
+  /**
+   * Statementの生成時に設定するオプションを設定します.
+   * 生成されるすべてのStatementに適用されます.
+   * @param options オプション
+   */
+  public void setOptions(QueryOptions options) {
+    this.options = options;
+  }
+
+  /**
+   * ResultSetから一度に取得する行数のヒントを取得します.
+   * @return 一度に取得する行数（0の場合はドライバのデフォルト）
+   */
+  public int getFetchSize() {
+    Integer fetchSize = options.getFetchSize();
+    return fetchSize != null ? fetchSize : 0;
+  }
+
+  /**
+   * ResultSetから一度に取得する行数のヒントを設定します.
+   * 生成されるすべてのStatementに適用されます.
+   * @param fetchSize 一度に取得する行数（0の場合はドライバのデフォルト）
+   */
+  public void setFetchSize(int fetchSize) {
+    this.options = options.withFetchSize(fetchSize);
+  }
+
+  /**
+   * コネクションごとに保持する PreparedStatement の上限を取得します.
+   * @return PreparedStatement の上限（0の場合はキャッシュしない）
+   */
+  public int getStatementCacheSize() {
+    return statementCacheSize;
+  }
+
+  /**
+   * コネクションごとに保持する PreparedStatement の上限を設定します.
+   * 1以上を設定すると、同じコネクションで同じSQLを実行する際に PreparedStatement が再利用されます.
+   * キャッシュされた PreparedStatement は {@link #close(Connection)} でコネクションと一緒にクローズされます.
+   * それ以外の方法でクローズされたコネクションのキャッシュは、次に別のコネクションのキャッシュを作成する際にクローズされます.
+   * @param statementCacheSize PreparedStatement の上限（0の場合はキャッシュしない）
+   */
+  public void setStatementCacheSize(int statementCacheSize) {
+    this.statementCacheSize = statementCacheSize;
+  }
+
+  /**
+   * PreparedStatement キャッシュのヒット数などの集計を取得します.
+   * @return PreparedStatement キャッシュの集計
+   */
+  public CacheStats getStatementCacheStats() {
+    return statementCacheStats;
+  }
+
+  /**
+   * パラメータのメタデータを使用するかどうかを設定します.
+   * 使用しない場合、パラメータ数の確認を行わず、NULLは {@link #setNullUnknownType(PreparedStatement, int)} で埋め込みます.
+   * @param parameterMetaData パラメータのメタデータを使用する場合true（デフォルトはtrue）
+   */
+  public void setParameterMetaData(boolean parameterMetaData) {
+    this.parameterMetaData = parameterMetaData;
+  }
+
+  /**
+   * パラメータの数と型をキャッシュするSQLの件数の上限を設定します.
+   * 設定するとキャッシュされている内容は破棄されます.
+   * @param parameterCacheSize キャッシュするSQLの件数の上限
+   */
+  public void setParameterCacheSize(int parameterCacheSize) {
+    this.parameterTypes = new BoundedCache<>(parameterCacheSize);
+  }
+
+  /**
+   * {@inheritDoc}
+   * コネクションに紐づく PreparedStatement キャッシュもクローズします.
+   */
+  @Override
+  public void close(Connection conn) throws SQLException {
+    try {
+      closeStatements(conn);
+    } finally {
+      conn.close();
+    }
+  }
+
+  /**
+   * コネクションに紐づく PreparedStatement キャッシュをクローズします. コネクションはクローズしません.
+   * コネクションを {@link #close(Connection)} 以外の方法で返却する場合に呼び出してください.
+   * @param conn コネクション
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public void closeStatements(Connection conn) throws SQLException {
+    StatementCache cache;
+    synchronized (statementCaches) {
+      cache = statementCaches.remove(conn);
+    }
+    if (cache != null) {
+      cache.close();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void release(Connection conn, Statement stmt) throws SQLException {
+    StatementCache cache;
+    synchronized (statementCaches) {
+      cache = statementCaches.get(conn);
+    }
+    if (cache == null || !cache.release(stmt)) {
+      stmt.close();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Statement statement(Connection conn) throws SQLException {
+    Statement stmt = options.hasResultSetType()
+        ? conn.createStatement(options.getResultSetType(), options.getConcurrency())
+        : conn.createStatement();
+    try {
+      options.apply(stmt, false, getCapabilities(conn).supportsFetchSizeStreaming());
+    } catch (SQLException e) {
+      stmt.close();
+      throw e;
+    }
+    return stmt;
+  }
+
   /** {@inheritDoc} */
   @Override
   public PreparedStatement statement(Connection conn, String sql, int key, Object... prams) throws SQLException {
-    PreparedStatement stmt = conn.prepareStatement(sql, key);
-    setParameters(stmt, sql, prams);
+    PreparedStatement stmt = prepare(conn, sql, key);
+    try {
+      options.apply(stmt, statementCacheSize > 0, getCapabilities(conn).supportsFetchSizeStreaming());
+      setParameters(stmt, sql, prams);
+    } catch (SQLException e) {
+      release(conn, stmt);
+      throw e;
+    }
     return stmt;
   }
 
+  /**
+   * PreparedStatement を生成します.
+   * キャッシュが有効な場合は、キャッシュされている PreparedStatement を優先して使用します.
+   * 自動採番値を取得しない場合は、オプションで指定されたResultSetの種類と並行処理モードを適用します.
+   * @param conn コネクション
+   * @param sql 実行するSQL
+   * @param key 自動採番値を取得するかどうか
+   * @return PreparedStatement
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  protected PreparedStatement prepare(Connection conn, String sql, int key) throws SQLException {
+    boolean typed = key != Statement.RETURN_GENERATED_KEYS && options.hasResultSetType();
+    int type = typed ? options.getResultSetType() : ResultSet.TYPE_FORWARD_ONLY;
+    int concurrency = typed ? options.getConcurrency() : ResultSet.CONCUR_READ_ONLY;
+    if (statementCacheSize <= 0) {
+      return typed ? conn.prepareStatement(sql, type, concurrency) : conn.prepareStatement(sql, key);
+    }
+    StatementCache cache = statementCache(conn);
+    PreparedStatement stmt = cache.take(sql, key, type, concurrency);
+    if (stmt == null) {
+      stmt = typed ? conn.prepareStatement(sql, type, concurrency) : conn.prepareStatement(sql, key);
+      cache.add(sql, key, type, concurrency, stmt);
+    }
+    return stmt;
+  }
+
+  private StatementCache statementCache(Connection conn) {
+    List<StatementCache> stale = new ArrayList<>();
+    StatementCache cache;
+    synchronized (statementCaches) {
+      cache = statementCaches.get(conn);
+      if (cache == null) {
+        for (Iterator<Map.Entry<Connection, StatementCache>> it = statementCaches.entrySet().iterator(); it
+            .hasNext();) {
+          Map.Entry<Connection, StatementCache> entry = it.next();
+          if (isClosed(entry.getKey())) {
+            stale.add(entry.getValue());
+            it.remove();
+          }
+        }
+        cache = new StatementCache(statementCacheSize, statementCacheStats);
+        statementCaches.put(conn, cache);
+      }
+    }
+    for (StatementCache c : stale) {
+      try {
+        c.close();
+      } catch (SQLException e) {
+        // クローズ済みのコネクションに紐づくため無視する
+      }
+    }
+    return cache;
+  }
+
+  private static boolean isClosed(Connection conn) {
+    try {
+      return conn.isClosed();
+    } catch (SQLException e) {
+      return true;
+    }
+  }
+
   /**
    * PreparedStatement のパラメータを埋めます.
+   * パラメータの数と型は {@link #parameterTypes(PreparedStatement, String)} で取得し、数が一致しない場合はエラーとします.
    * @param stmt 処理対象となる PreparedStatement
    * @param sql 実行するSQL
    * @param params 埋め込む値
@@ -55,47 +331,75 @@ public abstract class TriteDbBaseImpl implements TriteDbBase {
    */
   protected void setParameters(PreparedStatement stmt, String sql, Object... params) throws SQLException {
     int paramsCount = params == null ? 0 : params.length;
-    ParameterMetaData meta = null;
-    if(!metaDataFaild) {
-      try {
-        meta = stmt.getParameterMetaData();
-      } catch (SQLException e) {
-        metaDataFaild = true;
-      }
+    int[] types = parameterTypes(stmt, sql);
+    if (types != null && types.length != paramsCount) {
+      SQLException cause = new SQLException(format("setParameters", types.length, paramsCount));
+      throw wrap(cause, sql, params);
     }
-    if (meta != null) {
-      int sqlCount = meta.getParameterCount();
-      if (meta.getParameterCount() != params.length) {
-        SQLException cause = new SQLException(format("setParameters", sqlCount, paramsCount));
-        throw wrap(cause, sql, params);
-      }
-      for (int i = 0; i < paramsCount; i++) {
-        if (params[i] != null) {
-          stmt.setObject(i + 1, params[i]);
-        } else {
-          if(!metaDataFaild) {
-            try {
-              stmt.setNull(i + 1, meta.getParameterType(i + 1));
-            } catch (SQLException e) {
-              metaDataFaild = true;
-              setNullUnknownType(stmt, i + 1);
-            }
-          } else {
-            setNullUnknownType(stmt, i + 1);
-          }
-        }
-      }
-    } else {
-      for (int i = 0; i < paramsCount; i++) {
-        if (params[i] != null) {
-          stmt.setObject(i + 1, params[i]);
-        } else {
+    for (int i = 0; i < paramsCount; i++) {
+      if (params[i] != null) {
+        stmt.setObject(i + 1, params[i]);
+      } else if (types == null || types[i] == UNKNOWN_TYPE) {
+        setNullUnknownType(stmt, i + 1);
+      } else {
+        try {
+          stmt.setNull(i + 1, types[i]);
+        } catch (SQLException e) {
+          types[i] = UNKNOWN_TYPE;
           setNullUnknownType(stmt, i + 1);
         }
       }
     }
   }
 
+  /**
+   * SQLのパラメータの型を取得します.
+   * 型はSQLごとに一度だけ {@link PreparedStatement#getParameterMetaData()} から取得し、以降はキャッシュしたものを返します.
+   * 型が取得できなかったパラメータは {@link #UNKNOWN_TYPE} となります.
+   * ドライバがメタデータを未サポートと通知した場合は {@link Capabilities} に記録し、同じDataSourceでは以降取得しません.
+   * 特定のSQLでメタデータの取得に失敗した場合は、そのSQLだけ以降取得しません.
+   * @param stmt 処理対象となる PreparedStatement
+   * @param sql 実行するSQL
+   * @return パラメータごとの型. メタデータを使用しない場合や取得できない場合はnull
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  protected int[] parameterTypes(PreparedStatement stmt, String sql) throws SQLException {
+    if (!parameterMetaData) {
+      return null;
+    }
+    int[] types = parameterTypes.get(sql);
+    if (types != null) {
+      return types == NO_TYPES ? null : types;
+    }
+    Capabilities caps = capabilities != null ? capabilities : getCapabilities(stmt.getConnection());
+    if (!caps.supportsParameterMetaData()) {
+      return null;
+    }
+    ParameterMetaData meta;
+    try {
+      meta = stmt.getParameterMetaData();
+    } catch (SQLFeatureNotSupportedException e) {
+      caps.disableParameterMetaData();
+      return null;
+    } catch (SQLException e) {
+      parameterTypes.put(sql, NO_TYPES);
+      return null;
+    }
+    if (meta == null) {
+      return null;
+    }
+    types = new int[meta.getParameterCount()];
+    for (int i = 0; i < types.length; i++) {
+      try {
+        types[i] = meta.getParameterType(i + 1);
+      } catch (SQLException e) {
+        types[i] = UNKNOWN_TYPE;
+      }
+    }
+    parameterTypes.put(sql, types);
+    return types;
+  }
+
   /**
    * パラメータの型が取得できなかった際のNULL挿入処理を行います.
    * DBによって挙動が違うので、対応が必要な場合はこのメソッドをオーバーライドしてください.
@@ -6,6 +6,11 @@
 
 package yamane.tritedb;
 
+import static yamane.tritedb.TriteDbBase.*;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -13,14 +18,57 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.sql.DataSource;
 
+import yamane.tritedb.cache.BoundedCache;
+import yamane.tritedb.result.ColumnarResult;
+import yamane.tritedb.result.OffHeapResult;
+import yamane.tritedb.row.RowMetaData;
+import yamane.tritedb.row.RowResultSet;
+import yamane.tritedb.utils.DoubleArray;
+import yamane.tritedb.utils.IntArray;
+import yamane.tritedb.utils.LongArray;
+import yamane.tritedb.utils.SqlFunction;
+
 /**
  * TriteDbのデフォルト実装クラスです.
  */
-public class TriteDbImpl extends TriteDbBaseImpl implements TriteDb {
+public class TriteDbImpl extends TriteDbBaseImpl implements TriteDb, Cloneable {
+
+  /** バッチ実行時に一度に実行する行数 */
+  protected int batchSize = 1000;
+
+  /** バッチ実行時にドライバが自動採番値を返すかどうか */
+  protected boolean batchKeys = true;
+
+  /** 複数行の VALUES 句に書き換えて挿入する際の、1つのSQLあたりのパラメータ数の上限 */
+  protected int bulkParameterLimit = 2000;
+
+  /** 複数行の VALUES 句に書き換えたSQLのキャッシュ */
+  private final BoundedCache<String, MultiRowInsert> bulkShapes = new BoundedCache<>(256);
+
+  /** パイプライン実行時の変換スレッド数 */
+  protected int pipelineWorkers = Runtime.getRuntime().availableProcessors();
+
+  /** パイプライン実行時に変換スレッドへまとめて渡す行数 */
+  protected int pipelineBatchSize = 256;
+
+  /** ヒープ外の検索結果でメモリを確保する単位（小さな検索結果では、これより小さく確保して必要に応じて拡張します） */
+  protected int offHeapSegmentSize = 4 * 1024 * 1024;
+
+  /** ヒープ外の検索結果をメモリマップする一時ファイルのディレクトリ（nullの場合はメモリマップしない） */
+  protected Path offHeapDirectory;
 
   /**
    * デフォルトコンストラクタ.
@@ -39,28 +87,94 @@ public class TriteDbImpl extends TriteDbBaseImpl implements TriteDb {
     setDataSource(dataSource);
   }
 
-  /** {@inheritDoc} */
+  /**
+   * バッチ実行時に一度に実行する行数を取得します.
+   * @return 一度に実行する行数
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * バッチ実行時に一度に実行する行数を設定します.
+   * @param batchSize 一度に実行する行数
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * バッチ実行時にドライバが自動採番値を返すかどうかを設定します.
+   * falseを設定した場合、{@link #insertBatchAndKeys(Connection, String, Iterable)} は1行ずつ実行されます.
+   * @param batchKeys バッチ実行時にドライバが自動採番値を返すかどうか
+   */
+  public void setBatchKeys(boolean batchKeys) {
+    this.batchKeys = batchKeys;
+  }
+
+  /**
+   * 複数行の VALUES 句に書き換えて挿入する際の、1つのSQLあたりのパラメータ数の上限を設定します.
+   * DBやドライバが受け付けるパラメータ数の上限より小さい値を設定してください.
+   * @param bulkParameterLimit 1つのSQLあたりのパラメータ数の上限
+   */
+  public void setBulkParameterLimit(int bulkParameterLimit) {
+    this.bulkParameterLimit = bulkParameterLimit;
+  }
+
+  /**
+   * パイプライン実行時の変換スレッド数を設定します.
+   * @param pipelineWorkers 変換スレッド数
+   */
+  public void setPipelineWorkers(int pipelineWorkers) {
+    this.pipelineWorkers = pipelineWorkers;
+  }
+
+  /**
+   * パイプライン実行時に変換スレッドへまとめて渡す行数を設定します.
+   * @param pipelineBatchSize まとめて渡す行数
+   */
+  public void setPipelineBatchSize(int pipelineBatchSize) {
+    this.pipelineBatchSize = pipelineBatchSize;
+  }
+
+  /**
+   * {@inheritDoc}
+   * このインスタンスの複製にオプションを設定して返します. DataSource、Executor、キャッシュなどは共有されます.
+   */
   @Override
-  public <T> T select(Connection conn, Mapper<T> mapper, String sql, Object... params) throws SQLException {
+  public TriteDbImpl withOptions(QueryOptions options) {
     try {
-      if (params == null || params.length == 0) {
-        try (Statement stmt = statement(conn)) {
-          try (ResultSet rs = stmt.executeQuery(sql)) {
-            return single(rs, mapper);
-          }
-        }
-      } else {
-        try (PreparedStatement stmt = statement(conn, sql, Statement.NO_GENERATED_KEYS, params)) {
-          try (ResultSet rs = stmt.executeQuery()) {
-            return single(rs, mapper);
-          }
-        }
-      }
-    } catch (SQLException e) {
-      throw wrap(e, sql, params);
+      TriteDbImpl copy = (TriteDbImpl) clone();
+      copy.options = this.options.merge(options);
+      return copy;
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(e);
     }
   }
 
+  /**
+   * ヒープ外の検索結果でメモリを確保する単位を設定します.
+   * @param offHeapSegmentSize メモリを確保する単位（バイト）
+   */
+  public void setOffHeapSegmentSize(int offHeapSegmentSize) {
+    this.offHeapSegmentSize = offHeapSegmentSize;
+  }
+
+  /**
+   * ヒープ外の検索結果をメモリマップする一時ファイルのディレクトリを設定します.
+   * nullの場合は ByteBuffer.allocateDirect でメモリを確保します.
+   * @param offHeapDirectory 一時ファイルのディレクトリ
+   */
+  public void setOffHeapDirectory(Path offHeapDirectory) {
+    this.offHeapDirectory = offHeapDirectory;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public <T> T select(Connection conn, Mapper<T> mapper, String sql, Object... params) throws SQLException {
+    return query(conn, sql, params, (rs) -> single(rs, mapper));
+  }
+
   /**
    * Mapperを使って単行を処理結果に変換する共通処理です.
    * @param <T> 処理結果を格納する型
@@ -80,19 +194,325 @@ public class TriteDbImpl extends TriteDbBaseImpl implements TriteDb {
   /** {@inheritDoc} */
   @Override
   public <T> List<T> selectList(Connection conn, Mapper<T> mapper, String sql, Object... params) throws SQLException {
-    List<T> result = new ArrayList<T>();
+    return query(conn, sql, params, (rs) -> list(new ArrayList<T>(), rs, mapper));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public <T, L extends List<T>> L selectInto(Connection conn, L result, Mapper<T> mapper, String sql,
+      Object... params) throws SQLException {
+    try {
+      return query(conn, sql, params, (rs) -> {
+        try {
+          list(result, rs, mapper);
+        } catch (UncheckedIOException e) {
+          throw new SQLException(getStr("spill.io"), e.getCause());
+        }
+        return result;
+      });
+    } catch (SQLException | RuntimeException e) {
+      // 途中まで追加したListは呼び出し元に返らないため、一時ファイルなどを持つ場合はここで閉じる
+      if (result instanceof AutoCloseable) {
+        try {
+          ((AutoCloseable) result).close();
+        } catch (Exception ex) {
+          e.addSuppressed(ex);
+        }
+      }
+      throw e;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public LongArray selectLongs(Connection conn, String sql, Object... params) throws SQLException {
+    return query(conn, sql, params, (rs) -> {
+      LongArray result = new LongArray();
+      while (rs.next()) {
+        long value = rs.getLong(1);
+        if (rs.wasNull()) {
+          result.addNull();
+        } else {
+          result.add(value);
+        }
+      }
+      return result;
+    });
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public IntArray selectInts(Connection conn, String sql, Object... params) throws SQLException {
+    return query(conn, sql, params, (rs) -> {
+      IntArray result = new IntArray();
+      while (rs.next()) {
+        int value = rs.getInt(1);
+        if (rs.wasNull()) {
+          result.addNull();
+        } else {
+          result.add(value);
+        }
+      }
+      return result;
+    });
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public DoubleArray selectDoubles(Connection conn, String sql, Object... params) throws SQLException {
+    return query(conn, sql, params, (rs) -> {
+      DoubleArray result = new DoubleArray();
+      while (rs.next()) {
+        double value = rs.getDouble(1);
+        if (rs.wasNull()) {
+          result.addNull();
+        } else {
+          result.add(value);
+        }
+      }
+      return result;
+    });
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ColumnarResult selectColumnar(Connection conn, String sql, Object... params) throws SQLException {
+    return query(conn, sql, params, ColumnarResult::read);
+  }
+
+  /**
+   * {@inheritDoc}
+   * メモリは {@link #setOffHeapSegmentSize(int)} の単位で確保し、
+   * {@link #setOffHeapDirectory(Path)} でディレクトリが指定されている場合は一時ファイルにメモリマップします.
+   */
+  @Override
+  public OffHeapResult selectOffHeap(Connection conn, String sql, Object... params) throws SQLException {
+    return query(conn, sql, params, (rs) -> OffHeapResult.read(rs, offHeapSegmentSize, offHeapDirectory));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public <T> List<T> selectListPipelined(Connection conn, Mapper<T> mapper, boolean ordered, String sql,
+      Object... params) throws SQLException {
+    return query(conn, sql, params, (rs) -> pipeline(rs, mapper, ordered));
+  }
+
+  /**
+   * ResultSetの読み出しとMapperによる変換を並行して行う共通処理です.
+   * 呼び出し元のスレッドがResultSetから値を読み出して一定行数ごとにキューへ渡し、
+   * Executorで実行する変換スレッドがキューから取り出してMapperで変換します.
+   * キューの容量は変換スレッド数の2倍までで、キューに空きがない場合は呼び出し元のスレッドが変換します.
+   * 変換スレッドはキューが空の間は待機し、読み出しの終了を表す値を受け取った時点で終了します.
+   * Executorが呼び出し元のスレッドで処理を実行する場合や、処理を受け付けない場合は、すべて呼び出し元のスレッドで変換します.
+   * @param <T> 処理結果を格納する型
+   * @param rs ResultSet
+   * @param mapper 処理結果変換クラス
+   * @param ordered 処理結果の順序を検索結果の順序と一致させるかどうか
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合、変換中に例外が発生した場合
+   */
+  protected <T> List<T> pipeline(ResultSet rs, Mapper<T> mapper, boolean ordered) throws SQLException {
+    RowMetaData meta = new RowMetaData(rs.getMetaData());
+    int cols = meta.getColumnCount();
+    int workers = Math.max(1, pipelineWorkers);
+    int rows = Math.max(1, pipelineBatchSize);
+    BlockingQueue<RowBatch<T>> queue = new ArrayBlockingQueue<>(workers * 2);
+    RowBatch<T> end = new RowBatch<>(-1, 0);
+    Queue<RowBatch<T>> completed = new ConcurrentLinkedQueue<>();
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    Semaphore finished = new Semaphore(0);
+    Thread caller = Thread.currentThread();
+    Runnable worker = () -> {
+      if (Thread.currentThread() == caller) {
+        return;
+      }
+      RowResultSet row = new RowResultSet(meta);
+      while (true) {
+        RowBatch<T> batch;
+        try {
+          batch = queue.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        if (batch == end) {
+          queue.offer(end);
+          return;
+        }
+        try {
+          map(batch, mapper, row, meta, error, completed);
+        } finally {
+          finished.release();
+        }
+      }
+    };
+    for (int i = 0; i < workers; i++) {
+      try {
+        getExecutor().execute(worker);
+      } catch (RejectedExecutionException e) {
+        break;
+      }
+    }
+    RowResultSet own = new RowResultSet(meta);
+    int queued = 0;
+    try {
+      int seq = 0;
+      RowBatch<T> batch = new RowBatch<>(seq++, rows);
+      while (error.get() == null && rs.next()) {
+        batch.rows.add(RowResultSet.read(rs, cols));
+        if (batch.rows.size() >= rows) {
+          if (queue.offer(batch)) {
+            queued++;
+          } else {
+            map(batch, mapper, own, meta, error, completed);
+          }
+          batch = new RowBatch<>(seq++, rows);
+        }
+      }
+      if (!batch.rows.isEmpty()) {
+        map(batch, mapper, own, meta, error, completed);
+      }
+    } catch (SQLException | RuntimeException e) {
+      error.compareAndSet(null, e);
+    } finally {
+      RowBatch<T> left;
+      while ((left = queue.poll()) != null) {
+        if (left != end) {
+          queued--;
+          map(left, mapper, own, meta, error, completed);
+        }
+      }
+      queue.offer(end);
+    }
+    try {
+      finished.acquire(queued);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException(getStr("pipeline.interrupted"), e);
+    }
+    Throwable e = error.get();
+    if (e instanceof SQLException) {
+      throw (SQLException) e;
+    } else if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    } else if (e instanceof Error) {
+      throw (Error) e;
+    } else if (e != null) {
+      throw new SQLException(getStr("pipeline.error"), e);
+    }
+    List<RowBatch<T>> batches = new ArrayList<>(completed);
+    if (ordered) {
+      batches.sort((a, b) -> Integer.compare(a.seq, b.seq));
+    }
+    List<T> result = new ArrayList<>(batches.size() * rows);
+    for (RowBatch<T> batch : batches) {
+      result.addAll(batch.mapped);
+    }
+    return result;
+  }
+
+  private static <T> void map(RowBatch<T> batch, Mapper<T> mapper, RowResultSet row, RowMetaData meta,
+      AtomicReference<Throwable> error, Queue<RowBatch<T>> completed) {
+    if (error.get() != null) {
+      return;
+    }
+    try {
+      batch.mapped = new ArrayList<>(batch.rows.size());
+      for (Object[] values : batch.rows) {
+        batch.mapped.add(mapper.map(row.set(values), meta));
+      }
+      batch.rows = null;
+      completed.add(batch);
+    } catch (Throwable e) {
+      error.compareAndSet(null, e);
+    }
+  }
+
+  /**
+   * 読み出し側から変換側へ渡す、一定行数分の検索結果です.
+   * @param <T> 処理結果を格納する型
+   */
+  private static final class RowBatch<T> {
+    final int seq;
+    List<Object[]> rows;
+    List<T> mapped;
+
+    RowBatch(int seq, int size) {
+      this.seq = seq;
+      this.rows = new ArrayList<>(size);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public <T> ResultIterator<T> selectIterator(Connection conn, Mapper<T> mapper, String sql, Object... params)
+      throws SQLException {
+    Statement stmt = null;
+    try {
+      ResultSet rs;
+      if (params == null || params.length == 0) {
+        stmt = statement(conn);
+        rs = stmt.executeQuery(sql);
+      } else {
+        PreparedStatement prepared = statement(conn, sql, Statement.NO_GENERATED_KEYS, params);
+        stmt = prepared;
+        rs = prepared.executeQuery();
+      }
+      return new ResultIterator<T>(this, conn, stmt, rs, mapper, sql, params);
+    } catch (SQLException e) {
+      SQLException wrapped = wrap(e, sql, params);
+      if (stmt != null) {
+        try {
+          release(conn, stmt);
+        } catch (SQLException suppressed) {
+          wrapped.addSuppressed(suppressed);
+        }
+      }
+      throw wrapped;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public <T> void forEach(Connection conn, Mapper<T> mapper, RowCallback<T> callback, String sql, Object... params)
+      throws SQLException {
+    query(conn, sql, params, (rs) -> {
+      ResultSetMetaData meta = rs.getMetaData();
+      while (rs.next()) {
+        callback.accept(mapper.map(rs, meta));
+      }
+      return null;
+    });
+  }
+
+  /**
+   * 検索系SQLを実行し、ResultSetを処理する共通処理です.
+   * ResultSet、Statementは処理後にクローズされます.
+   * @param <R> 処理結果の型
+   * @param conn コネクション
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   * @param f ResultSetの処理
+   * @return 処理結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  protected <R> R query(Connection conn, String sql, Object[] params, SqlFunction<ResultSet, R> f)
+      throws SQLException {
     try {
       if (params == null || params.length == 0) {
         try (Statement stmt = statement(conn)) {
-          try (ResultSet resultSet = stmt.executeQuery(sql)) {
-            return list(result, resultSet, mapper);
+          try (ResultSet rs = stmt.executeQuery(sql)) {
+            return f.apply(rs);
           }
         }
       } else {
-        try (PreparedStatement stmt = statement(conn, sql, Statement.NO_GENERATED_KEYS, params)) {
-          try (ResultSet resultSet = stmt.executeQuery()) {
-            return list(result, resultSet, mapper);
+        PreparedStatement stmt = statement(conn, sql, Statement.NO_GENERATED_KEYS, params);
+        try {
+          try (ResultSet rs = stmt.executeQuery()) {
+            return f.apply(rs);
           }
+        } finally {
+          release(conn, stmt);
         }
       }
     } catch (SQLException e) {
@@ -103,6 +523,7 @@ public class TriteDbImpl extends TriteDbBaseImpl implements TriteDb {
   /**
    * Mapperを使って複数行を処理結果に変換する共通処理です.
    * @param <T> 処理結果を格納する型
+   * @param result 処理結果の格納先
    * @param rs ResultSet
    * @param mapper 処理結果変換クラス
    * @return 検索結果
@@ -125,8 +546,11 @@ public class TriteDbImpl extends TriteDbBaseImpl implements TriteDb {
           return stmt.executeUpdate(sql);
         }
       } else {
-        try (PreparedStatement stmt = statement(conn, sql, Statement.NO_GENERATED_KEYS, params)) {
+        PreparedStatement stmt = statement(conn, sql, Statement.NO_GENERATED_KEYS, params);
+        try {
           return stmt.executeUpdate();
+        } finally {
+          release(conn, stmt);
         }
       }
     } catch (SQLException e) {
@@ -134,6 +558,107 @@ public class TriteDbImpl extends TriteDbBaseImpl implements TriteDb {
     }
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public int[] updateBatch(Connection conn, String sql, Iterable<Object[]> params) throws SQLException {
+    return updateBatch(conn, () -> {
+      Iterator<Object[]> it = params.iterator();
+      return new Iterator<SqlSet>() {
+        @Override
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+
+        @Override
+        public SqlSet next() {
+          return new SqlSet(sql, it.next());
+        }
+      };
+    });
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int[] updateBatch(Connection conn, Iterable<SqlSet> sets) throws SQLException {
+    List<int[]> counts = new ArrayList<>();
+    int pending = 0;
+    PreparedStatement stmt = null;
+    String current = null;
+    try {
+      for (SqlSet set : sets) {
+        if (stmt == null || !current.equals(set.getSql())) {
+          if (stmt != null) {
+            executeBatch(stmt, current, counts);
+            pending = 0;
+            release(conn, stmt);
+            stmt = null;
+          }
+          current = set.getSql();
+          try {
+            stmt = statement(conn, set.getSql(), Statement.NO_GENERATED_KEYS, set.getParams());
+          } catch (SQLException e) {
+            throw wrap(e, set.getSql(), set.getParams());
+          }
+        } else {
+          try {
+            setParameters(stmt, set.getSql(), set.getParams());
+          } catch (SQLException e) {
+            throw wrap(e, set.getSql(), set.getParams());
+          }
+        }
+        stmt.addBatch();
+        if (++pending >= batchSize) {
+          executeBatch(stmt, current, counts);
+          pending = 0;
+        }
+      }
+      if (pending > 0) {
+        executeBatch(stmt, current, counts);
+      }
+    } finally {
+      if (stmt != null) {
+        release(conn, stmt);
+      }
+    }
+    return concat(counts, null);
+  }
+
+  /**
+   * バッチを実行し、行ごとの処理行数を追加します.
+   * 失敗した場合は、それまでに実行したバッチの処理行数を含む {@link BatchUpdateException} を送出します.
+   * どの行で失敗したかはドライバによって異なるため、パラメータは付加せず実行していたSQLだけを付加します.
+   */
+  private void executeBatch(PreparedStatement stmt, String sql, List<int[]> counts) throws SQLException {
+    try {
+      counts.add(stmt.executeBatch());
+    } catch (SQLException e) {
+      int[] failed = e instanceof BatchUpdateException ? ((BatchUpdateException) e).getUpdateCounts() : null;
+      int[] updateCounts = concat(counts, failed);
+      String cause = e.getMessage() == null ? getStr("blankMessage") : e.getMessage();
+      BatchUpdateException ex = new BatchUpdateException(format("batchException", cause, sql, updateCounts.length),
+          e.getSQLState(), e.getErrorCode(), updateCounts, e);
+      ex.setNextException(e);
+      throw ex;
+    }
+  }
+
+  private static int[] concat(List<int[]> counts, int[] last) {
+    int size = last == null ? 0 : last.length;
+    for (int[] c : counts) {
+      size += c.length;
+    }
+    int[] result = new int[size];
+    int pos = 0;
+    for (int[] c : counts) {
+      System.arraycopy(c, 0, result, pos, c.length);
+      pos += c.length;
+    }
+    if (last != null) {
+      System.arraycopy(last, 0, result, pos, last.length);
+    }
+    return result;
+  }
+
   /** {@inheritDoc} */
   @Override
   public Number updateAndKey(Connection conn, String sql, Object... params) throws SQLException {
@@ -142,19 +667,152 @@ public class TriteDbImpl extends TriteDbBaseImpl implements TriteDb {
         try (Statement stmt = statement(conn)) {
           stmt.executeUpdate(sql, Statement.RETURN_GENERATED_KEYS);
           try (ResultSet keys = stmt.getGeneratedKeys()) {
-            return Mapper.create((r) -> r.next() ? r.getLong(1) : null).map(keys, null);
+            return keys.next() ? keys.getLong(1) : null;
           }
         }
       } else {
-        try (PreparedStatement stmt = statement(conn, sql, Statement.RETURN_GENERATED_KEYS, params)) {
+        PreparedStatement stmt = statement(conn, sql, Statement.RETURN_GENERATED_KEYS, params);
+        try {
           stmt.executeUpdate();
           try (ResultSet keys = stmt.getGeneratedKeys()) {
-            return Mapper.create((r) -> r.next() ? r.getLong(1) : null).map(keys, null);
+            return keys.next() ? keys.getLong(1) : null;
           }
+        } finally {
+          release(conn, stmt);
         }
       }
     } catch (SQLException e) {
       throw wrap(e, sql, params);
     }
   }
+
+  /**
+   * {@inheritDoc}
+   * 1行ずつ実行するかどうかは {@link #supportsBatchKeys(Connection)} で判定します.
+   */
+  @Override
+  public long[] insertBatchAndKeys(Connection conn, String sql, Iterable<Object[]> params) throws SQLException {
+    boolean batch = supportsBatchKeys(conn);
+    LongArray keys = new LongArray(params instanceof Collection ? ((Collection<?>) params).size() : 16);
+    int pending = 0;
+    PreparedStatement stmt = null;
+    Object[] current = null;
+    try {
+      for (Object[] row : params) {
+        current = row;
+        if (stmt == null) {
+          stmt = statement(conn, sql, Statement.RETURN_GENERATED_KEYS, row);
+        } else {
+          setParameters(stmt, sql, row);
+        }
+        if (batch) {
+          stmt.addBatch();
+          if (++pending >= batchSize) {
+            stmt.executeBatch();
+            keys(stmt, pending, keys);
+            pending = 0;
+          }
+        } else {
+          stmt.executeUpdate();
+          keys(stmt, 1, keys);
+        }
+      }
+      if (pending > 0) {
+        stmt.executeBatch();
+        keys(stmt, pending, keys);
+      }
+      return keys.toArray();
+    } catch (SQLException e) {
+      throw wrap(e, sql, current);
+    } finally {
+      if (stmt != null) {
+        release(conn, stmt);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * 1つのSQLあたりの行数は、{@link #setBulkParameterLimit(int)} の上限を超えない最大の行数となります.
+   * 最後の端数の行は2のべき乗の行数に分けて実行し、SQLの種類が行数ごとに増えないようにします.
+   * {@link Capabilities#supportsMultiRowValues()} で複数行の VALUES 句をサポートしないと判定されたDBでは、バッチ実行します.
+   */
+  @Override
+  public int insertBulk(Connection conn, String sql, Iterable<Object[]> params) throws SQLException {
+    MultiRowInsert shape = bulkShapes.computeIfAbsent(sql, MultiRowInsert::parse);
+    if (!shape.isRewritable() || !getCapabilities(conn).supportsMultiRowValues()) {
+      int count = 0;
+      for (int c : updateBatch(conn, sql, params)) {
+        count += Math.max(c, 0);
+      }
+      return count;
+    }
+    int rows = Math.max(1, bulkParameterLimit / shape.getParameterCount());
+    List<Object[]> chunk = new ArrayList<>(Math.min(rows, 1024));
+    int count = 0;
+    for (Object[] row : params) {
+      chunk.add(row);
+      if (chunk.size() >= rows) {
+        count += insertBulk(conn, shape, chunk);
+        chunk.clear();
+      }
+    }
+    int offset = 0;
+    while (offset < chunk.size()) {
+      int n = Integer.highestOneBit(chunk.size() - offset);
+      count += insertBulk(conn, shape, chunk.subList(offset, offset + n));
+      offset += n;
+    }
+    return count;
+  }
+
+  private int insertBulk(Connection conn, MultiRowInsert shape, List<Object[]> rows) throws SQLException {
+    int width = shape.getParameterCount();
+    String sql = shape.sql(rows.size());
+    Object[] params = new Object[width * rows.size()];
+    for (int i = 0; i < rows.size(); i++) {
+      Object[] row = rows.get(i);
+      int length = row == null ? 0 : row.length;
+      if (length != width) {
+        throw wrap(new SQLException(format("setParameters", width, length)), sql, row);
+      }
+      System.arraycopy(row, 0, params, i * width, width);
+    }
+    try {
+      PreparedStatement stmt = statement(conn, sql, Statement.NO_GENERATED_KEYS, params);
+      try {
+        return stmt.executeUpdate();
+      } finally {
+        release(conn, stmt);
+      }
+    } catch (SQLException e) {
+      throw wrap(e, sql, params);
+    }
+  }
+
+  /**
+   * バッチ実行時にドライバが自動採番値を返すかどうかを判定します.
+   * {@link Capabilities#supportsBatchKeys()} で返さないと判定されたドライバでは、1行ずつ実行します.
+   * 判定されないドライバを使用する場合は、{@link #setBatchKeys(boolean)} でfalseを設定するか、
+   * このメソッドをオーバーライドしてください.
+   * @param conn コネクション
+   * @return バッチ実行時に自動採番値を取得できるかどうか
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  protected boolean supportsBatchKeys(Connection conn) throws SQLException {
+    return batchKeys && getCapabilities(conn).supportsBatchKeys();
+  }
+
+  private void keys(Statement stmt, int rows, LongArray keys) throws SQLException {
+    int count = 0;
+    try (ResultSet rs = stmt.getGeneratedKeys()) {
+      while (rs.next()) {
+        keys.add(rs.getLong(1));
+        count++;
+      }
+    }
+    if (count != rows) {
+      throw new SQLException(format("generatedKeys", count, rows));
+    }
+  }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 件数に上限のある、複数スレッドから使用できるキャッシュです.
+ * SQLの解析結果など、再計算できる値を保持するために使用します.
+ * 参照はロックを取らずに {@link ConcurrentHashMap} から行い、参照した時刻の目安を値ごとに記録します.
+ * 件数が上限を超えた場合は、上限の3/4程度まで、最後に参照された時刻の古いものから破棄します.
+ * 破棄は一度に1スレッドだけが行うため、一時的に上限をわずかに超えることがあります.
+ * @param <K> キーの型
+ * @param <V> 値の型
+ */
+public class BoundedCache<K, V> {
+
+  private final int maxSize;
+  private final ConcurrentHashMap<K, Node<V>> entries = new ConcurrentHashMap<>();
+  private final ReentrantLock evicting = new ReentrantLock();
+  /** 保持するたびに進める時刻の目安 */
+  private final AtomicLong tick = new AtomicLong();
+
+  /**
+   * コンストラクタ.
+   * @param maxSize 保持する件数の上限
+   */
+  public BoundedCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * 値を取得します.
+   * @param key キー
+   * @return 値. 存在しない場合はnull
+   */
+  public V get(K key) {
+    Node<V> node = entries.get(key);
+    if (node == null) {
+      return null;
+    }
+    long now = tick.get();
+    if (node.access != now) {
+      node.access = now;
+    }
+    return node.value;
+  }
+
+  /**
+   * 値を取得し、存在しない場合は生成して保持します.
+   * 値の生成はロックの外で行うため、同じキーの値が同時に複数回生成されることがあります.
+   * @param key キー
+   * @param factory 値を生成する処理. nullを返した場合は保持しません
+   * @return 値
+   */
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> factory) {
+    V value = get(key);
+    if (value == null) {
+      value = factory.apply(key);
+      if (value != null) {
+        put(key, value);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * 値を保持します.
+   * @param key キー
+   * @param value 値
+   */
+  public void put(K key, V value) {
+    entries.put(key, new Node<>(value, tick.incrementAndGet()));
+    if (entries.size() > maxSize) {
+      evict();
+    }
+  }
+
+  /**
+   * 値を破棄します.
+   * @param key キー
+   */
+  public void remove(K key) {
+    entries.remove(key);
+  }
+
+  /**
+   * すべての値を破棄します.
+   */
+  public void clear() {
+    entries.clear();
+  }
+
+  /**
+   * 保持している件数を取得します.
+   * @return 件数
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  private void evict() {
+    if (!evicting.tryLock()) {
+      return;
+    }
+    try {
+      int excess = entries.size() - (maxSize - maxSize / 4);
+      if (excess <= 0) {
+        return;
+      }
+      // 並び替えの途中で参照時刻が変わらないように、時刻を写し取ってから並べる
+      List<Candidate<K, V>> candidates = new ArrayList<>(entries.size());
+      for (Map.Entry<K, Node<V>> entry : entries.entrySet()) {
+        candidates.add(new Candidate<>(entry.getKey(), entry.getValue()));
+      }
+      candidates.sort((a, b) -> Long.compare(a.access, b.access));
+      for (int i = 0; i < excess && i < candidates.size(); i++) {
+        Candidate<K, V> candidate = candidates.get(i);
+        entries.remove(candidate.key, candidate.node);
+      }
+    } finally {
+      evicting.unlock();
+    }
+  }
+
+  /**
+   * 保持している値と、最後に参照された時刻の目安です.
+   * @param <V> 値の型
+   */
+  private static final class Node<V> {
+    final V value;
+    volatile long access;
+
+    Node(V value, long access) {
+      this.value = value;
+      this.access = access;
+    }
+  }
+
+  /**
+   * 破棄する候補です.
+   * @param <K> キーの型
+   * @param <V> 値の型
+   */
+  private static final class Candidate<K, V> {
+    final K key;
+    final Node<V> node;
+    final long access;
+
+    Candidate(K key, Node<V> node) {
+      this.key = key;
+      this.node = node;
+      this.access = node.access;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * キャッシュのヒット数、ミス数、破棄数を集計するクラスです.
+ * 複数スレッドから同時に更新されても正しく集計されます.
+ */
+public class CacheStats {
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * ヒットを1件記録します.
+   */
+  public void hit() {
+    hits.incrementAndGet();
+  }
+
+  /**
+   * ミスを1件記録します.
+   */
+  public void miss() {
+    misses.incrementAndGet();
+  }
+
+  /**
+   * 破棄を1件記録します.
+   */
+  public void evict() {
+    evictions.incrementAndGet();
+  }
+
+  /**
+   * ヒット数を取得します.
+   * @return ヒット数
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * ミス数を取得します.
+   * @return ミス数
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * 容量超過などにより破棄された件数を取得します.
+   * @return 破棄数
+   */
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  /**
+   * ヒット率を取得します.
+   * @return ヒット率（参照が1件もない場合は0）
+   */
+  public double getHitRatio() {
+    long h = hits.get();
+    long total = h + misses.get();
+    return total == 0 ? 0 : (double) h / total;
+  }
+
+  /**
+   * 集計値をすべて0に戻します.
+   */
+  public void reset() {
+    hits.set(0);
+    misses.set(0);
+    evictions.set(0);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return String.format("hits:%d misses:%d evictions:%d", getHitCount(), getMissCount(), getEvictionCount());
+  }
+}
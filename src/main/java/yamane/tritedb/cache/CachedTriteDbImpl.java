@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.cache;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import yamane.tritedb.Mapper;
+import yamane.tritedb.Session;
+import yamane.tritedb.TriteDbImpl;
+import yamane.tritedb.utils.SqlFunction;
+
+/**
+ * 検索結果をキャッシュするTriteDbの実装クラスです.
+ * select、selectListの結果を {@link QueryCache} に保持し、同じSQL、パラメータ、Mapper、オプションでの検索にはキャッシュを返します.
+ * {@link #withOptions(yamane.tritedb.QueryOptions)} で取得したTriteDbとはキャッシュを共有しますが、
+ * オプションが異なる検索結果は別に保持します.
+ * update、updateAndKey、updateBatch、insertBatchAndKeys、insertBulkを実行すると、更新したテーブルを参照している検索結果を破棄します.
+ * <ul>
+ * <li>Mapperは同一インスタンスの場合のみ同じキーとして扱います. BeanMapper.instance() など使い回せるMapperを使用してください.</li>
+ * <li>selectListの結果は変更不可のListとして返します.</li>
+ * <li>キャッシュした結果は同じインスタンスをすべての呼び出し元に返します.
+ * 取得したオブジェクトを変更すると他の呼び出し元の結果も変わるため、変更しないでください.
+ * 変更する場合は複製するか、キャッシュしないTriteDbで検索してください.</li>
+ * <li>自動コミットが無効なコネクションでは、キャッシュを参照も保持もせずに検索します.
+ * トランザクション内で更新した内容を読めるようにし、未確定のデータをキャッシュしないためです.</li>
+ * <li>selectIterator、selectStream、forEachの結果はキャッシュしません.</li>
+ * <li>{@link #inTransaction(SqlFunction)} の中で更新した場合は、SQLの実行時に加えてコミット、ロールバックの後にも破棄します.
+ * それ以外の方法でトランザクションを制御する場合は、コミット後に {@link QueryCache#invalidate(String)} を呼び出してください.</li>
+ * </ul>
+ */
+public class CachedTriteDbImpl extends TriteDbImpl {
+
+  private static final Object NULL = new Object();
+
+  private final QueryCache cache;
+
+  /** トランザクション中のコネクションと、そのトランザクションで実行した更新系SQL */
+  private final Map<Connection, Set<String>> transactions = Collections.synchronizedMap(new IdentityHashMap<>());
+
+  /**
+   * コンストラクタ.
+   * @param dataSource DBアクセスに使用するDataSource
+   * @param cache 検索結果のキャッシュ
+   */
+  public CachedTriteDbImpl(DataSource dataSource, QueryCache cache) {
+    super(dataSource);
+    this.cache = cache;
+  }
+
+  /**
+   * 検索結果のキャッシュを取得します.
+   * @return 検索結果のキャッシュ
+   */
+  public QueryCache getCache() {
+    return cache;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T select(Connection conn, Mapper<T> mapper, String sql, Object... params) throws SQLException {
+    if (!conn.getAutoCommit()) {
+      return super.select(conn, mapper, sql, params);
+    }
+    Object cached = cache.get(mapper, false, options, sql, params);
+    if (cached != null) {
+      return cached == NULL ? null : (T) cached;
+    }
+    long generation = cache.generation(sql);
+    T result = super.select(conn, mapper, sql, params);
+    cache.put(mapper, false, options, sql, params, result == null ? NULL : result, generation);
+    return result;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> List<T> selectList(Connection conn, Mapper<T> mapper, String sql, Object... params)
+      throws SQLException {
+    if (!conn.getAutoCommit()) {
+      return Collections.unmodifiableList(super.selectList(conn, mapper, sql, params));
+    }
+    Object cached = cache.get(mapper, true, options, sql, params);
+    if (cached != null) {
+      return (List<T>) cached;
+    }
+    long generation = cache.generation(sql);
+    List<T> result = Collections.unmodifiableList(super.selectList(conn, mapper, sql, params));
+    cache.put(mapper, true, options, sql, params, result, generation);
+    return result;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int update(Connection conn, String sql, Object... params) throws SQLException {
+    try {
+      return super.update(conn, sql, params);
+    } finally {
+      invalidate(conn, sql);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Number updateAndKey(Connection conn, String sql, Object... params) throws SQLException {
+    try {
+      return super.updateAndKey(conn, sql, params);
+    } finally {
+      invalidate(conn, sql);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int[] updateBatch(Connection conn, Iterable<SqlSet> sets) throws SQLException {
+    Set<String> sqls = new HashSet<>();
+    Iterable<SqlSet> recording = () -> {
+      Iterator<SqlSet> it = sets.iterator();
+      return new Iterator<SqlSet>() {
+        @Override
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+
+        @Override
+        public SqlSet next() {
+          SqlSet set = it.next();
+          sqls.add(set.getSql());
+          return set;
+        }
+      };
+    };
+    try {
+      return super.updateBatch(conn, recording);
+    } finally {
+      for (String sql : sqls) {
+        invalidate(conn, sql);
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long[] insertBatchAndKeys(Connection conn, String sql, Iterable<Object[]> params) throws SQLException {
+    try {
+      return super.insertBatchAndKeys(conn, sql, params);
+    } finally {
+      invalidate(conn, sql);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int insertBulk(Connection conn, String sql, Iterable<Object[]> params) throws SQLException {
+    try {
+      return super.insertBulk(conn, sql, params);
+    } finally {
+      invalidate(conn, sql);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * トランザクションの中で更新したテーブルを参照している検索結果は、コミット、ロールバックの後にもう一度破棄します.
+   * 更新の実行からコミットまでの間に、他のコネクションが更新前のデータをキャッシュすることがあるためです.
+   */
+  @Override
+  public <R> R inTransaction(SqlFunction<Session, R> f) throws SQLException {
+    Set<String> touched = ConcurrentHashMap.newKeySet();
+    try {
+      return super.inTransaction((session) -> {
+        Connection conn = session.getConnection();
+        transactions.put(conn, touched);
+        try {
+          return f.apply(session);
+        } finally {
+          transactions.remove(conn);
+        }
+      });
+    } finally {
+      for (String sql : touched) {
+        cache.invalidate(sql);
+      }
+    }
+  }
+
+  private void invalidate(Connection conn, String sql) {
+    cache.invalidate(sql);
+    Set<String> touched = transactions.get(conn);
+    if (touched != null) {
+      touched.add(sql);
+    }
+  }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import yamane.tritedb.Mapper;
+import yamane.tritedb.QueryOptions;
+
+/**
+ * 検索結果のキャッシュです.
+ * SQL、パラメータ、Mapper、Statementのオプションの組み合わせをキーとして検索結果を保持します.
+ * <ul>
+ * <li>件数が上限を超えた場合は、最も長く参照されていないものから破棄します.</li>
+ * <li>有効期間を過ぎたものは、参照時に破棄します.</li>
+ * <li>検索結果は参照しているテーブル名と紐づけて保持し、同じテーブルを更新するSQLが実行された時点で破棄します.</li>
+ * </ul>
+ * テーブル名はSQLのFROM句、JOIN句、INTO句、UPDATE句などから解析します.
+ * 解析できないSQLについては {@link #tag(String, String...)} で参照するテーブル名を宣言してください.
+ * テーブル名がわからない検索系SQLはキャッシュせず、テーブル名がわからない更新系SQLはすべてのキャッシュを破棄します.
+ * <p>
+ * 検索の実行前に {@link #generation(String)} を取得して {@link #put(Mapper, boolean, QueryOptions, String, Object[], Object, long)}
+ * に渡すと、検索中に同じテーブルの検索結果が破棄された場合は、その検索結果をキャッシュしません.
+ */
+public class QueryCache {
+
+  private static final Pattern IDENT = Pattern.compile("[\\w$.\"`\\[\\]]+");
+  private static final Pattern TABLES = Pattern.compile(
+      "(?i)\\b(?:from|join|into|update|table)\\s+(" + IDENT + "(?:\\s+(?:as\\s+)?\\w+)?"
+          + "(?:\\s*,\\s*" + IDENT + "(?:\\s+(?:as\\s+)?\\w+)?)*)");
+  private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("select", "where", "set", "values",
+      "on", "using", "inner", "left", "right", "outer", "cross", "natural", "join", "group", "order", "having",
+      "limit", "union", "lateral", "only", "if", "exists"));
+
+  private final int maxSize;
+  private final long ttl;
+  private final CacheStats stats = new CacheStats();
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<String, Set<Key>> byTable = new HashMap<>();
+  private final Map<String, Long> generations = new HashMap<>();
+  private final ConcurrentMap<String, Set<String>> tagged = new ConcurrentHashMap<>();
+  private final BoundedCache<String, Set<String>> parsed = new BoundedCache<>(1024);
+  private long generation;
+
+  /**
+   * コンストラクタ.
+   * @param maxSize 保持する検索結果の上限
+   * @param ttl 検索結果の有効期間（0の場合は無期限）
+   * @param unit 有効期間の単位
+   */
+  public QueryCache(int maxSize, long ttl, TimeUnit unit) {
+    this.maxSize = maxSize;
+    this.ttl = unit.toNanos(ttl);
+  }
+
+  /**
+   * SQLが参照、更新するテーブル名を宣言します.
+   * 宣言したテーブル名は、SQLの解析結果よりも優先して使用されます.
+   * @param sql SQL
+   * @param tableNames テーブル名
+   */
+  public void tag(String sql, String... tableNames) {
+    Set<String> set = new HashSet<>();
+    for (String table : tableNames) {
+      set.add(normalize(table));
+    }
+    tagged.put(sql, Collections.unmodifiableSet(set));
+  }
+
+  /**
+   * SQLが参照、更新するテーブル名を取得します.
+   * @param sql SQL
+   * @return テーブル名（小文字、スキーマ名なし）. わからない場合は空のSet
+   */
+  public Set<String> tables(String sql) {
+    Set<String> result = tagged.get(sql);
+    return result != null ? result : parsed.computeIfAbsent(sql, QueryCache::parse);
+  }
+
+  /**
+   * SQLが参照するテーブルの検索結果が破棄された回数を取得します.
+   * 検索の実行前に取得して {@link #put(Mapper, boolean, QueryOptions, String, Object[], Object, long)} に渡してください.
+   * @param sql 検索系SQL
+   * @return 破棄された回数
+   */
+  public long generation(String sql) {
+    return generation(tables(sql));
+  }
+
+  private synchronized long generation(Set<String> tableNames) {
+    long result = generation;
+    for (String table : tableNames) {
+      Long value = generations.get(table);
+      if (value != null) {
+        result += value;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * キャッシュされた検索結果を取得します.
+   * @param mapper 処理結果変換クラス
+   * @param list 複数行の検索結果かどうか
+   * @param options 検索時のStatementのオプション
+   * @param sql SQL
+   * @param params SQL実行時の可変パラメータ
+   * @return キャッシュされた検索結果. 存在しない場合はnull
+   */
+  public synchronized Object get(Mapper<?> mapper, boolean list, QueryOptions options, String sql,
+      Object... params) {
+    Key key = new Key(mapper, list, options, sql, params);
+    Entry entry = entries.get(key);
+    if (entry != null && ttl > 0 && System.nanoTime() - entry.expires > 0) {
+      remove(key);
+      stats.evict();
+      entry = null;
+    }
+    if (entry == null) {
+      stats.miss();
+      return null;
+    }
+    stats.hit();
+    return entry.value;
+  }
+
+  /**
+   * 検索結果をキャッシュします.
+   * 参照するテーブル名がわからないSQLの結果はキャッシュしません.
+   * 検索の実行前に取得した {@link #generation(String)} から変わっている場合、
+   * 検索中に更新された可能性があるためキャッシュしません.
+   * @param mapper 処理結果変換クラス
+   * @param list 複数行の検索結果かどうか
+   * @param options 検索時のStatementのオプション
+   * @param sql SQL
+   * @param params SQL実行時の可変パラメータ
+   * @param value 検索結果
+   * @param generation 検索の実行前に取得した {@link #generation(String)} の値
+   */
+  public void put(Mapper<?> mapper, boolean list, QueryOptions options, String sql, Object[] params, Object value,
+      long generation) {
+    Set<String> tableNames = tables(sql);
+    if (tableNames.isEmpty() || maxSize <= 0) {
+      return;
+    }
+    Key key = new Key(mapper, list, options, sql, params == null ? null : params.clone());
+    synchronized (this) {
+      if (generation(tableNames) != generation) {
+        return;
+      }
+      remove(key);
+      entries.put(key, new Entry(value, tableNames, System.nanoTime() + ttl));
+      for (String table : tableNames) {
+        byTable.computeIfAbsent(table, (t) -> new HashSet<>()).add(key);
+      }
+      while (entries.size() > maxSize) {
+        remove(entries.keySet().iterator().next());
+        stats.evict();
+      }
+    }
+  }
+
+  /**
+   * 更新系SQLが更新するテーブルを参照している検索結果を破棄します.
+   * 更新するテーブル名がわからない場合は、すべての検索結果を破棄します.
+   * @param sql 更新系SQL
+   */
+  public void invalidate(String sql) {
+    Set<String> tableNames = tables(sql);
+    if (tableNames.isEmpty()) {
+      invalidateAll();
+      return;
+    }
+    synchronized (this) {
+      for (String table : tableNames) {
+        generations.merge(table, 1L, Long::sum);
+        Set<Key> keys = byTable.get(table);
+        if (keys != null) {
+          for (Key key : keys.toArray(new Key[keys.size()])) {
+            remove(key);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * すべての検索結果を破棄します.
+   */
+  public synchronized void invalidateAll() {
+    generation++;
+    entries.clear();
+    byTable.clear();
+  }
+
+  /**
+   * 保持している検索結果の件数を取得します.
+   * @return 検索結果の件数
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * ヒット率や破棄数などの集計を取得します.
+   * @return キャッシュの集計
+   */
+  public CacheStats getStats() {
+    return stats;
+  }
+
+  private void remove(Key key) {
+    Entry entry = entries.remove(key);
+    if (entry == null) {
+      return;
+    }
+    for (String table : entry.tables) {
+      Set<Key> keys = byTable.get(table);
+      if (keys != null) {
+        keys.remove(key);
+        if (keys.isEmpty()) {
+          byTable.remove(table);
+        }
+      }
+    }
+  }
+
+  private static Set<String> parse(String sql) {
+    Set<String> result = new HashSet<>();
+    Matcher m = TABLES.matcher(sql);
+    while (m.find()) {
+      for (String part : m.group(1).split(",")) {
+        Matcher ident = IDENT.matcher(part.trim());
+        if (ident.lookingAt()) {
+          String table = normalize(ident.group());
+          if (!table.isEmpty() && !KEYWORDS.contains(table)) {
+            result.add(table);
+          }
+        }
+      }
+    }
+    return Collections.unmodifiableSet(result);
+  }
+
+  private static String normalize(String table) {
+    String name = table.replaceAll("[\"`\\[\\]]", "");
+    int dot = name.lastIndexOf('.');
+    return (dot < 0 ? name : name.substring(dot + 1)).toLowerCase(Locale.ROOT);
+  }
+
+  private static final class Entry {
+    final Object value;
+    final Set<String> tables;
+    final long expires;
+
+    Entry(Object value, Set<String> tables, long expires) {
+      this.value = value;
+      this.tables = tables;
+      this.expires = expires;
+    }
+  }
+
+  private static final class Key {
+    private final Mapper<?> mapper;
+    private final boolean list;
+    private final QueryOptions options;
+    private final String sql;
+    private final Object[] params;
+    private final int hash;
+
+    Key(Mapper<?> mapper, boolean list, QueryOptions options, String sql, Object[] params) {
+      this.mapper = mapper;
+      this.list = list;
+      this.options = options;
+      this.sql = sql;
+      this.params = params == null || params.length == 0 ? null : params;
+      this.hash = (System.identityHashCode(mapper) * 31 + sql.hashCode()) * 31 + Arrays.deepHashCode(this.params)
+          + (list ? 1 : 0) + Objects.hashCode(options) * 17;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return mapper == other.mapper && list == other.list && Objects.equals(options, other.options)
+          && sql.equals(other.sql)
+          && Arrays.deepEquals(params, other.params);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
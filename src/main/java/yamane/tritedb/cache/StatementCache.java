@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.cache;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 1つのコネクションに紐づく PreparedStatement のキャッシュです.
+ * SQLと自動採番値取得の指定をキーとして、使用済みの PreparedStatement を保持します.
+ * 使用中の PreparedStatement はキャッシュから取り出された状態となるため、同じSQLを同時に実行しても干渉しません.
+ * 未使用の PreparedStatement が上限を超えた場合は、最も長く使われていないものからクローズされます.
+ */
+public class StatementCache {
+
+  private final int maxSize;
+  private final CacheStats stats;
+  private final LinkedHashMap<Key, PreparedStatement> idle;
+  private final Map<Statement, Key> used = new IdentityHashMap<>();
+
+  /**
+   * コンストラクタ.
+   * @param maxSize 保持する未使用 PreparedStatement の上限
+   * @param stats ヒット数などの集計先
+   */
+  public StatementCache(int maxSize, CacheStats stats) {
+    this.maxSize = maxSize;
+    this.stats = stats;
+    this.idle = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * キャッシュから PreparedStatement を取り出します.
+   * 取り出された PreparedStatement は {@link #release(Statement)} で戻されるまで使用中となります.
+   * @param sql SQL
+   * @param key 自動採番値を取得するかどうか
+   * @return キャッシュされていた PreparedStatement. 存在しない場合はnull
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public PreparedStatement take(String sql, int key) throws SQLException {
+    return take(sql, key, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+  }
+
+  /**
+   * キャッシュから PreparedStatement を取り出します.
+   * 取り出された PreparedStatement は {@link #release(Statement)} で戻されるまで使用中となります.
+   * @param sql SQL
+   * @param key 自動採番値を取得するかどうか
+   * @param type ResultSetの種類
+   * @param concurrency ResultSetの並行処理モード
+   * @return キャッシュされていた PreparedStatement. 存在しない場合はnull
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public synchronized PreparedStatement take(String sql, int key, int type, int concurrency) throws SQLException {
+    Key k = new Key(sql, key, type, concurrency);
+    PreparedStatement stmt = idle.remove(k);
+    if (stmt != null && stmt.isClosed()) {
+      stmt = null;
+    }
+    if (stmt == null) {
+      stats.miss();
+      return null;
+    }
+    stats.hit();
+    used.put(stmt, k);
+    return stmt;
+  }
+
+  /**
+   * 新たに生成した PreparedStatement を使用中として登録します.
+   * @param sql SQL
+   * @param key 自動採番値を取得するかどうか
+   * @param stmt 登録する PreparedStatement
+   */
+  public void add(String sql, int key, PreparedStatement stmt) {
+    add(sql, key, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, stmt);
+  }
+
+  /**
+   * 新たに生成した PreparedStatement を使用中として登録します.
+   * @param sql SQL
+   * @param key 自動採番値を取得するかどうか
+   * @param type ResultSetの種類
+   * @param concurrency ResultSetの並行処理モード
+   * @param stmt 登録する PreparedStatement
+   */
+  public synchronized void add(String sql, int key, int type, int concurrency, PreparedStatement stmt) {
+    used.put(stmt, new Key(sql, key, type, concurrency));
+  }
+
+  /**
+   * 使用済みの PreparedStatement をキャッシュに戻します.
+   * パラメータとバッチはクリアされ、Statementはクローズされません.
+   * @param stmt 使用済みの Statement
+   * @return キャッシュに戻した場合true. このキャッシュの管理外の場合はfalse
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public synchronized boolean release(Statement stmt) throws SQLException {
+    Key k = used.remove(stmt);
+    if (k == null) {
+      return false;
+    }
+    PreparedStatement prepared = (PreparedStatement) stmt;
+    try {
+      prepared.clearParameters();
+      prepared.clearBatch();
+    } catch (SQLException e) {
+      prepared.close();
+      return true;
+    }
+    PreparedStatement old = idle.put(k, prepared);
+    if (old != null) {
+      old.close();
+    }
+    while (idle.size() > maxSize) {
+      Iterator<PreparedStatement> it = idle.values().iterator();
+      PreparedStatement eldest = it.next();
+      it.remove();
+      stats.evict();
+      eldest.close();
+    }
+    return true;
+  }
+
+  /**
+   * キャッシュしているすべての PreparedStatement をクローズします.
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public synchronized void close() throws SQLException {
+    List<Statement> all = new ArrayList<>(idle.values());
+    all.addAll(used.keySet());
+    idle.clear();
+    used.clear();
+    SQLException error = null;
+    for (Statement stmt : all) {
+      try {
+        stmt.close();
+      } catch (SQLException e) {
+        error = error == null ? e : error;
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  /**
+   * 未使用の PreparedStatement の件数を取得します.
+   * @return 未使用の PreparedStatement の件数
+   */
+  public synchronized int size() {
+    return idle.size();
+  }
+
+  private static final class Key {
+    private final String sql;
+    private final int key;
+    private final int type;
+    private final int concurrency;
+
+    Key(String sql, int key, int type, int concurrency) {
+      this.sql = sql;
+      this.key = key;
+      this.type = type;
+      this.concurrency = concurrency;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return key == other.key && type == other.type && concurrency == other.concurrency && sql.equals(other.sql);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(sql, key, type, concurrency);
+    }
+  }
+}
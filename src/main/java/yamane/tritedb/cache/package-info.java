@@ -0,0 +1,10 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+/**
+ * Statementや検索結果などをキャッシュする機能を提供します.
+ */
+package yamane.tritedb.cache;
@@ -48,6 +48,15 @@ public class BeanProcessor<T> extends AbstractProcessor<T> {
     }
   }
   
+  /**
+   * 指定された名前のプロパティが存在するかどうかを返します.
+   * @param name　プロパティ名
+   * @return 存在の有無
+   */
+  public boolean contains(String name) {
+    return getInfo(name) != null;
+  }
+
   /**
    * getterを用いてデータの読み出しを行います.
    * @param target 処理の対象となるクラス
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.pool;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * コネクションプールの利用状況を集計するクラスです.
+ */
+public class PoolStats {
+
+  private final AtomicLong borrowed = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong created = new AtomicLong();
+  private final AtomicLong destroyed = new AtomicLong();
+  private final AtomicLong totalWait = new AtomicLong();
+  private final AtomicLong maxWait = new AtomicLong();
+
+  void borrow(long waitNanos) {
+    borrowed.incrementAndGet();
+    totalWait.addAndGet(waitNanos);
+    maxWait.accumulateAndGet(waitNanos, Math::max);
+  }
+
+  void timeout() {
+    timeouts.incrementAndGet();
+  }
+
+  void create() {
+    created.incrementAndGet();
+  }
+
+  void destroy() {
+    destroyed.incrementAndGet();
+  }
+
+  /**
+   * コネクションを貸し出した回数を取得します.
+   * @return 貸し出し回数
+   */
+  public long getBorrowCount() {
+    return borrowed.get();
+  }
+
+  /**
+   * 待ち時間の上限を超えて取得に失敗した回数を取得します.
+   * @return タイムアウト回数
+   */
+  public long getTimeoutCount() {
+    return timeouts.get();
+  }
+
+  /**
+   * 物理コネクションを生成した回数を取得します.
+   * @return 生成回数
+   */
+  public long getCreatedCount() {
+    return created.get();
+  }
+
+  /**
+   * 物理コネクションを破棄した回数を取得します.
+   * @return 破棄回数
+   */
+  public long getDestroyedCount() {
+    return destroyed.get();
+  }
+
+  /**
+   * コネクション取得時の待ち時間の合計を取得します.
+   * @return 待ち時間の合計（ミリ秒）
+   */
+  public double getTotalWaitMillis() {
+    return totalWait.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  /**
+   * コネクション取得時の平均待ち時間を取得します.
+   * @return 平均待ち時間（ミリ秒）
+   */
+  public double getAverageWaitMillis() {
+    long count = borrowed.get();
+    return count == 0 ? 0 : getTotalWaitMillis() / count;
+  }
+
+  /**
+   * コネクション取得時の最大待ち時間を取得します.
+   * @return 最大待ち時間（ミリ秒）
+   */
+  public double getMaxWaitMillis() {
+    return maxWait.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return String.format("borrowed:%d timeouts:%d created:%d destroyed:%d avgWait:%.3fms maxWait:%.3fms",
+        getBorrowCount(), getTimeoutCount(), getCreatedCount(), getDestroyedCount(), getAverageWaitMillis(),
+        getMaxWaitMillis());
+  }
+}
@@ -0,0 +1,652 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.pool;
+
+import static yamane.tritedb.TriteDbBase.*;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * TriteDbの「1文ごとにコネクションを取得して返却する」使い方に合わせた、軽量なコネクションプールです.
+ * 任意の DataSource、またはJDBCのURLをラップして使用します.
+ * <ul>
+ * <li>未使用のコネクションはロックフリーなキューで保持し、最後に返却されたものから優先して貸し出します.</li>
+ * <li>同時に貸し出すコネクションの数は最大数までに制限され、空きがない場合は待ち時間の上限まで待機します.</li>
+ * <li>一定時間以上使われていなかったコネクションは、貸し出し時に有効性を検証します.</li>
+ * <li>未使用の時間が上限を超えたコネクションは、バックグラウンドで破棄されます.</li>
+ * </ul>
+ * 貸し出したコネクションのclose()を呼ぶとプールに返却されます.
+ * 返却時には次の利用者に状態が残らないように、次の処理を行います.
+ * <ul>
+ * <li>クローズされていないStatementをクローズします.</li>
+ * <li>自動コミットが無効になっていた場合は、ロールバックしたうえで自動コミットを有効に戻します.</li>
+ * <li>読み取り専用、トランザクション分離レベル、カタログ、スキーマ、ネットワークのタイムアウト、ResultSetの保持機能が
+ * 変更されていた場合は、物理コネクションの生成時の値に戻します.</li>
+ * <li>型マップ、クライアント情報など、戻せない項目が変更されていた場合は、物理コネクションを破棄します.</li>
+ * </ul>
+ * 貸し出したコネクションや、そこから生成したStatement、ResultSetからは物理コネクションを取得できません.
+ * unwrap(Connection.class)、Statement.getConnection()、DatabaseMetaData.getConnection() は貸し出したコネクションを、
+ * ResultSet.getStatement() は生成元のStatementのラッパーを返します.
+ */
+public class TritePool implements DataSource, AutoCloseable {
+
+  /** 返却時に戻せる変更メソッド. setAutoCommit と setSavepoint はロールバックで戻します */
+  private static final Set<String> RESETTABLE = new HashSet<>(Arrays.asList("setAutoCommit", "setSavepoint",
+      "setReadOnly", "setTransactionIsolation", "setCatalog", "setSchema", "setNetworkTimeout", "setHoldability"));
+
+  private final DataSource dataSource;
+  private final String url;
+  private final String user;
+  private final String password;
+  private final int maxSize;
+  private final Semaphore permits;
+  private final ConcurrentLinkedDeque<Entry> idle = new ConcurrentLinkedDeque<>();
+  private final PoolStats stats = new PoolStats();
+  private final ScheduledExecutorService evictor;
+  private volatile boolean closed;
+  private long maxWait = TimeUnit.SECONDS.toMillis(30);
+  private long idleTimeout = TimeUnit.MINUTES.toMillis(10);
+  private long validationInterval = 500;
+  private int validationTimeout = 5;
+  private PrintWriter logWriter;
+  private int loginTimeout;
+
+  /**
+   * 物理コネクションの取得元となる DataSource を指定してプールを生成します.
+   * @param dataSource 物理コネクションの取得元
+   * @param maxSize 同時に貸し出すコネクションの最大数
+   */
+  public TritePool(DataSource dataSource, int maxSize) {
+    this(dataSource, null, null, null, maxSize);
+  }
+
+  /**
+   * JDBCのURLを指定してプールを生成します.
+   * 物理コネクションは DriverManager から取得します.
+   * @param url JDBCのURL
+   * @param user ユーザー名
+   * @param password パスワード
+   * @param maxSize 同時に貸し出すコネクションの最大数
+   */
+  public TritePool(String url, String user, String password, int maxSize) {
+    this(null, url, user, password, maxSize);
+  }
+
+  private TritePool(DataSource dataSource, String url, String user, String password, int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize:" + maxSize);
+    }
+    this.dataSource = dataSource;
+    this.url = url;
+    this.user = user;
+    this.password = password;
+    this.maxSize = maxSize;
+    this.permits = new Semaphore(maxSize, true);
+    this.evictor = Executors.newSingleThreadScheduledExecutor((r) -> {
+      Thread t = new Thread(r, "TritePool-evictor");
+      t.setDaemon(true);
+      return t;
+    });
+    this.evictor.scheduleWithFixedDelay(this::evict, 1, 1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * コネクションを借り出します.
+   * 最大数まで貸し出し中の場合は、返却されるか待ち時間の上限に達するまで待機します.
+   * @return コネクション. close()を呼ぶとプールに返却されます
+   * @throws SQLException 待ち時間の上限を超えた場合、DBがエラーを通知した場合
+   */
+  @Override
+  public Connection getConnection() throws SQLException {
+    long start = System.nanoTime();
+    if (closed) {
+      throw new SQLException(getStr("pool.closed"));
+    }
+    try {
+      if (!permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+        stats.timeout();
+        throw new SQLException(format("pool.timeout", maxWait));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException(getStr("pool.interrupted"), e);
+    }
+    try {
+      Entry entry;
+      while ((entry = idle.pollFirst()) != null && !validate(entry)) {
+        destroy(entry);
+      }
+      if (entry == null) {
+        entry = new Entry(connect());
+        stats.create();
+      }
+      stats.borrow(System.nanoTime() - start);
+      return entry.lend();
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * このプールではユーザーごとのコネクションは扱えません.
+   * @throws SQLFeatureNotSupportedException 常に送出されます
+   */
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  /**
+   * プールをクローズします.
+   * 未使用のコネクションはすぐに、貸し出し中のコネクションは返却された時点でクローズされます.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    evictor.shutdownNow();
+    Entry entry;
+    while ((entry = idle.pollFirst()) != null) {
+      destroy(entry);
+    }
+  }
+
+  /**
+   * プールの利用状況を取得します.
+   * @return プールの利用状況
+   */
+  public PoolStats getStats() {
+    return stats;
+  }
+
+  /**
+   * 同時に貸し出すコネクションの最大数を取得します.
+   * @return 最大数
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * 貸し出し中のコネクション数を取得します.
+   * @return 貸し出し中のコネクション数
+   */
+  public int getActiveCount() {
+    return maxSize - permits.availablePermits();
+  }
+
+  /**
+   * プール内の未使用のコネクション数を取得します.
+   * @return 未使用のコネクション数
+   */
+  public int getIdleCount() {
+    return idle.size();
+  }
+
+  /**
+   * コネクション取得時の待ち時間の上限を設定します.
+   * @param maxWait 待ち時間の上限（ミリ秒）
+   */
+  public void setMaxWait(long maxWait) {
+    this.maxWait = maxWait;
+  }
+
+  /**
+   * 未使用のコネクションを破棄するまでの時間を設定します.
+   * @param idleTimeout 未使用のコネクションを破棄するまでの時間（ミリ秒）
+   */
+  public void setIdleTimeout(long idleTimeout) {
+    this.idleTimeout = idleTimeout;
+  }
+
+  /**
+   * 貸し出し時に有効性を検証するまでの未使用時間を設定します.
+   * 0を設定すると、貸し出しのたびに検証します.
+   * @param validationInterval 有効性を検証するまでの未使用時間（ミリ秒）
+   */
+  public void setValidationInterval(long validationInterval) {
+    this.validationInterval = validationInterval;
+  }
+
+  /**
+   * 有効性の検証時の待ち時間の上限を設定します.
+   * @param validationTimeout 検証時の待ち時間の上限（秒）
+   */
+  public void setValidationTimeout(int validationTimeout) {
+    this.validationTimeout = validationTimeout;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return logWriter;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    this.logWriter = out;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    this.loginTimeout = seconds;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return loginTimeout;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+    if (dataSource != null) {
+      return dataSource.unwrap(iface);
+    }
+    throw new SQLException(iface.getName());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || (dataSource != null && dataSource.isWrapperFor(iface));
+  }
+
+  /**
+   * 物理コネクションを生成します.
+   * @return 物理コネクション
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  protected Connection connect() throws SQLException {
+    if (dataSource != null) {
+      return dataSource.getConnection();
+    }
+    return DriverManager.getConnection(url, user, password);
+  }
+
+  private boolean validate(Entry entry) {
+    if (System.nanoTime() - entry.lastUsed < TimeUnit.MILLISECONDS.toNanos(validationInterval)) {
+      return true;
+    }
+    try {
+      return entry.physical.isValid(validationTimeout);
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  private void giveBack(Lent lent) {
+    Entry entry = lent.entry;
+    try {
+      for (LentStatement stmt : lent.statements) {
+        stmt.physical.close();
+      }
+      lent.statements.clear();
+      if (closed || entry.physical.isClosed()) {
+        destroy(entry);
+        return;
+      }
+      if (!entry.physical.getAutoCommit()) {
+        entry.physical.rollback();
+        entry.physical.setAutoCommit(true);
+      }
+      if (!entry.reset(lent.changed)) {
+        destroy(entry);
+        return;
+      }
+      entry.physical.clearWarnings();
+      entry.lastUsed = System.nanoTime();
+      idle.offerFirst(entry);
+      if (closed && idle.remove(entry)) {
+        destroy(entry);
+      }
+    } catch (SQLException e) {
+      destroy(entry);
+    } finally {
+      permits.release();
+    }
+  }
+
+  private void destroy(Entry entry) {
+    stats.destroy();
+    try {
+      entry.physical.close();
+    } catch (SQLException e) {
+      // 破棄するコネクションのエラーは無視する
+    }
+  }
+
+  private void evict() {
+    long limit = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+    Iterator<Entry> it = idle.descendingIterator();
+    while (it.hasNext()) {
+      Entry entry = it.next();
+      if (entry.lastUsed - limit < 0 && idle.remove(entry)) {
+        destroy(entry);
+      }
+    }
+  }
+
+  /**
+   * プールで管理している物理コネクションです.
+   */
+  private class Entry {
+    final Connection physical;
+    final boolean readOnly;
+    final int isolation;
+    final String catalog;
+    final String schema;
+    final int networkTimeout;
+    final int holdability;
+    volatile long lastUsed = System.nanoTime();
+
+    Entry(Connection physical) throws SQLException {
+      this.physical = physical;
+      try {
+        this.readOnly = physical.isReadOnly();
+        this.isolation = physical.getTransactionIsolation();
+        this.catalog = physical.getCatalog();
+      } catch (SQLException e) {
+        physical.close();
+        throw e;
+      }
+      String schema;
+      try {
+        schema = physical.getSchema();
+      } catch (SQLException | AbstractMethodError e) {
+        schema = null;
+      }
+      this.schema = schema;
+      int networkTimeout;
+      try {
+        networkTimeout = physical.getNetworkTimeout();
+      } catch (SQLException | AbstractMethodError e) {
+        networkTimeout = -1;
+      }
+      this.networkTimeout = networkTimeout;
+      int holdability;
+      try {
+        holdability = physical.getHoldability();
+      } catch (SQLException | AbstractMethodError e) {
+        holdability = -1;
+      }
+      this.holdability = holdability;
+    }
+
+    Connection lend() {
+      Lent lent = new Lent(this);
+      lent.proxy = (Connection) Proxy.newProxyInstance(TritePool.class.getClassLoader(),
+          new Class<?>[] { Connection.class }, lent);
+      return lent.proxy;
+    }
+
+    /**
+     * 利用者が変更した項目を、物理コネクションの生成時の値に戻します.
+     * @param changed 利用者が呼び出した変更メソッドの名前
+     * @return すべて戻せた場合true. 戻せない項目が変更されていた場合false
+     * @throws SQLException DBがエラーを通知した場合
+     */
+    boolean reset(Set<String> changed) throws SQLException {
+      if (changed.isEmpty()) {
+        return true;
+      }
+      if (!RESETTABLE.containsAll(changed)) {
+        return false;
+      }
+      if (changed.contains("setReadOnly")) {
+        physical.setReadOnly(readOnly);
+      }
+      if (changed.contains("setTransactionIsolation")) {
+        physical.setTransactionIsolation(isolation);
+      }
+      if (changed.contains("setCatalog") && catalog != null) {
+        physical.setCatalog(catalog);
+      }
+      if (changed.contains("setSchema") && schema != null) {
+        physical.setSchema(schema);
+      }
+      if (changed.contains("setNetworkTimeout") && networkTimeout >= 0) {
+        physical.setNetworkTimeout(Runnable::run, networkTimeout);
+      }
+      if (changed.contains("setHoldability") && holdability >= 0) {
+        physical.setHoldability(holdability);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * 貸し出し中のコネクションの呼び出しを物理コネクションに中継します.
+   * close()が呼ばれた時点でプールに返却し、以降の呼び出しはエラーとします.
+   * 生成したStatementとメタデータは、getConnection() でこのコネクションを返すようにラップします.
+   */
+  private class Lent implements InvocationHandler {
+    private final Entry entry;
+    private final AtomicBoolean returned = new AtomicBoolean();
+    private final Set<LentStatement> statements = ConcurrentHashMap.newKeySet();
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();
+    private Connection proxy;
+
+    Lent(Entry entry) {
+      this.entry = entry;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+      case "close":
+        if (returned.compareAndSet(false, true)) {
+          giveBack(this);
+        }
+        return null;
+      case "isClosed":
+        return returned.get() || entry.physical.isClosed();
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "toString":
+        return "TritePool@" + entry.physical;
+      default:
+        if (returned.get()) {
+          throw new SQLException(getStr("pool.returned"));
+        }
+        Object wrapped = wrapper(proxy, method, args);
+        if (wrapped != null) {
+          return wrapped;
+        }
+        if (method.getName().startsWith("set")) {
+          changed.add(method.getName());
+        }
+        Object result;
+        try {
+          result = method.invoke(entry.physical, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+        if (result instanceof Statement) {
+          LentStatement handler = new LentStatement(this, (Statement) result);
+          statements.add(handler);
+          return Proxy.newProxyInstance(TritePool.class.getClassLoader(), new Class<?>[] { method.getReturnType() },
+              handler);
+        } else if (result instanceof DatabaseMetaData) {
+          return Proxy.newProxyInstance(TritePool.class.getClassLoader(), new Class<?>[] { DatabaseMetaData.class },
+              new Delegate(this, result, null));
+        }
+        return result;
+      }
+    }
+
+    /**
+     * ResultSetを、getStatement() で指定されたStatementを返すようにラップします.
+     * @param rs ResultSet
+     * @param statement getStatement() で返すStatement. メタデータから取得した場合はnull
+     * @return ラップしたResultSet
+     */
+    ResultSet wrap(ResultSet rs, Object statement) {
+      return (ResultSet) Proxy.newProxyInstance(TritePool.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+          new Delegate(this, rs, statement));
+    }
+  }
+
+  /**
+   * unwrap、isWrapperFor で、貸し出したコネクションや自身のラッパーを返します.
+   * @return 処理した場合は結果. 処理しない場合はnull
+   */
+  private static Object wrapper(Object proxy, Method method, Object[] args) {
+    if (args == null || args.length != 1 || !(args[0] instanceof Class)) {
+      return null;
+    }
+    Class<?> iface = (Class<?>) args[0];
+    if (method.getName().equals("unwrap") && iface.isInstance(proxy)) {
+      return proxy;
+    } else if (method.getName().equals("isWrapperFor") && iface.isInstance(proxy)) {
+      return true;
+    }
+    return null;
+  }
+
+  /**
+   * 貸し出したコネクションから生成したStatementの呼び出しを中継します.
+   * クローズされないまま返却された場合は、返却時にクローズします.
+   */
+  private class LentStatement implements InvocationHandler {
+    private final Lent owner;
+    private final Statement physical;
+    private volatile boolean closed;
+
+    LentStatement(Lent owner, Statement physical) {
+      this.owner = owner;
+      this.physical = physical;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+      case "close":
+        if (!closed) {
+          closed = true;
+          owner.statements.remove(this);
+          physical.close();
+        }
+        return null;
+      case "isClosed":
+        return closed || owner.returned.get() || physical.isClosed();
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "toString":
+        return physical.toString();
+      case "getConnection":
+        return owner.proxy;
+      default:
+        if (owner.returned.get()) {
+          throw new SQLException(getStr("pool.returned"));
+        }
+        Object wrapped = wrapper(proxy, method, args);
+        if (wrapped != null) {
+          return wrapped;
+        }
+        Object result;
+        try {
+          result = method.invoke(physical, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+        return result instanceof ResultSet ? owner.wrap((ResultSet) result, proxy) : result;
+      }
+    }
+  }
+
+  /**
+   * 貸し出したコネクションから取得したメタデータとResultSetの呼び出しを中継します.
+   * getConnection() は貸し出したコネクションを、getStatement() は生成元のStatementのラッパーを返します.
+   */
+  private static class Delegate implements InvocationHandler {
+    private final Lent owner;
+    private final Object target;
+    private final Object statement;
+
+    Delegate(Lent owner, Object target, Object statement) {
+      this.owner = owner;
+      this.target = target;
+      this.statement = statement;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "getConnection":
+        return owner.proxy;
+      case "getStatement":
+        return statement;
+      default:
+        if (owner.returned.get()) {
+          if (method.getName().equals("close")) {
+            return null;
+          } else if (method.getName().equals("isClosed")) {
+            return true;
+          }
+          throw new SQLException(getStr("pool.returned"));
+        }
+        Object wrapped = wrapper(proxy, method, args);
+        if (wrapped != null) {
+          return wrapped;
+        }
+        Object result;
+        try {
+          result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+        return result instanceof ResultSet ? owner.wrap((ResultSet) result, null) : result;
+      }
+    }
+  }
+}
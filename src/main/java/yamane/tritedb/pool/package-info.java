@@ -0,0 +1,10 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+/**
+ * TriteDbで使用する軽量なコネクションプールを提供します.
+ */
+package yamane.tritedb.pool;
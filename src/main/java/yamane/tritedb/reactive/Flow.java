@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.reactive;
+
+/**
+ * Reactive Streams のインターフェイス群です.
+ * Java 9 以降の java.util.concurrent.Flow と同じメソッド構成になっているため、
+ * Java 9 以降の実行環境ではメソッド参照で相互に変換できます.
+ * <pre>
+ * java.util.concurrent.Flow.Publisher&lt;T&gt; p = s -&gt; publisher.subscribe(new Flow.Subscriber&lt;T&gt;() { ... });
+ * </pre>
+ * このライブラリはJava 8 を対象としているため、java.util.concurrent.Flow を直接使用していません.
+ */
+public final class Flow {
+
+  private Flow() {
+  }
+
+  /**
+   * 要素を配信する側のインターフェイスです.
+   * @param <T> 配信する要素の型
+   */
+  @FunctionalInterface
+  public static interface Publisher<T> {
+
+    /**
+     * 配信先を登録します.
+     * @param subscriber 配信先
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+  }
+
+  /**
+   * 要素を受け取る側のインターフェイスです.
+   * @param <T> 受け取る要素の型
+   */
+  public static interface Subscriber<T> {
+
+    /**
+     * 購読が開始された際に呼ばれます.
+     * 受け取ったSubscriptionで要求数を通知するまで、要素は配信されません.
+     * @param subscription 購読の制御に使用するSubscription
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * 要素を受け取ります.
+     * @param item 要素
+     */
+    void onNext(T item);
+
+    /**
+     * エラーで終了した際に呼ばれます.
+     * @param throwable 発生したエラー
+     */
+    void onError(Throwable throwable);
+
+    /**
+     * すべての要素の配信が終了した際に呼ばれます.
+     */
+    void onComplete();
+  }
+
+  /**
+   * 購読を制御するインターフェイスです.
+   */
+  public static interface Subscription {
+
+    /**
+     * 追加で受け取る要素数を通知します.
+     * @param n 追加で受け取る要素数
+     */
+    void request(long n);
+
+    /**
+     * 購読を終了します.
+     */
+    void cancel();
+  }
+}
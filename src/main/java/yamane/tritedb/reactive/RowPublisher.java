@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.reactive;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import yamane.tritedb.Mapper;
+import yamane.tritedb.ResultIterator;
+import yamane.tritedb.TriteDb;
+import yamane.tritedb.utils.UncheckedSQLException;
+
+/**
+ * 検索結果を1行ずつ配信するPublisherです.
+ * 購読ごとにSQLを実行し、配信先から要求された行数だけResultSetから読み出します.
+ * 検索結果をため込まないため、配信先の処理が遅い場合でもメモリ使用量は増えません.
+ * SQLの実行と行の読み出しは {@link TriteDb#getExecutor()} のスレッドで行われ、
+ * 全行の配信が終わった時点、エラーが発生した時点、またはキャンセルされた時点でStatementとコネクションをクローズします.
+ * @param <T> 処理結果を格納する型
+ */
+public class RowPublisher<T> implements Flow.Publisher<T> {
+
+  private final TriteDb db;
+  private final Mapper<T> mapper;
+  private final String sql;
+  private final Object[] params;
+
+  /**
+   * コンストラクタ.
+   * @param db SQLの実行に使用するTriteDb
+   * @param mapper 処理結果変換クラス
+   * @param sql 実行するSQL
+   * @param params SQL実行時の可変パラメータ
+   */
+  public RowPublisher(TriteDb db, Mapper<T> mapper, String sql, Object... params) {
+    this.db = db;
+    this.mapper = mapper;
+    this.sql = sql;
+    this.params = params;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void subscribe(Flow.Subscriber<? super T> subscriber) {
+    RowSubscription subscription = new RowSubscription(subscriber, db.getExecutor());
+    subscriber.onSubscribe(subscription);
+  }
+
+  /**
+   * 1つの購読を管理するSubscriptionです.
+   * JDBCの処理は同時に1スレッドだけが行うよう、作業中カウンタで直列化しています.
+   */
+  private class RowSubscription implements Flow.Subscription, Runnable {
+    private final Flow.Subscriber<? super T> subscriber;
+    private final Executor executor;
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile long invalid;
+    private ResultIterator<T> it;
+    private boolean done;
+
+    RowSubscription(Flow.Subscriber<? super T> subscriber, Executor executor) {
+      this.subscriber = subscriber;
+      this.executor = executor;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalid = n;
+      } else {
+        requested.accumulateAndGet(n, (r, a) -> r + a < 0 ? Long.MAX_VALUE : r + a);
+      }
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      schedule();
+    }
+
+    private void schedule() {
+      if (wip.getAndIncrement() == 0) {
+        executor.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      int missed = 1;
+      do {
+        drain();
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void drain() {
+      if (done) {
+        return;
+      }
+      if (cancelled) {
+        finish();
+        return;
+      }
+      if (invalid != 0) {
+        finish();
+        subscriber.onError(new IllegalArgumentException("request:" + invalid));
+        return;
+      }
+      try {
+        long r = requested.get();
+        while (r != 0) {
+          if (it == null) {
+            it = db.selectIterator(mapper, sql, params);
+          }
+          long e = 0;
+          while (e != r) {
+            if (cancelled) {
+              finish();
+              return;
+            }
+            if (!it.hasNext()) {
+              finish();
+              subscriber.onComplete();
+              return;
+            }
+            subscriber.onNext(it.next());
+            e++;
+          }
+          r = r == Long.MAX_VALUE ? r : requested.addAndGet(-e);
+        }
+      } catch (UncheckedSQLException e) {
+        finish();
+        subscriber.onError(e.getCause());
+      } catch (SQLException | RuntimeException e) {
+        finish();
+        subscriber.onError(e);
+      }
+    }
+
+    private void finish() {
+      done = true;
+      if (it != null) {
+        try {
+          it.close();
+        } catch (SQLException e) {
+          // 配信は終了しているため、クローズ時のエラーは通知しない
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,10 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+/**
+ * 検索結果を背圧制御付きで配信する、Reactive Streams 形式の機能を提供します.
+ */
+package yamane.tritedb.reactive;
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.result;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * 検索結果の列を保持する形式です.
+ * ResultSetMetaDataの列の型から決定します.
+ */
+public enum ColumnKind {
+
+  /** longで保持する列（BIGINT、桁数18以下の整数のNUMERIC/DECIMAL） */
+  LONG,
+
+  /** intで保持する列（INTEGER、SMALLINT、TINYINT） */
+  INT,
+
+  /** doubleで保持する列（DOUBLE、FLOAT、REAL） */
+  DOUBLE,
+
+  /** 真偽値として保持する列（BOOLEAN、BIT） */
+  BOOLEAN,
+
+  /** 文字列として保持する列（CHAR、VARCHAR、CLOBなど） */
+  STRING,
+
+  /** getObject()で取得した値をそのまま保持する列 */
+  OBJECT;
+
+  /**
+   * ResultSetMetaDataの列の型から、列を保持する形式を決定します.
+   * @param meta ResultSetMetaData
+   * @param column 列番号（1から始まる）
+   * @return 列を保持する形式
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public static ColumnKind of(ResultSetMetaData meta, int column) throws SQLException {
+    switch (meta.getColumnType(column)) {
+    case Types.BIGINT:
+      return LONG;
+    case Types.INTEGER:
+    case Types.SMALLINT:
+    case Types.TINYINT:
+      return INT;
+    case Types.NUMERIC:
+    case Types.DECIMAL:
+      int precision = meta.getPrecision(column);
+      return meta.getScale(column) == 0 && precision > 0 && precision <= 18 ? LONG : OBJECT;
+    case Types.DOUBLE:
+    case Types.FLOAT:
+    case Types.REAL:
+      return DOUBLE;
+    case Types.BOOLEAN:
+    case Types.BIT:
+      return BOOLEAN;
+    case Types.CHAR:
+    case Types.VARCHAR:
+    case Types.LONGVARCHAR:
+    case Types.NCHAR:
+    case Types.NVARCHAR:
+    case Types.LONGNVARCHAR:
+    case Types.CLOB:
+    case Types.NCLOB:
+      return STRING;
+    default:
+      return OBJECT;
+    }
+  }
+}
@@ -0,0 +1,483 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.result;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import yamane.tritedb.row.RowResultSet;
+import yamane.tritedb.utils.DoubleArray;
+import yamane.tritedb.utils.IntArray;
+import yamane.tritedb.utils.LongArray;
+import yamane.tritedb.utils.PrimitiveArray;
+
+/**
+ * 検索結果を列ごとの配列として保持する、列指向の検索結果です.
+ * 行ごとにMapやBeanを生成する場合と比べて、大量の行を少ないメモリで保持できます.
+ * <ul>
+ * <li>数値の列はlong、int、doubleの配列で、真偽値の列はビットセットで保持します.</li>
+ * <li>文字列の列は重複を除いた辞書と、辞書の位置を示すintの配列で保持します.</li>
+ * <li>その他の列はgetObject()で取得した値をそのまま保持します.</li>
+ * <li>NULLは列ごとのビットマップで保持し、{@link #isNull(int, int)} で判定します.</li>
+ * </ul>
+ * 列の保持形式は {@link ColumnKind#of(ResultSetMetaData, int)} で決定します.
+ * 行番号は0から、列番号はJDBCと同じく1から始まります.
+ */
+public class ColumnarResult {
+
+  private final String[] labels;
+  private final Map<String, Integer> indexes = new HashMap<>();
+  private final Column[] columns;
+  private int rows;
+
+  private ColumnarResult(ResultSetMetaData meta) throws SQLException {
+    int count = meta.getColumnCount();
+    this.labels = new String[count];
+    this.columns = new Column[count];
+    for (int i = 0; i < count; i++) {
+      labels[i] = meta.getColumnLabel(i + 1);
+      indexes.putIfAbsent(labels[i].toLowerCase(Locale.ROOT), i + 1);
+      columns[i] = Column.create(ColumnKind.of(meta, i + 1));
+    }
+  }
+
+  /**
+   * ResultSetの残りの行をすべて読み出します.
+   * @param rs 読み出し元のResultSet
+   * @return 列指向の検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public static ColumnarResult read(ResultSet rs) throws SQLException {
+    ColumnarResult result = new ColumnarResult(rs.getMetaData());
+    while (rs.next()) {
+      for (int i = 0; i < result.columns.length; i++) {
+        result.columns[i].read(rs, i + 1);
+      }
+      result.rows++;
+    }
+    for (Column column : result.columns) {
+      column.complete();
+    }
+    return result;
+  }
+
+  /**
+   * 行数を取得します.
+   * @return 行数
+   */
+  public int getRowCount() {
+    return rows;
+  }
+
+  /**
+   * 列数を取得します.
+   * @return 列数
+   */
+  public int getColumnCount() {
+    return columns.length;
+  }
+
+  /**
+   * 列名を取得します.
+   * @param column 列番号
+   * @return 列名
+   */
+  public String getLabel(int column) {
+    return labels[column - 1];
+  }
+
+  /**
+   * 列名から列番号を取得します.
+   * 大文字小文字は区別しません.
+   * @param label 列名
+   * @return 列番号
+   * @throws IllegalArgumentException 列が存在しない場合
+   */
+  public int findColumn(String label) {
+    Integer index = indexes.get(label.toLowerCase(Locale.ROOT));
+    if (index == null) {
+      throw new IllegalArgumentException(label);
+    }
+    return index;
+  }
+
+  /**
+   * 列の保持形式を取得します.
+   * @param column 列番号
+   * @return 列の保持形式
+   */
+  public ColumnKind getKind(int column) {
+    return columns[column - 1].kind;
+  }
+
+  /**
+   * 値がNULLかどうかを判定します.
+   * @param row 行番号
+   * @param column 列番号
+   * @return NULLの場合true
+   */
+  public boolean isNull(int row, int column) {
+    checkRow(row);
+    return columns[column - 1].isNull(row);
+  }
+
+  /**
+   * 値をlongとして取得します. LONG、INTの列で使用できます.
+   * @param row 行番号
+   * @param column 列番号
+   * @return 値. NULLの場合は0
+   */
+  public long getLong(int row, int column) {
+    checkRow(row);
+    Column c = columns[column - 1];
+    if (c.kind == ColumnKind.INT) {
+      return ((IntColumn) c).values.get(row);
+    }
+    return ((LongColumn) cast(c, ColumnKind.LONG)).values.get(row);
+  }
+
+  /**
+   * 値をintとして取得します. INTの列で使用できます.
+   * @param row 行番号
+   * @param column 列番号
+   * @return 値. NULLの場合は0
+   */
+  public int getInt(int row, int column) {
+    checkRow(row);
+    return ((IntColumn) cast(columns[column - 1], ColumnKind.INT)).values.get(row);
+  }
+
+  /**
+   * 値をdoubleとして取得します. DOUBLE、LONG、INTの列で使用できます.
+   * @param row 行番号
+   * @param column 列番号
+   * @return 値. NULLの場合は0
+   */
+  public double getDouble(int row, int column) {
+    checkRow(row);
+    Column c = columns[column - 1];
+    if (c.kind == ColumnKind.LONG || c.kind == ColumnKind.INT) {
+      return getLong(row, column);
+    }
+    return ((DoubleColumn) cast(c, ColumnKind.DOUBLE)).values.get(row);
+  }
+
+  /**
+   * 値をbooleanとして取得します. BOOLEANの列で使用できます.
+   * @param row 行番号
+   * @param column 列番号
+   * @return 値. NULLの場合はfalse
+   */
+  public boolean getBoolean(int row, int column) {
+    checkRow(row);
+    return ((BooleanColumn) cast(columns[column - 1], ColumnKind.BOOLEAN)).values.get(row);
+  }
+
+  /**
+   * 値を文字列として取得します. すべての列で使用できます.
+   * @param row 行番号
+   * @param column 列番号
+   * @return 値. NULLの場合はnull
+   */
+  public String getString(int row, int column) {
+    checkRow(row);
+    Column c = columns[column - 1];
+    if (c.kind == ColumnKind.STRING) {
+      return ((StringColumn) c).get(row);
+    }
+    Object value = c.get(row);
+    return value == null ? null : value.toString();
+  }
+
+  /**
+   * 値を取得します. 数値と真偽値はボクシングして返します. すべての列で使用できます.
+   * @param row 行番号
+   * @param column 列番号
+   * @return 値. NULLの場合はnull
+   */
+  public Object getObject(int row, int column) {
+    checkRow(row);
+    return columns[column - 1].get(row);
+  }
+
+  /**
+   * LONGの列の値をまとめて取得します.
+   * @param column 列番号
+   * @return 列の値
+   */
+  public LongArray getLongs(int column) {
+    return ((LongColumn) cast(columns[column - 1], ColumnKind.LONG)).values;
+  }
+
+  /**
+   * INTの列の値をまとめて取得します.
+   * @param column 列番号
+   * @return 列の値
+   */
+  public IntArray getInts(int column) {
+    return ((IntColumn) cast(columns[column - 1], ColumnKind.INT)).values;
+  }
+
+  /**
+   * DOUBLEの列の値をまとめて取得します.
+   * @param column 列番号
+   * @return 列の値
+   */
+  public DoubleArray getDoubles(int column) {
+    return ((DoubleColumn) cast(columns[column - 1], ColumnKind.DOUBLE)).values;
+  }
+
+  /**
+   * STRINGの列の、重複を除いた値の一覧を取得します.
+   * {@link #getCodes(int)} の値が、この一覧の位置を示します.
+   * @param column 列番号
+   * @return 重複を除いた値の一覧
+   */
+  public List<String> getDictionary(int column) {
+    return ((StringColumn) cast(columns[column - 1], ColumnKind.STRING)).dictionary;
+  }
+
+  /**
+   * STRINGの列の、行ごとの辞書の位置を取得します.
+   * @param column 列番号
+   * @return 行ごとの辞書の位置. NULLの行は {@link IntArray#isNull(int)} がtrueになります
+   */
+  public IntArray getCodes(int column) {
+    return ((StringColumn) cast(columns[column - 1], ColumnKind.STRING)).codes;
+  }
+
+  private void checkRow(int row) {
+    if (row < 0 || row >= rows) {
+      throw new IndexOutOfBoundsException(String.valueOf(row));
+    }
+  }
+
+  private static Column cast(Column column, ColumnKind kind) {
+    if (column.kind != kind) {
+      throw new IllegalStateException(column.kind + " -> " + kind);
+    }
+    return column;
+  }
+
+  /**
+   * 1列分の値を保持するクラスです.
+   */
+  private abstract static class Column {
+    final ColumnKind kind;
+
+    Column(ColumnKind kind) {
+      this.kind = kind;
+    }
+
+    static Column create(ColumnKind kind) {
+      switch (kind) {
+      case LONG:
+        return new LongColumn();
+      case INT:
+        return new IntColumn();
+      case DOUBLE:
+        return new DoubleColumn();
+      case BOOLEAN:
+        return new BooleanColumn();
+      case STRING:
+        return new StringColumn();
+      default:
+        return new ObjectColumn();
+      }
+    }
+
+    abstract void read(ResultSet rs, int index) throws SQLException;
+
+    abstract boolean isNull(int row);
+
+    abstract Object get(int row);
+
+    void complete() {
+    }
+  }
+
+  private abstract static class ArrayColumn<A extends PrimitiveArray> extends Column {
+    final A values;
+
+    ArrayColumn(ColumnKind kind, A values) {
+      super(kind);
+      this.values = values;
+    }
+
+    @Override
+    boolean isNull(int row) {
+      return values.isNull(row);
+    }
+  }
+
+  private static final class LongColumn extends ArrayColumn<LongArray> {
+    LongColumn() {
+      super(ColumnKind.LONG, new LongArray());
+    }
+
+    @Override
+    void read(ResultSet rs, int index) throws SQLException {
+      long value = rs.getLong(index);
+      if (rs.wasNull()) {
+        values.addNull();
+      } else {
+        values.add(value);
+      }
+    }
+
+    @Override
+    Object get(int row) {
+      return values.isNull(row) ? null : values.get(row);
+    }
+  }
+
+  private static final class IntColumn extends ArrayColumn<IntArray> {
+    IntColumn() {
+      super(ColumnKind.INT, new IntArray());
+    }
+
+    @Override
+    void read(ResultSet rs, int index) throws SQLException {
+      int value = rs.getInt(index);
+      if (rs.wasNull()) {
+        values.addNull();
+      } else {
+        values.add(value);
+      }
+    }
+
+    @Override
+    Object get(int row) {
+      return values.isNull(row) ? null : values.get(row);
+    }
+  }
+
+  private static final class DoubleColumn extends ArrayColumn<DoubleArray> {
+    DoubleColumn() {
+      super(ColumnKind.DOUBLE, new DoubleArray());
+    }
+
+    @Override
+    void read(ResultSet rs, int index) throws SQLException {
+      double value = rs.getDouble(index);
+      if (rs.wasNull()) {
+        values.addNull();
+      } else {
+        values.add(value);
+      }
+    }
+
+    @Override
+    Object get(int row) {
+      return values.isNull(row) ? null : values.get(row);
+    }
+  }
+
+  private static final class BooleanColumn extends Column {
+    final BitSet values = new BitSet();
+    final BitSet nulls = new BitSet();
+    int size;
+
+    BooleanColumn() {
+      super(ColumnKind.BOOLEAN);
+    }
+
+    @Override
+    void read(ResultSet rs, int index) throws SQLException {
+      boolean value = rs.getBoolean(index);
+      if (rs.wasNull()) {
+        nulls.set(size);
+      } else if (value) {
+        values.set(size);
+      }
+      size++;
+    }
+
+    @Override
+    boolean isNull(int row) {
+      return nulls.get(row);
+    }
+
+    @Override
+    Object get(int row) {
+      return nulls.get(row) ? null : values.get(row);
+    }
+  }
+
+  private static final class StringColumn extends Column {
+    final IntArray codes = new IntArray();
+    List<String> dictionary = new ArrayList<>();
+    Map<String, Integer> lookup = new HashMap<>();
+
+    StringColumn() {
+      super(ColumnKind.STRING);
+    }
+
+    @Override
+    void read(ResultSet rs, int index) throws SQLException {
+      String value = rs.getString(index);
+      if (value == null) {
+        codes.addNull();
+        return;
+      }
+      Integer code = lookup.get(value);
+      if (code == null) {
+        code = dictionary.size();
+        dictionary.add(value);
+        lookup.put(value, code);
+      }
+      codes.add(code);
+    }
+
+    @Override
+    void complete() {
+      lookup = null;
+      dictionary = Collections.unmodifiableList(new ArrayList<>(dictionary));
+    }
+
+    @Override
+    boolean isNull(int row) {
+      return codes.isNull(row);
+    }
+
+    @Override
+    String get(int row) {
+      return codes.isNull(row) ? null : dictionary.get(codes.get(row));
+    }
+  }
+
+  private static final class ObjectColumn extends Column {
+    final List<Object> values = new ArrayList<>();
+
+    ObjectColumn() {
+      super(ColumnKind.OBJECT);
+    }
+
+    @Override
+    void read(ResultSet rs, int index) throws SQLException {
+      values.add(RowResultSet.readValue(rs, index));
+    }
+
+    @Override
+    boolean isNull(int row) {
+      return values.get(row) == null;
+    }
+
+    @Override
+    Object get(int row) {
+      return values.get(row);
+    }
+  }
+}
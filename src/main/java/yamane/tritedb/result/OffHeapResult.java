@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.result;
+
+import static yamane.tritedb.TriteDbBase.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import yamane.tritedb.row.RowResultSet;
+import yamane.utils.SegmentedBuffer;
+
+/**
+ * 検索結果をヒープ外のメモリに保持する検索結果です.
+ * 数GBにおよぶ検索結果を、GCの対象となるヒープを使わずに保持するために使用します.
+ * <ul>
+ * <li>各行はNULLのビットマップと、列ごとに8バイトの固定長の領域で構成します.</li>
+ * <li>数値と真偽値は固定長の領域に直接格納し、文字列などの可変長の値は別の領域に格納してその位置を保持します.</li>
+ * <li>文字列、バイト配列以外の可変長の値はJavaのシリアライズで格納します.</li>
+ * <li>メモリは ByteBuffer.allocateDirect で確保するか、ディレクトリを指定した場合は一時ファイルにメモリマップして確保します.</li>
+ * </ul>
+ * 値は {@link #cursor()} で取得するカーソルから、必要な列だけを読み出します.
+ * カーソルは何度でも取得でき、複数のスレッドから同時に読み出すことができます.
+ * 使用後は {@link #close()} でメモリを解放してください. 解放中や解放後に、他のスレッドから読み出さないでください.
+ */
+public class OffHeapResult implements AutoCloseable {
+
+  private static final byte BYTES = 0;
+  private static final byte SERIALIZED = 1;
+
+  private final String[] labels;
+  private final ColumnKind[] kinds;
+  private final Map<String, Integer> indexes = new HashMap<>();
+  private final int nullBytes;
+  private final int rowWidth;
+  private final int rowsPerSegment;
+  private final SegmentedBuffer rows;
+  private final SegmentedBuffer heap;
+  private long rowCount;
+  private long heapSize;
+
+  private OffHeapResult(ResultSetMetaData meta, int segmentSize, Path directory) throws SQLException, IOException {
+    int count = meta.getColumnCount();
+    this.labels = new String[count];
+    this.kinds = new ColumnKind[count];
+    for (int i = 0; i < count; i++) {
+      labels[i] = meta.getColumnLabel(i + 1);
+      kinds[i] = ColumnKind.of(meta, i + 1);
+      indexes.putIfAbsent(labels[i].toLowerCase(Locale.ROOT), i + 1);
+    }
+    this.nullBytes = (count + 63) / 64 * 8;
+    this.rowWidth = nullBytes + count * 8;
+    int size = Math.max(segmentSize, rowWidth);
+    this.rowsPerSegment = size / rowWidth;
+    this.rows = directory == null ? new SegmentedBuffer(size) : new SegmentedBuffer(size, directory);
+    try {
+      this.heap = directory == null ? new SegmentedBuffer(size) : new SegmentedBuffer(size, directory);
+    } catch (IOException e) {
+      rows.close();
+      throw e;
+    }
+  }
+
+  /**
+   * ResultSetの残りの行をすべて、ヒープ外のメモリに読み出します.
+   * @param rs 読み出し元のResultSet
+   * @param segmentSize メモリを確保する単位
+   * @param directory メモリマップする一時ファイルのディレクトリ. nullの場合は ByteBuffer.allocateDirect で確保します
+   * @return ヒープ外に保持した検索結果
+   * @throws SQLException DBがエラーを通知した場合、メモリの確保に失敗した場合
+   */
+  public static OffHeapResult read(ResultSet rs, int segmentSize, Path directory) throws SQLException {
+    OffHeapResult result;
+    try {
+      result = new OffHeapResult(rs.getMetaData(), segmentSize, directory);
+    } catch (IOException e) {
+      throw new SQLException(getStr("offheap.io"), e);
+    }
+    try {
+      while (rs.next()) {
+        result.append(rs);
+      }
+      return result;
+    } catch (IOException e) {
+      throw discard(result, new SQLException(getStr("offheap.io"), e));
+    } catch (SQLException e) {
+      throw discard(result, e);
+    } catch (RuntimeException e) {
+      throw discard(result, e);
+    }
+  }
+
+  private static <E extends Exception> E discard(OffHeapResult result, E e) {
+    try {
+      result.close();
+    } catch (SQLException suppressed) {
+      e.addSuppressed(suppressed);
+    }
+    return e;
+  }
+
+  private void append(ResultSet rs) throws SQLException, IOException {
+    long row = position(rowCount);
+    rows.ensure(row + rowWidth);
+    for (int i = 0; i < nullBytes; i += 8) {
+      rows.putLong(row + i, 0);
+    }
+    for (int i = 0; i < kinds.length; i++) {
+      int col = i + 1;
+      long slot = row + nullBytes + i * 8L;
+      long bits = 0;
+      boolean isNull;
+      switch (kinds[i]) {
+      case LONG:
+        bits = rs.getLong(col);
+        isNull = rs.wasNull();
+        break;
+      case INT:
+        bits = rs.getInt(col);
+        isNull = rs.wasNull();
+        break;
+      case DOUBLE:
+        bits = Double.doubleToRawLongBits(rs.getDouble(col));
+        isNull = rs.wasNull();
+        break;
+      case BOOLEAN:
+        bits = rs.getBoolean(col) ? 1 : 0;
+        isNull = rs.wasNull();
+        break;
+      case STRING:
+        String text = rs.getString(col);
+        isNull = text == null;
+        if (!isNull) {
+          bits = write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        break;
+      default:
+        Object value = RowResultSet.readValue(rs, col);
+        isNull = value == null;
+        if (!isNull) {
+          bits = writeObject(value);
+        }
+        break;
+      }
+      rows.putLong(slot, bits);
+      if (isNull) {
+        long word = row + (i / 64) * 8L;
+        rows.putLong(word, rows.getLong(word) | (1L << (i % 64)));
+      }
+    }
+    rowCount++;
+  }
+
+  private long write(byte[] bytes) throws IOException {
+    long pos = heapSize;
+    heap.ensure(pos + 4 + bytes.length);
+    heap.putInt(pos, bytes.length);
+    heap.put(pos + 4, bytes);
+    heapSize = pos + 4 + bytes.length;
+    return pos;
+  }
+
+  private long writeObject(Object value) throws SQLException, IOException {
+    byte[] bytes;
+    byte tag;
+    if (value instanceof byte[]) {
+      bytes = (byte[]) value;
+      tag = BYTES;
+    } else {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (ObjectOutputStream stream = new ObjectOutputStream(out)) {
+        stream.writeObject(value);
+      } catch (NotSerializableException e) {
+        throw new SQLException(format("offheap.serialize", value.getClass().getName()), e);
+      }
+      bytes = out.toByteArray();
+      tag = SERIALIZED;
+    }
+    long pos = write(bytes);
+    heap.ensure(heapSize + 1);
+    heap.putByte(heapSize, tag);
+    heapSize++;
+    return pos;
+  }
+
+  private long position(long row) {
+    return (row / rowsPerSegment) * rows.getSegmentSize() + (row % rowsPerSegment) * rowWidth;
+  }
+
+  /**
+   * 行数を取得します.
+   * @return 行数
+   */
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * 列数を取得します.
+   * @return 列数
+   */
+  public int getColumnCount() {
+    return kinds.length;
+  }
+
+  /**
+   * 列名を取得します.
+   * @param column 列番号（1から始まる）
+   * @return 列名
+   */
+  public String getLabel(int column) {
+    return labels[column - 1];
+  }
+
+  /**
+   * 列の保持形式を取得します.
+   * @param column 列番号（1から始まる）
+   * @return 列の保持形式
+   */
+  public ColumnKind getKind(int column) {
+    return kinds[column - 1];
+  }
+
+  /**
+   * 列名から列番号を取得します.
+   * 大文字小文字は区別しません.
+   * @param label 列名
+   * @return 列番号（1から始まる）
+   * @throws IllegalArgumentException 列が存在しない場合
+   */
+  public int findColumn(String label) {
+    Integer index = indexes.get(label.toLowerCase(Locale.ROOT));
+    if (index == null) {
+      throw new IllegalArgumentException(label);
+    }
+    return index;
+  }
+
+  /**
+   * 先頭の行の前に位置するカーソルを取得します.
+   * @return カーソル
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  /**
+   * ヒープ外に確保したメモリを解放します.
+   * 解放後はカーソルから値を読み出せません.
+   * @throws SQLException 一時ファイルの削除に失敗した場合
+   */
+  @Override
+  public void close() throws SQLException {
+    try {
+      try {
+        rows.close();
+      } finally {
+        heap.close();
+      }
+    } catch (IOException e) {
+      throw new SQLException(getStr("offheap.io"), e);
+    }
+  }
+
+  /**
+   * ヒープ外に保持した検索結果を1行ずつ読み出すカーソルです.
+   * 値は列ごとに、読み出すメソッドが呼ばれた時点でデコードします.
+   * 1つのカーソルは1スレッドから使用してください.
+   */
+  public class Cursor {
+    private long row = -1;
+    private long pos;
+
+    /**
+     * 次の行に移動します.
+     * @return 次の行が存在する場合true
+     */
+    public boolean next() {
+      if (rows.isClosed()) {
+        throw new IllegalStateException("closed");
+      }
+      if (row + 1 >= rowCount) {
+        row = rowCount;
+        return false;
+      }
+      pos = position(++row);
+      return true;
+    }
+
+    /**
+     * 指定した行に移動します.
+     * @param row 行番号（0から始まる）
+     */
+    public void moveTo(long row) {
+      if (row < 0 || row >= rowCount) {
+        throw new IndexOutOfBoundsException(String.valueOf(row));
+      }
+      this.row = row;
+      this.pos = position(row);
+    }
+
+    /**
+     * 現在の行番号を取得します.
+     * @return 行番号（0から始まる）
+     */
+    public long getRow() {
+      return row;
+    }
+
+    /**
+     * 値がNULLかどうかを判定します.
+     * @param column 列番号（1から始まる）
+     * @return NULLの場合true
+     */
+    public boolean isNull(int column) {
+      checkRow();
+      int i = column - 1;
+      return (rows.getLong(pos + (i / 64) * 8L) & (1L << (i % 64))) != 0;
+    }
+
+    /**
+     * 値をlongとして取得します. LONG、INTの列で使用できます.
+     * @param column 列番号（1から始まる）
+     * @return 値. NULLの場合は0
+     */
+    public long getLong(int column) {
+      return slot(column, ColumnKind.LONG, ColumnKind.INT);
+    }
+
+    /**
+     * 値をintとして取得します. INTの列で使用できます.
+     * @param column 列番号（1から始まる）
+     * @return 値. NULLの場合は0
+     */
+    public int getInt(int column) {
+      return (int) slot(column, ColumnKind.INT, ColumnKind.INT);
+    }
+
+    /**
+     * 値をdoubleとして取得します. DOUBLE、LONG、INTの列で使用できます.
+     * @param column 列番号（1から始まる）
+     * @return 値. NULLの場合は0
+     */
+    public double getDouble(int column) {
+      if (kinds[column - 1] != ColumnKind.DOUBLE) {
+        return getLong(column);
+      }
+      return Double.longBitsToDouble(slot(column, ColumnKind.DOUBLE, ColumnKind.DOUBLE));
+    }
+
+    /**
+     * 値をbooleanとして取得します. BOOLEANの列で使用できます.
+     * @param column 列番号（1から始まる）
+     * @return 値. NULLの場合はfalse
+     */
+    public boolean getBoolean(int column) {
+      return slot(column, ColumnKind.BOOLEAN, ColumnKind.BOOLEAN) != 0;
+    }
+
+    /**
+     * 値を文字列として取得します. すべての列で使用できます.
+     * @param column 列番号（1から始まる）
+     * @return 値. NULLの場合はnull
+     */
+    public String getString(int column) {
+      if (kinds[column - 1] == ColumnKind.STRING) {
+        return isNull(column) ? null : new String(bytes(slot(column, ColumnKind.STRING, ColumnKind.STRING)),
+            StandardCharsets.UTF_8);
+      }
+      Object value = getObject(column);
+      return value == null ? null : value.toString();
+    }
+
+    /**
+     * 値をバイト配列として取得します. STRING、およびバイト配列を保持するOBJECTの列で使用できます.
+     * @param column 列番号（1から始まる）
+     * @return 値. NULLの場合はnull
+     */
+    public byte[] getBytes(int column) {
+      if (isNull(column)) {
+        return null;
+      }
+      ColumnKind kind = kinds[column - 1];
+      if (kind != ColumnKind.STRING && kind != ColumnKind.OBJECT) {
+        throw new IllegalStateException(kind + " -> bytes");
+      }
+      long offset = rows.getLong(pos + nullBytes + (column - 1) * 8L);
+      byte[] bytes = bytes(offset);
+      if (kind == ColumnKind.OBJECT && heap.getByte(offset + 4 + bytes.length) != BYTES) {
+        throw new IllegalStateException(kind + " -> bytes");
+      }
+      return bytes;
+    }
+
+    /**
+     * 値を取得します. 数値と真偽値はボクシングして返します. すべての列で使用できます.
+     * @param column 列番号（1から始まる）
+     * @return 値. NULLの場合はnull
+     * @throws IllegalStateException シリアライズした値を復元できない場合
+     */
+    public Object getObject(int column) {
+      if (isNull(column)) {
+        return null;
+      }
+      switch (kinds[column - 1]) {
+      case LONG:
+        return getLong(column);
+      case INT:
+        return getInt(column);
+      case DOUBLE:
+        return getDouble(column);
+      case BOOLEAN:
+        return getBoolean(column);
+      case STRING:
+        return getString(column);
+      default:
+        long offset = rows.getLong(pos + nullBytes + (column - 1) * 8L);
+        byte[] bytes = bytes(offset);
+        if (heap.getByte(offset + 4 + bytes.length) == BYTES) {
+          return bytes;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+          return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+
+    private long slot(int column, ColumnKind kind, ColumnKind alt) {
+      checkRow();
+      ColumnKind actual = kinds[column - 1];
+      if (actual != kind && actual != alt) {
+        throw new IllegalStateException(actual + " -> " + kind);
+      }
+      return rows.getLong(pos + nullBytes + (column - 1) * 8L);
+    }
+
+    private void checkRow() {
+      if (row < 0 || row >= rowCount) {
+        throw new IllegalStateException("row:" + row);
+      }
+    }
+
+    private byte[] bytes(long offset) {
+      byte[] bytes = new byte[heap.getInt(offset)];
+      heap.get(offset + 4, bytes);
+      return bytes;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.result;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * 処理結果の1行をバイト列に変換、復元するクラスです.
+ * {@link SpillList} がメモリに収まらない行をファイルに書き出す際に使用します.
+ * @param <T> 処理結果を格納する型
+ */
+public interface RowCodec<T> {
+
+  /**
+   * 1行をバイト列に変換します.
+   * @param value 処理結果
+   * @param out 書き込み先
+   * @throws IOException 書き込みに失敗した場合
+   */
+  void write(T value, DataOutputStream out) throws IOException;
+
+  /**
+   * バイト列から1行を復元します.
+   * @param in 読み込み元
+   * @return 処理結果
+   * @throws IOException 読み込みに失敗した場合
+   */
+  T read(DataInputStream in) throws IOException;
+
+  /**
+   * Javaのシリアライズを使って変換するRowCodecを取得します.
+   * 処理結果の型は {@link Serializable} を実装している必要があります.
+   * @param <T> 処理結果を格納する型
+   * @return RowCodec インスタンス
+   */
+  static <T> RowCodec<T> serializable() {
+    return new RowCodec<T>() {
+      @Override
+      public void write(T value, DataOutputStream out) throws IOException {
+        ObjectOutputStream stream = new ObjectOutputStream(out);
+        stream.writeObject(value);
+        stream.flush();
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public T read(DataInputStream in) throws IOException {
+        try {
+          return (T) new ObjectInputStream(in).readObject();
+        } catch (ClassNotFoundException e) {
+          throw new IOException(e);
+        }
+      }
+    };
+  }
+}
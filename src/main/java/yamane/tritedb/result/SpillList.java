@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.result;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import yamane.tritedb.utils.LongArray;
+import yamane.utils.SegmentedBuffer;
+
+/**
+ * 上限を超えた要素を一時ファイルに書き出すListです.
+ * 想定外に大量の検索結果が返された場合に、メモリ不足を防ぐために使用します.
+ * <ul>
+ * <li>要素数か推定サイズが上限に達するまでは、要素をメモリ上に保持します.</li>
+ * <li>上限を超えた要素は {@link RowCodec} でバイト列に変換し、メモリマップした一時ファイルに書き出します.</li>
+ * <li>書き出した要素は、取得するたびに一時ファイルから復元します.</li>
+ * </ul>
+ * 推定サイズは、一定間隔で要素をバイト列に変換したサイズの平均から求めます.
+ * 要素の追加のみサポートし、変更と削除はサポートしません.
+ * 使用後は {@link #close()} で一時ファイルを削除してください.
+ * <pre>
+ * try (SpillList&lt;Foo&gt; list = db.selectInto(new SpillList&lt;&gt;(codec, 100000, 64L &lt;&lt; 20), mapper, sql)) {
+ *   for (Foo foo : list) { ... }
+ * }
+ * </pre>
+ * @param <T> 要素の型
+ */
+public class SpillList<T> extends AbstractList<T> implements RandomAccess, AutoCloseable {
+
+  private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+  private static final int SAMPLING = 64;
+
+  private final RowCodec<T> codec;
+  private final int maxRows;
+  private final long maxBytes;
+  private final Path directory;
+  private final List<T> memory = new ArrayList<>();
+  private final LongArray offsets = new LongArray();
+  private SegmentedBuffer file;
+  private long fileSize;
+  private long sampledBytes;
+  private int samples;
+
+  /**
+   * 一時ファイルを java.io.tmpdir に作成するインスタンスを生成します.
+   * @param codec 要素をバイト列に変換するクラス
+   * @param maxRows メモリ上に保持する要素数の上限
+   * @param maxBytes メモリ上に保持する要素の推定サイズの上限（バイト）
+   */
+  public SpillList(RowCodec<T> codec, int maxRows, long maxBytes) {
+    this(codec, maxRows, maxBytes, Paths.get(System.getProperty("java.io.tmpdir")));
+  }
+
+  /**
+   * コンストラクタ.
+   * @param codec 要素をバイト列に変換するクラス
+   * @param maxRows メモリ上に保持する要素数の上限
+   * @param maxBytes メモリ上に保持する要素の推定サイズの上限（バイト）
+   * @param directory 一時ファイルを作成するディレクトリ
+   */
+  public SpillList(RowCodec<T> codec, int maxRows, long maxBytes, Path directory) {
+    this.codec = codec;
+    this.maxRows = maxRows;
+    this.maxBytes = maxBytes;
+    this.directory = directory;
+  }
+
+  /**
+   * 要素を末尾に追加します.
+   * @param value 追加する要素
+   * @return 常にtrue
+   * @throws UncheckedIOException 一時ファイルへの書き出しに失敗した場合
+   */
+  @Override
+  public boolean add(T value) {
+    try {
+      if (file == null && !overBudget()) {
+        if (memory.size() % SAMPLING == 0) {
+          sampledBytes += encode(value).length;
+          samples++;
+        }
+        memory.add(value);
+      } else {
+        spill(value);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    modCount++;
+    return true;
+  }
+
+  /**
+   * 指定位置の要素を取得します.
+   * 一時ファイルに書き出した要素は、呼び出すたびに復元した新しいインスタンスを返します.
+   * @param index インデックス
+   * @return 要素
+   * @throws UncheckedIOException 一時ファイルからの復元に失敗した場合
+   */
+  @Override
+  public T get(int index) {
+    if (index < memory.size()) {
+      return memory.get(index);
+    }
+    int spilled = index - memory.size();
+    if (spilled >= offsets.size()) {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+    long pos = offsets.get(spilled);
+    byte[] bytes = new byte[file.getInt(pos)];
+    file.get(pos + 4, bytes);
+    try {
+      return codec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int size() {
+    return memory.size() + offsets.size();
+  }
+
+  /**
+   * 一時ファイルに書き出した要素数を取得します.
+   * @return 一時ファイルに書き出した要素数
+   */
+  public int getSpilledCount() {
+    return offsets.size();
+  }
+
+  /**
+   * 一時ファイルを削除します.
+   * 削除後は一時ファイルに書き出した要素を取得できません.
+   * @throws IOException 一時ファイルの削除に失敗した場合
+   */
+  @Override
+  public void close() throws IOException {
+    if (file != null) {
+      file.close();
+    }
+  }
+
+  private boolean overBudget() {
+    if (memory.size() >= maxRows) {
+      return true;
+    }
+    return samples > 0 && sampledBytes / samples * memory.size() >= maxBytes;
+  }
+
+  private void spill(T value) throws IOException {
+    if (file == null) {
+      file = new SegmentedBuffer(SEGMENT_SIZE, directory);
+    }
+    byte[] bytes = encode(value);
+    file.ensure(fileSize + 4 + bytes.length);
+    file.putInt(fileSize, bytes.length);
+    file.put(fileSize + 4, bytes);
+    offsets.add(fileSize);
+    fileSize += 4 + bytes.length;
+  }
+
+  private byte[] encode(T value) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (DataOutputStream stream = new DataOutputStream(out)) {
+      codec.write(value, stream);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,10 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+/**
+ * 大量の検索結果を少ないメモリで保持するための、列指向やヒープ外の検索結果を提供します.
+ */
+package yamane.tritedb.result;
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.row;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ResultSetMetaDataの内容を複写して保持するクラスです.
+ * ResultSetのクローズ後や、別スレッドからも参照できます.
+ */
+public class RowMetaData implements ResultSetMetaData {
+
+  private final int count;
+  private final String[] labels;
+  private final String[] names;
+  private final int[] types;
+  private final String[] typeNames;
+  private final String[] classNames;
+  private final int[] precisions;
+  private final int[] scales;
+  private final int[] nullables;
+  private final boolean[] signed;
+  private final String[] tables;
+  private final String[] schemas;
+  private final String[] catalogs;
+  private final Map<String, Integer> indexes = new ConcurrentHashMap<>();
+
+  /**
+   * コンストラクタ.
+   * @param meta 複写元のResultSetMetaData
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public RowMetaData(ResultSetMetaData meta) throws SQLException {
+    this.count = meta.getColumnCount();
+    this.labels = new String[count];
+    this.names = new String[count];
+    this.types = new int[count];
+    this.typeNames = new String[count];
+    this.classNames = new String[count];
+    this.precisions = new int[count];
+    this.scales = new int[count];
+    this.nullables = new int[count];
+    this.signed = new boolean[count];
+    this.tables = new String[count];
+    this.schemas = new String[count];
+    this.catalogs = new String[count];
+    for (int i = 0; i < count; i++) {
+      int col = i + 1;
+      labels[i] = meta.getColumnLabel(col);
+      names[i] = meta.getColumnName(col);
+      types[i] = meta.getColumnType(col);
+      typeNames[i] = meta.getColumnTypeName(col);
+      classNames[i] = meta.getColumnClassName(col);
+      precisions[i] = meta.getPrecision(col);
+      scales[i] = meta.getScale(col);
+      nullables[i] = meta.isNullable(col);
+      signed[i] = meta.isSigned(col);
+      tables[i] = meta.getTableName(col);
+      schemas[i] = meta.getSchemaName(col);
+      catalogs[i] = meta.getCatalogName(col);
+      indexes.putIfAbsent(labels[i].toLowerCase(Locale.ROOT), col);
+    }
+  }
+
+  /**
+   * 列名から列番号を取得します.
+   * 大文字小文字は区別しません.
+   * @param label 列名
+   * @return 列番号（1から始まる）
+   * @throws SQLException 列が存在しない場合
+   */
+  public int findColumn(String label) throws SQLException {
+    Integer index = indexes.get(label.toLowerCase(Locale.ROOT));
+    if (index == null) {
+      throw new SQLException(label);
+    }
+    return index;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getColumnCount() {
+    return count;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isAutoIncrement(int column) {
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isCaseSensitive(int column) {
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isSearchable(int column) {
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isCurrency(int column) {
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int isNullable(int column) {
+    return nullables[column - 1];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isSigned(int column) {
+    return signed[column - 1];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getColumnDisplaySize(int column) {
+    return precisions[column - 1];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getColumnLabel(int column) {
+    return labels[column - 1];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getColumnName(int column) {
+    return names[column - 1];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getSchemaName(int column) {
+    return schemas[column - 1];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getPrecision(int column) {
+    return precisions[column - 1];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getScale(int column) {
+    return scales[column - 1];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getTableName(int column) {
+    return tables[column - 1];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getCatalogName(int column) {
+    return catalogs[column - 1];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getColumnType(int column) {
+    return types[column - 1];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getColumnTypeName(int column) {
+    return typeNames[column - 1];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isReadOnly(int column) {
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isWritable(int column) {
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isDefinitelyWritable(int column) {
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getColumnClassName(int column) {
+    return classNames[column - 1];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+    throw new SQLException(iface.getName());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isWrapperFor(Class<?> iface) {
+    return iface.isInstance(this);
+  }
+}
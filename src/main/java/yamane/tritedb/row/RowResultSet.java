@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.row;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * ResultSetから読み出した1行分の値を、読み取り専用のResultSetとして参照するためのクラスです.
+ * Mapperを元のResultSetから切り離して、別スレッドや後から実行するために使用します.
+ * <ul>
+ * <li>値は {@link #read(ResultSet, int)} で getObject() を使って読み出したものを保持します.</li>
+ * <li>getInt() などの取得メソッドは、保持している値を要求された型に変換して返します.
+ * バイト配列を文字列として取得する場合は、実行環境によらずUTF-8として変換します.</li>
+ * <li>next() などカーソルを移動するメソッドや、更新系のメソッドはサポートしません.</li>
+ * </ul>
+ * 1つのインスタンスは1スレッドから使用してください. {@link #set(Object[])} で行を切り替えて使い回せます.
+ */
+public class RowResultSet implements InvocationHandler {
+
+  private final RowMetaData meta;
+  private final ResultSet proxy;
+  private Object[] row;
+  private boolean wasNull;
+
+  /**
+   * コンストラクタ.
+   * @param meta 行の型情報
+   */
+  public RowResultSet(RowMetaData meta) {
+    this.meta = meta;
+    this.proxy = (ResultSet) Proxy.newProxyInstance(RowResultSet.class.getClassLoader(),
+        new Class<?>[] { ResultSet.class }, this);
+  }
+
+  /**
+   * 参照する行を設定します.
+   * @param row {@link #read(ResultSet, int)} で読み出した行
+   * @return 行を参照するResultSet
+   */
+  public ResultSet set(Object[] row) {
+    this.row = row;
+    this.wasNull = false;
+    return proxy;
+  }
+
+  /**
+   * ResultSetの現在行の値を読み出します.
+   * ClobとBlobはResultSetのクローズ後に参照できなくなるため、文字列とバイト配列として読み出します.
+   * @param rs 読み出し元のResultSet
+   * @param count 列数
+   * @return 行の値
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public static Object[] read(ResultSet rs, int count) throws SQLException {
+    Object[] row = new Object[count];
+    for (int i = 0; i < count; i++) {
+      row[i] = readValue(rs, i + 1);
+    }
+    return row;
+  }
+
+  /**
+   * ResultSetの現在行から1列の値を読み出します.
+   * ClobとBlobはResultSetのクローズ後に参照できなくなるため、文字列とバイト配列として読み出します.
+   * @param rs 読み出し元のResultSet
+   * @param index 列番号（1から始まる）
+   * @return 値
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public static Object readValue(ResultSet rs, int index) throws SQLException {
+    Object value = rs.getObject(index);
+    if (value instanceof Clob) {
+      Clob clob = (Clob) value;
+      return clob.getSubString(1, (int) clob.length());
+    } else if (value instanceof Blob) {
+      Blob blob = (Blob) value;
+      return blob.getBytes(1, (int) blob.length());
+    }
+    return value;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    String name = method.getName();
+    switch (name) {
+    case "wasNull":
+      return wasNull;
+    case "getMetaData":
+      return meta;
+    case "findColumn":
+      return meta.findColumn((String) args[0]);
+    case "isClosed":
+    case "next":
+    case "previous":
+      return false;
+    case "close":
+    case "clearWarnings":
+      return null;
+    case "getWarnings":
+    case "getStatement":
+      return null;
+    case "getType":
+      return ResultSet.TYPE_FORWARD_ONLY;
+    case "getConcurrency":
+      return ResultSet.CONCUR_READ_ONLY;
+    case "unwrap":
+      if (((Class<?>) args[0]).isInstance(proxy)) {
+        return proxy;
+      }
+      throw new SQLException(((Class<?>) args[0]).getName());
+    case "isWrapperFor":
+      return ((Class<?>) args[0]).isInstance(proxy);
+    case "equals":
+      return proxy == args[0];
+    case "hashCode":
+      return System.identityHashCode(proxy);
+    case "toString":
+      return "RowResultSet" + Arrays.toString(row);
+    default:
+      break;
+    }
+    if (!name.startsWith("get") || args == null || args.length == 0) {
+      throw new SQLFeatureNotSupportedException(name);
+    }
+    int index = args[0] instanceof String ? meta.findColumn((String) args[0]) : (Integer) args[0];
+    Object value = row[index - 1];
+    wasNull = value == null;
+    if (name.equals("getObject") && args.length == 2 && args[1] instanceof Class) {
+      return convert(value, (Class<?>) args[1]);
+    }
+    Class<?> type = method.getReturnType();
+    if (type == Object.class) {
+      return value;
+    }
+    if (type.isPrimitive() && value == null) {
+      return type == boolean.class ? Boolean.FALSE : convert(0, type);
+    }
+    return convert(value, type);
+  }
+
+  /**
+   * 値を指定された型に変換します.
+   * @param <T> 変換後の型
+   * @param value 変換する値
+   * @param type 変換後の型
+   * @return 変換後の値
+   * @throws SQLException 変換できない場合
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T convert(Object value, Class<T> type) throws SQLException {
+    if (value == null) {
+      return null;
+    }
+    Class<?> boxed = box(type);
+    if (boxed.isInstance(value)) {
+      return (T) value;
+    }
+    Object result = convertValue(value, boxed);
+    if (result == null) {
+      throw new SQLException(value.getClass().getName() + " -> " + type.getName());
+    }
+    return (T) result;
+  }
+
+  private static Object convertValue(Object value, Class<?> type) {
+    if (type == String.class) {
+      return value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : value.toString();
+    }
+    if (type == Boolean.class) {
+      if (value instanceof Number) {
+        return ((Number) value).intValue() != 0;
+      }
+      String s = value.toString().trim();
+      return s.equalsIgnoreCase("true") || s.equals("1");
+    }
+    if (Number.class.isAssignableFrom(type)) {
+      BigDecimal n;
+      if (value instanceof Boolean) {
+        n = (Boolean) value ? BigDecimal.ONE : BigDecimal.ZERO;
+      } else if (value instanceof BigDecimal) {
+        n = (BigDecimal) value;
+      } else if (value instanceof Double || value instanceof Float) {
+        n = BigDecimal.valueOf(((Number) value).doubleValue());
+      } else if (value instanceof Number) {
+        n = BigDecimal.valueOf(((Number) value).longValue());
+      } else {
+        try {
+          n = new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+          return null;
+        }
+      }
+      return number(n, type);
+    }
+    if (type == Timestamp.class || type == Date.class || type == Time.class) {
+      long millis;
+      if (value instanceof java.util.Date) {
+        millis = ((java.util.Date) value).getTime();
+      } else if (value instanceof LocalDateTime) {
+        millis = Timestamp.valueOf((LocalDateTime) value).getTime();
+      } else if (value instanceof LocalDate) {
+        millis = Date.valueOf((LocalDate) value).getTime();
+      } else if (value instanceof LocalTime) {
+        millis = Time.valueOf((LocalTime) value).getTime();
+      } else if (value instanceof OffsetDateTime) {
+        millis = ((OffsetDateTime) value).toInstant().toEpochMilli();
+      } else if (value instanceof ZonedDateTime) {
+        millis = ((ZonedDateTime) value).toInstant().toEpochMilli();
+      } else {
+        return null;
+      }
+      if (type == Timestamp.class) {
+        Timestamp ts = new Timestamp(millis);
+        if (value instanceof Timestamp) {
+          ts.setNanos(((Timestamp) value).getNanos());
+        }
+        return ts;
+      }
+      return type == Date.class ? new Date(millis) : new Time(millis);
+    }
+    if (type == LocalDateTime.class) {
+      Timestamp ts = (Timestamp) convertValue(value, Timestamp.class);
+      return ts == null ? null : ts.toLocalDateTime();
+    }
+    if (type == LocalDate.class) {
+      Date date = (Date) convertValue(value, Date.class);
+      return date == null ? null : date.toLocalDate();
+    }
+    if (type == LocalTime.class) {
+      Time time = (Time) convertValue(value, Time.class);
+      return time == null ? null : time.toLocalTime();
+    }
+    return null;
+  }
+
+  private static Object number(BigDecimal n, Class<?> type) {
+    if (type == Integer.class) {
+      return n.intValue();
+    } else if (type == Long.class) {
+      return n.longValue();
+    } else if (type == Double.class) {
+      return n.doubleValue();
+    } else if (type == Float.class) {
+      return n.floatValue();
+    } else if (type == Short.class) {
+      return n.shortValue();
+    } else if (type == Byte.class) {
+      return n.byteValue();
+    } else if (type == BigDecimal.class || type == Number.class) {
+      return n;
+    } else if (type == BigInteger.class) {
+      return n.toBigInteger();
+    }
+    return null;
+  }
+
+  private static Class<?> box(Class<?> type) {
+    if (!type.isPrimitive()) {
+      return type;
+    } else if (type == int.class) {
+      return Integer.class;
+    } else if (type == long.class) {
+      return Long.class;
+    } else if (type == double.class) {
+      return Double.class;
+    } else if (type == boolean.class) {
+      return Boolean.class;
+    } else if (type == float.class) {
+      return Float.class;
+    } else if (type == short.class) {
+      return Short.class;
+    } else if (type == byte.class) {
+      return Byte.class;
+    }
+    return type;
+  }
+}
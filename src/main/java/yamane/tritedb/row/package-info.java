@@ -0,0 +1,10 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+/**
+ * ResultSetから読み出した行や型情報を、ResultSetのクローズ後も参照できる形で保持する機能を提供します.
+ */
+package yamane.tritedb.row;
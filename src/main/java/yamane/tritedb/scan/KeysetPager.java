@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.scan;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import yamane.tritedb.Mapper;
+import yamane.tritedb.QueryOptions;
+import yamane.tritedb.TriteDb;
+import yamane.tritedb.utils.UncheckedSQLException;
+
+/**
+ * キーの順に一定行数ずつ検索して、大きなテーブルを少しずつ読み出すクラスです.
+ * 1つの検索を長時間実行し続けないため、ロックやスナップショットを長く保持しません.
+ * OFFSETによるページングと異なり、後ろのページになっても検索が遅くなりません.
+ * <ul>
+ * <li>元のSQLを副問い合わせとして、前のページの最後のキーより大きい行をキーの順に1ページ分検索します.</li>
+ * <li>複数列のキーを指定した場合は、キーの組み合わせの順に検索します.</li>
+ * <li>各ページの検索はそれぞれ別のコネクションで行い、検索が終わるとすぐにコネクションを返却します.</li>
+ * <li>先読みを有効にすると、ページを処理している間に {@link TriteDb#getExecutor()} のスレッドで次のページを検索します.</li>
+ * </ul>
+ * キーは一意で、NULLを含まない列を指定してください. キーの列名は元のSQLの検索結果の列ラベルと一致している必要があります.
+ * 生成されるSQLは次のとおりです.
+ * <pre>
+ * select * from (元のSQL) keyset_ where (k1 &gt; ?) or (k1 = ? and k2 &gt; ?) order by k1, k2 limit ?
+ * </pre>
+ * @param <T> 処理結果を格納する型
+ */
+public class KeysetPager<T> implements Iterable<T> {
+
+  private final TriteDb db;
+  private final Mapper<T> mapper;
+  private final String[] keys;
+  private final int pageSize;
+  private final String sql;
+  private final Object[] params;
+  private String limitClause = "limit ?";
+  private boolean prefetch = true;
+
+  /**
+   * 1列のキーでページングするインスタンスを生成します.
+   * @param db SQLの実行に使用するTriteDb
+   * @param mapper 処理結果変換クラス
+   * @param key キーの列名
+   * @param pageSize 1ページの行数
+   * @param sql 元のSQL
+   * @param params SQL実行時の可変パラメータ
+   */
+  public KeysetPager(TriteDb db, Mapper<T> mapper, String key, int pageSize, String sql, Object... params) {
+    this(db, mapper, new String[] { key }, pageSize, sql, params);
+  }
+
+  /**
+   * 複数列のキーでページングするインスタンスを生成します.
+   * @param db SQLの実行に使用するTriteDb
+   * @param mapper 処理結果変換クラス
+   * @param keys キーの列名. 並び順の優先度が高いものから指定します
+   * @param pageSize 1ページの行数
+   * @param sql 元のSQL
+   * @param params SQL実行時の可変パラメータ
+   */
+  public KeysetPager(TriteDb db, Mapper<T> mapper, String[] keys, int pageSize, String sql, Object... params) {
+    if (keys.length == 0 || pageSize <= 0) {
+      throw new IllegalArgumentException();
+    }
+    this.db = db.withOptions(QueryOptions.DEFAULT.withMaxRows(pageSize));
+    this.mapper = mapper;
+    this.keys = keys.clone();
+    this.pageSize = pageSize;
+    this.sql = sql;
+    this.params = params;
+  }
+
+  /**
+   * 行数を制限する句を設定します. パラメータとして1ページの行数を1つ受け取る形式で指定してください.
+   * LIMIT句をサポートしないDBでは "fetch first ? rows only" などを指定します.
+   * nullを指定した場合は句を付加せず、{@link QueryOptions#withMaxRows(int)} だけで行数を制限します.
+   * @param limitClause 行数を制限する句（デフォルトは "limit ?"）
+   */
+  public void setLimitClause(String limitClause) {
+    this.limitClause = limitClause;
+  }
+
+  /**
+   * 次のページを先読みするかどうかを設定します.
+   * @param prefetch 先読みする場合true（デフォルトはtrue）
+   */
+  public void setPrefetch(boolean prefetch) {
+    this.prefetch = prefetch;
+  }
+
+  /**
+   * 全ページを順に読み出すIteratorを生成します.
+   * Iteratorの各メソッドで発生したSQLExceptionは {@link UncheckedSQLException} として送出されます.
+   * @return Iterator
+   */
+  @Override
+  public PageIterator iterator() {
+    return new PageIterator();
+  }
+
+  /**
+   * 全ページを順に読み出す逐次Streamを生成します.
+   * Streamをクローズすると、先読み中の検索をキャンセルします.
+   * @return Stream
+   */
+  public Stream<T> stream() {
+    PageIterator it = iterator();
+    Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL);
+    return StreamSupport.stream(spliterator, false).onClose(it::close);
+  }
+
+  /**
+   * 1ページ分の検索を実行します.
+   * @param last 前のページの最後の行のキー. 最初のページの場合はnull
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  Page<T> fetch(Object[] last) throws SQLException {
+    List<Object> args = new ArrayList<>();
+    if (params != null) {
+      args.addAll(Arrays.asList(params));
+    }
+    StringBuilder query = new StringBuilder("select * from (").append(sql).append(") keyset_");
+    if (last != null) {
+      query.append(" where ");
+      for (int i = 0; i < keys.length; i++) {
+        query.append(i == 0 ? "(" : " or (");
+        for (int j = 0; j < i; j++) {
+          query.append(label(j)).append(" = ? and ");
+          args.add(last[j]);
+        }
+        query.append(label(i)).append(" > ?)");
+        args.add(last[i]);
+      }
+    }
+    query.append(" order by ");
+    for (int i = 0; i < keys.length; i++) {
+      query.append(i == 0 ? "" : ", ").append(label(i));
+    }
+    if (limitClause != null) {
+      query.append(' ').append(limitClause);
+      args.add(pageSize);
+    }
+    Object[][] lastKey = new Object[1][];
+    List<T> rows = db.selectList((rs, meta) -> {
+      Object[] key = new Object[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        key[i] = rs.getObject(label(i));
+      }
+      lastKey[0] = key;
+      return mapper.map(rs, meta);
+    }, query.toString(), args.toArray());
+    return new Page<>(rows, rows.size() < pageSize ? null : lastKey[0]);
+  }
+
+  private String label(int index) {
+    String key = keys[index];
+    return key.substring(key.lastIndexOf('.') + 1);
+  }
+
+  /**
+   * 1ページ分の検索結果です.
+   * @param <T> 処理結果を格納する型
+   */
+  static final class Page<T> {
+    final List<T> rows;
+    final Object[] last;
+
+    Page(List<T> rows, Object[] last) {
+      this.rows = rows;
+      this.last = last;
+    }
+  }
+
+  /**
+   * 全ページを順に読み出すIteratorです.
+   * 途中で読み出しをやめる場合は {@link #close()} で先読み中の検索をキャンセルしてください.
+   */
+  public class PageIterator implements Iterator<T>, AutoCloseable {
+    private Iterator<T> current = Collections.emptyIterator();
+    private Object[] last;
+    private CompletableFuture<Page<T>> next;
+    private boolean started;
+    private boolean closed;
+
+    @Override
+    public boolean hasNext() {
+      while (!current.hasNext()) {
+        if (closed || (started && last == null)) {
+          return false;
+        }
+        Page<T> page = take();
+        started = true;
+        current = page.rows.iterator();
+        last = page.last;
+        if (prefetch && last != null) {
+          Object[] key = last;
+          next = CompletableFuture.supplyAsync(() -> {
+            try {
+              return fetch(key);
+            } catch (SQLException e) {
+              throw new UncheckedSQLException(e);
+            }
+          }, db.getExecutor());
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.next();
+    }
+
+    /**
+     * 読み出しを終了し、先読み中の検索をキャンセルします.
+     */
+    @Override
+    public void close() {
+      closed = true;
+      current = Collections.emptyIterator();
+      if (next != null) {
+        next.cancel(false);
+        next = null;
+      }
+    }
+
+    private Page<T> take() {
+      try {
+        if (next == null) {
+          return fetch(started ? last : null);
+        }
+        CompletableFuture<Page<T>> future = next;
+        next = null;
+        return future.join();
+      } catch (SQLException e) {
+        close();
+        throw new UncheckedSQLException(e);
+      } catch (CompletionException | CancellationException e) {
+        close();
+        if (e.getCause() instanceof UncheckedSQLException) {
+          throw (UncheckedSQLException) e.getCause();
+        }
+        throw e;
+      }
+    }
+  }
+}
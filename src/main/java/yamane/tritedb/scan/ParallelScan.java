@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.scan;
+
+import static yamane.tritedb.TriteDbBase.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import yamane.tritedb.Mapper;
+import yamane.tritedb.TriteDb;
+import yamane.tritedb.utils.UncheckedSQLException;
+
+/**
+ * キーの範囲で検索を分割し、複数のコネクションで並列に実行するクラスです.
+ * 1つのSQLで全件を検索する場合と比べ、DB側とアプリケーション側の複数のコアを使って処理できます.
+ * <ul>
+ * <li>キーの範囲は {@link #setRange(Object, Object)} で指定するか、指定しない場合は MIN/MAX を検索して求めます.</li>
+ * <li>範囲を {@link #setPartitions(int)} の数に等分し、それぞれを {@link TriteDb#getExecutor()} のスレッドと別々のコネクションで検索します.</li>
+ * <li>処理結果は、検索が終わった範囲から順不同で返すか、キーの順に返します.</li>
+ * </ul>
+ * キーには整数、小数、日付（java.sql.Date、Timestamp、LocalDate、LocalDateTime など）の列を指定できます.
+ * キーがNULLの行は検索されません. 1つの範囲の処理結果はメモリ上に保持されます.
+ * 各範囲の検索に生成されるSQLは次のとおりです.
+ * <pre>
+ * select * from (元のSQL) scan_ where key &gt;= ? and key &lt; ? [order by key]
+ * </pre>
+ * @param <T> 処理結果を格納する型
+ */
+public class ParallelScan<T> {
+
+  private final TriteDb db;
+  private final Mapper<T> mapper;
+  private final String key;
+  private final String sql;
+  private final Object[] params;
+  private int partitions = Runtime.getRuntime().availableProcessors();
+  private Object min;
+  private Object max;
+
+  /**
+   * コンストラクタ.
+   * @param db SQLの実行に使用するTriteDb
+   * @param mapper 処理結果変換クラス. 複数スレッドから同時に呼び出されます
+   * @param key 範囲を分割するキーの列名
+   * @param sql 元のSQL
+   * @param params SQL実行時の可変パラメータ
+   */
+  public ParallelScan(TriteDb db, Mapper<T> mapper, String key, String sql, Object... params) {
+    this.db = db;
+    this.mapper = mapper;
+    this.key = key.substring(key.lastIndexOf('.') + 1);
+    this.sql = sql;
+    this.params = params;
+  }
+
+  /**
+   * 分割数を設定します. 同時に使用するコネクション数の上限にもなります.
+   * @param partitions 分割数（デフォルトは実行環境のプロセッサ数）
+   */
+  public void setPartitions(int partitions) {
+    if (partitions <= 0) {
+      throw new IllegalArgumentException();
+    }
+    this.partitions = partitions;
+  }
+
+  /**
+   * 検索するキーの範囲を設定します. 範囲外の行は検索されません.
+   * 設定しない場合は、元のSQLの検索結果からキーの最小値と最大値を検索します.
+   * @param min キーの最小値
+   * @param max キーの最大値
+   */
+  public void setRange(Object min, Object max) {
+    this.min = min;
+    this.max = max;
+  }
+
+  /**
+   * 分割したキーの範囲を取得します.
+   * 範囲は下限を含み上限を含みませんが、最後の範囲だけは上限を含みます.
+   * @return キーの範囲. 検索対象がない場合は空のList
+   * @throws SQLException DBがエラーを通知した場合、キーの型が分割できない場合
+   */
+  public List<Range> ranges() throws SQLException {
+    Object lower = min;
+    Object upper = max;
+    if (lower == null || upper == null) {
+      Object[] bounds = db.select(Mapper.create((rs) -> new Object[] { rs.getObject(1), rs.getObject(2) }),
+          "select min(" + key + "), max(" + key + ") from (" + sql + ") scan_", params);
+      lower = lower == null ? bounds[0] : lower;
+      upper = upper == null ? bounds[1] : upper;
+    }
+    if (lower == null || upper == null) {
+      return Collections.emptyList();
+    }
+    List<Object> bounds = split(lower, upper, partitions);
+    List<Range> result = new ArrayList<>();
+    for (int i = 0; i < bounds.size() - 1; i++) {
+      result.add(new Range(bounds.get(i), bounds.get(i + 1), i == bounds.size() - 2));
+    }
+    if (result.isEmpty()) {
+      result.add(new Range(lower, upper, true));
+    }
+    return result;
+  }
+
+  /**
+   * 全範囲を並列に検索し、処理結果を1つのListにまとめます.
+   * @param ordered キーの順に並べる場合true
+   * @return 検索結果
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public List<T> list(boolean ordered) throws SQLException {
+    List<T> result = new ArrayList<>();
+    try (Stream<T> stream = stream(ordered)) {
+      stream.forEach(result::add);
+    } catch (UncheckedSQLException e) {
+      throw e.getCause();
+    }
+    return result;
+  }
+
+  /**
+   * 全範囲を並列に検索し、処理結果を逐次Streamとして返します.
+   * 順不同の場合は検索が終わった範囲から、キーの順の場合は範囲の順に、各範囲の検索が終わり次第返します.
+   * Streamの処理中に発生したSQLExceptionは {@link UncheckedSQLException} として送出されます.
+   * Streamをクローズすると、開始前の範囲の検索をキャンセルします.
+   * @param ordered キーの順に並べる場合true
+   * @return Stream
+   * @throws SQLException DBがエラーを通知した場合
+   */
+  public Stream<T> stream(boolean ordered) throws SQLException {
+    List<Range> ranges = ranges();
+    List<CompletableFuture<List<T>>> futures = new ArrayList<>();
+    BlockingQueue<CompletableFuture<List<T>>> done = new LinkedBlockingQueue<>();
+    for (Range range : ranges) {
+      CompletableFuture<List<T>> future = CompletableFuture.supplyAsync(() -> {
+        try {
+          return scan(range, ordered);
+        } catch (SQLException e) {
+          throw new UncheckedSQLException(e);
+        }
+      }, db.getExecutor());
+      futures.add(future);
+      future.whenComplete((r, e) -> done.add(future));
+    }
+    MergeIterator it = new MergeIterator(futures, ordered ? null : done);
+    Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(it, ordered ? Spliterator.ORDERED : 0);
+    return StreamSupport.stream(spliterator, false).onClose(it::cancel);
+  }
+
+  private List<T> scan(Range range, boolean ordered) throws SQLException {
+    StringBuilder query = new StringBuilder("select * from (").append(sql).append(") scan_ where ")
+        .append(key).append(" >= ? and ").append(key).append(range.last ? " <= ?" : " < ?");
+    if (ordered) {
+      query.append(" order by ").append(key);
+    }
+    Object[] args = params == null ? new Object[2] : Arrays.copyOf(params, params.length + 2);
+    args[args.length - 2] = range.lower;
+    args[args.length - 1] = range.upper;
+    return db.selectList(mapper, query.toString(), args);
+  }
+
+  /**
+   * 最小値から最大値までを等分する境界値を求めます. 重複する境界値は除きます.
+   * @param min 最小値
+   * @param max 最大値
+   * @param count 分割数
+   * @return 最小値と最大値を含む境界値
+   * @throws SQLException キーの型が分割できない場合
+   */
+  static List<Object> split(Object min, Object max, int count) throws SQLException {
+    List<Object> result = new ArrayList<>();
+    result.add(min);
+    if (isIntegral(min) && isIntegral(max)) {
+      BigInteger lower = toBigInteger(min);
+      BigInteger span = toBigInteger(max).subtract(lower);
+      for (int i = 1; i < count; i++) {
+        BigInteger bound = lower.add(span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(count)));
+        addBound(result, bound.bitLength() < 64 ? (Object) bound.longValue() : new BigDecimal(bound));
+      }
+    } else if (min instanceof Number && max instanceof Number) {
+      double lower = ((Number) min).doubleValue();
+      double span = ((Number) max).doubleValue() - lower;
+      for (int i = 1; i < count; i++) {
+        addBound(result, lower + span * i / count);
+      }
+    } else if (min instanceof LocalDate && max instanceof LocalDate) {
+      long lower = ((LocalDate) min).toEpochDay();
+      long span = ((LocalDate) max).toEpochDay() - lower;
+      for (int i = 1; i < count; i++) {
+        addBound(result, LocalDate.ofEpochDay(lower + span * i / count));
+      }
+    } else if (min instanceof LocalDateTime && max instanceof LocalDateTime) {
+      long lower = Timestamp.valueOf((LocalDateTime) min).getTime();
+      long span = Timestamp.valueOf((LocalDateTime) max).getTime() - lower;
+      for (int i = 1; i < count; i++) {
+        addBound(result, new Timestamp(lower + span * i / count).toLocalDateTime());
+      }
+    } else if (min instanceof java.util.Date && max instanceof java.util.Date) {
+      long lower = ((java.util.Date) min).getTime();
+      long span = ((java.util.Date) max).getTime() - lower;
+      for (int i = 1; i < count; i++) {
+        long time = lower + span * i / count;
+        addBound(result, min instanceof java.sql.Date ? new java.sql.Date(time) : new Timestamp(time));
+      }
+    } else {
+      throw new SQLException(format("scan.type", min.getClass().getName()));
+    }
+    addBound(result, max);
+    return result;
+  }
+
+  private static void addBound(List<Object> bounds, Object bound) {
+    Object prev = bounds.get(bounds.size() - 1);
+    if (!prev.equals(bound) && !bound.toString().equals(prev.toString())) {
+      bounds.add(bound);
+    }
+  }
+
+  private static boolean isIntegral(Object value) {
+    return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+        || value instanceof BigInteger || (value instanceof BigDecimal && ((BigDecimal) value).scale() <= 0);
+  }
+
+  private static BigInteger toBigInteger(Object value) {
+    if (value instanceof BigInteger) {
+      return (BigInteger) value;
+    }
+    if (value instanceof BigDecimal) {
+      return ((BigDecimal) value).toBigInteger();
+    }
+    return BigInteger.valueOf(((Number) value).longValue());
+  }
+
+  /**
+   * 分割したキーの範囲です.
+   */
+  public static final class Range {
+    private final Object lower;
+    private final Object upper;
+    private final boolean last;
+
+    Range(Object lower, Object upper, boolean last) {
+      this.lower = lower;
+      this.upper = upper;
+      this.last = last;
+    }
+
+    /**
+     * 範囲の下限を取得します.
+     * @return 下限（範囲に含む）
+     */
+    public Object getLower() {
+      return lower;
+    }
+
+    /**
+     * 範囲の上限を取得します.
+     * @return 上限（最後の範囲のみ範囲に含む）
+     */
+    public Object getUpper() {
+      return upper;
+    }
+
+    /**
+     * 最後の範囲かどうかを判定します.
+     * @return 最後の範囲の場合true
+     */
+    public boolean isLast() {
+      return last;
+    }
+
+    @Override
+    public String toString() {
+      return "[" + lower + ", " + upper + (last ? "]" : ")");
+    }
+  }
+
+  /**
+   * 各範囲の処理結果を、終わった順か範囲の順につなげて返すIteratorです.
+   */
+  private class MergeIterator implements Iterator<T> {
+    private final List<CompletableFuture<List<T>>> futures;
+    private final BlockingQueue<CompletableFuture<List<T>>> done;
+    private Iterator<T> current = Collections.emptyIterator();
+    private int taken;
+
+    MergeIterator(List<CompletableFuture<List<T>>> futures, BlockingQueue<CompletableFuture<List<T>>> done) {
+      this.futures = futures;
+      this.done = done;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!current.hasNext()) {
+        if (taken >= futures.size()) {
+          return false;
+        }
+        current = take().iterator();
+      }
+      return true;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.next();
+    }
+
+    void cancel() {
+      for (CompletableFuture<List<T>> future : futures) {
+        future.cancel(false);
+      }
+    }
+
+    private List<T> take() {
+      try {
+        CompletableFuture<List<T>> future = done == null ? futures.get(taken) : done.take();
+        taken++;
+        return future.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cancel();
+        throw new UncheckedSQLException(new SQLException(getStr("scan.interrupted"), e));
+      } catch (CompletionException e) {
+        cancel();
+        if (e.getCause() instanceof UncheckedSQLException) {
+          throw (UncheckedSQLException) e.getCause();
+        }
+        throw e;
+      }
+    }
+  }
+}
@@ -0,0 +1,10 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+/**
+ * 大きなテーブルを分割して読み出す、キーセットページングや並列スキャンの機能を提供します.
+ */
+package yamane.tritedb.scan;
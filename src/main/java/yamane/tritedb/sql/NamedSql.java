@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.sql;
+
+import static yamane.tritedb.TriteDbBase.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import yamane.tritedb.TriteDbBase.SqlSet;
+import yamane.tritedb.cache.BoundedCache;
+
+/**
+ * :name 形式の名前付きパラメータを使うSQLです.
+ * SQLは一度だけ解析して、? に置き換えたSQLと、? の位置ごとのパラメータ名を保持します.
+ * 解析結果はSQLごとにキャッシュされ、実行時は名前から取得した値を配列に詰めるだけで {@link SqlSet} を生成します.
+ * <pre>
+ * db.update(NamedSql.compile("update emp set name = :name where id = :id").bind(emp));
+ * </pre>
+ * <ul>
+ * <li>引用符で囲まれた部分、コメント、:: による型変換はパラメータとして扱いません.</li>
+ * <li>同じ名前を複数回使用した場合、値は一度だけ取得します.</li>
+ * <li>? によるパラメータとは併用できません.</li>
+ * </ul>
+ */
+public final class NamedSql {
+
+  private static final BoundedCache<String, NamedSql> CACHE = new BoundedCache<>(1024);
+
+  private final String sql;
+  private final String[] names;
+  private final int[] slots;
+
+  private NamedSql(String sql, String[] names, int[] slots) {
+    this.sql = sql;
+    this.names = names;
+    this.slots = slots;
+  }
+
+  /**
+   * SQLを解析します. 同じSQLの解析結果はキャッシュされたものを返します.
+   * @param sql 名前付きパラメータを使うSQL
+   * @return 解析結果
+   * @throws SQLException SQLに ? のパラメータが含まれている場合
+   */
+  public static NamedSql compile(String sql) throws SQLException {
+    NamedSql named = CACHE.get(sql);
+    if (named == null) {
+      named = parse(sql);
+      CACHE.put(sql, named);
+    }
+    return named;
+  }
+
+  private static NamedSql parse(String sql) throws SQLException {
+    StringBuilder sb = new StringBuilder(sql.length());
+    List<String> names = new ArrayList<>();
+    List<Integer> slots = new ArrayList<>();
+    int i = 0;
+    while (i < sql.length()) {
+      char c = sql.charAt(i);
+      int next = SqlScanner.skip(sql, i);
+      if (next > i + 1) {
+        sb.append(sql, i, next);
+        i = next;
+      } else if (c == '?') {
+        throw new SQLException(format("named.positional", sql));
+      } else if (c == ':' && i + 1 < sql.length() && sql.charAt(i + 1) == ':') {
+        sb.append("::");
+        i += 2;
+      } else if (c == ':' && i + 1 < sql.length() && Character.isJavaIdentifierStart(sql.charAt(i + 1))) {
+        int end = i + 1;
+        while (end < sql.length() && Character.isJavaIdentifierPart(sql.charAt(end))) {
+          end++;
+        }
+        String name = sql.substring(i + 1, end);
+        int index = names.indexOf(name);
+        if (index < 0) {
+          index = names.size();
+          names.add(name);
+        }
+        slots.add(index);
+        sb.append('?');
+        i = end;
+      } else {
+        sb.append(c);
+        i++;
+      }
+    }
+    int[] slotArray = new int[slots.size()];
+    for (int j = 0; j < slotArray.length; j++) {
+      slotArray[j] = slots.get(j);
+    }
+    return new NamedSql(sb.toString(), names.toArray(new String[names.size()]), slotArray);
+  }
+
+  /**
+   * ? に置き換えたSQLを取得します.
+   * @return ? に置き換えたSQL
+   */
+  public String getSql() {
+    return sql;
+  }
+
+  /**
+   * SQLに含まれるパラメータ名を、最初に出現した順に取得します.
+   * @return パラメータ名
+   */
+  public List<String> getNames() {
+    return Collections.unmodifiableList(Arrays.asList(names));
+  }
+
+  /**
+   * パラメータの値を ? の順に並べた配列を生成します.
+   * @param source パラメータの値を取得するクラス
+   * @return SQL実行時の可変パラメータ
+   * @throws SQLException 値が見つからない場合、値の取得に失敗した場合
+   */
+  public Object[] params(ParameterSource source) throws SQLException {
+    Object[] values = new Object[names.length];
+    for (int i = 0; i < names.length; i++) {
+      if (!source.contains(names[i])) {
+        throw new SQLException(format("named.notfound", names[i], sql));
+      }
+      values[i] = source.get(names[i]);
+    }
+    if (values.length == slots.length) {
+      return values;
+    }
+    Object[] params = new Object[slots.length];
+    for (int i = 0; i < slots.length; i++) {
+      params[i] = values[slots[i]];
+    }
+    return params;
+  }
+
+  /**
+   * パラメータの値を埋めたSQLセットを生成します.
+   * @param source パラメータの値を取得するクラス
+   * @return SQLセット
+   * @throws SQLException 値が見つからない場合、値の取得に失敗した場合
+   */
+  public SqlSet bind(ParameterSource source) throws SQLException {
+    return new SqlSet(sql, params(source));
+  }
+
+  /**
+   * パラメータの値を埋めたSQLセットを生成します.
+   * 値は {@link ParameterSource#from(Object)} で、Map、JavaBean、<code>@Column</code> を設定したクラスから取得します.
+   * @param source パラメータの値を持つオブジェクト
+   * @return SQLセット
+   * @throws SQLException 値が見つからない場合、値の取得に失敗した場合
+   */
+  public SqlSet bind(Object source) throws SQLException {
+    return bind(ParameterSource.from(source));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return sql + " " + Arrays.toString(names);
+  }
+}
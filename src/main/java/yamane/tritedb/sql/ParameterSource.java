@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.sql;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+import yamane.tritedb.mapper.reflect.AnnotationProcessor;
+import yamane.tritedb.mapper.reflect.BeanProcessor;
+
+/**
+ * 名前付きパラメータの値を、名前から取得するクラスです.
+ * Map、JavaBean、<code>@Column</code> を設定したクラスから値を取得するものを用意しています.
+ */
+public interface ParameterSource {
+
+  /**
+   * 指定された名前の値を持っているかどうかを判定します.
+   * @param name パラメータ名
+   * @return 値を持っている場合true
+   */
+  boolean contains(String name);
+
+  /**
+   * 指定された名前の値を取得します.
+   * @param name パラメータ名
+   * @return 値
+   * @throws SQLException 値の取得に失敗した場合
+   */
+  Object get(String name) throws SQLException;
+
+  /**
+   * Mapのキーをパラメータ名として値を取得するParameterSourceを生成します.
+   * @param map パラメータ名と値のMap
+   * @return ParameterSource
+   */
+  static ParameterSource of(Map<String, ?> map) {
+    return new ParameterSource() {
+      @Override
+      public boolean contains(String name) {
+        return map.containsKey(name);
+      }
+
+      @Override
+      public Object get(String name) {
+        return map.get(name);
+      }
+    };
+  }
+
+  /**
+   * JavaBeanのプロパティ名をパラメータ名として、getterから値を取得するParameterSourceを生成します.
+   * プロパティ名はキャメルケースとスネークケースのどちらでも指定できます.
+   * @param bean JavaBean
+   * @return ParameterSource
+   * @throws SQLException JavaBeanの解析に失敗した場合
+   */
+  static ParameterSource bean(Object bean) throws SQLException {
+    BeanProcessor<?> processor = Processors.bean(bean.getClass());
+    return new ParameterSource() {
+      @Override
+      public boolean contains(String name) {
+        return processor.contains(name);
+      }
+
+      @Override
+      public Object get(String name) throws SQLException {
+        return processor.read(bean, name);
+      }
+    };
+  }
+
+  /**
+   * <code>@Column</code> に指定した名前をパラメータ名として、フィールドから値を取得するParameterSourceを生成します.
+   * <code>@Nest</code> を設定したフィールドの値は "nest$column" の形式で指定します.
+   * @param target <code>@Column</code> を設定したクラスのインスタンス
+   * @return ParameterSource
+   * @throws SQLException クラスの解析に失敗した場合
+   */
+  static ParameterSource annotated(Object target) throws SQLException {
+    AnnotationProcessor<?> processor = Processors.annotation(target.getClass());
+    return new ParameterSource() {
+      @Override
+      public boolean contains(String name) {
+        return processor.containsField(name);
+      }
+
+      @Override
+      public Object get(String name) throws SQLException {
+        return processor.getField(name).read(target);
+      }
+    };
+  }
+
+  /**
+   * 値の型に応じたParameterSourceを生成します.
+   * ParameterSourceはそのまま、Mapは {@link #of(Map)}、<code>@Column</code> か <code>@Nest</code> を設定したクラスは
+   * {@link #annotated(Object)}、それ以外は {@link #bean(Object)} で生成します.
+   * @param source パラメータの値を持つオブジェクト
+   * @return ParameterSource
+   * @throws SQLException クラスの解析に失敗した場合
+   */
+  @SuppressWarnings("unchecked")
+  static ParameterSource from(Object source) throws SQLException {
+    if (source instanceof ParameterSource) {
+      return (ParameterSource) source;
+    }
+    if (source instanceof Map) {
+      return of((Map<String, ?>) source);
+    }
+    if (Processors.isAnnotated(source.getClass())) {
+      return annotated(source);
+    }
+    return bean(source);
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.sql;
+
+import java.lang.reflect.Field;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import yamane.tritedb.mapper.reflect.AnnotationProcessor;
+import yamane.tritedb.mapper.reflect.BeanProcessor;
+import yamane.tritedb.mapper.reflect.Column;
+import yamane.tritedb.mapper.reflect.Nest;
+
+/**
+ * {@link ParameterSource} が使用するクラスの解析結果を、クラスごとに保持します.
+ */
+final class Processors {
+
+  private static final Map<Class<?>, BeanProcessor<?>> BEANS = new ConcurrentHashMap<>();
+  private static final Map<Class<?>, AnnotationProcessor<?>> ANNOTATIONS = new ConcurrentHashMap<>();
+  private static final Map<Class<?>, Boolean> ANNOTATED = new ConcurrentHashMap<>();
+
+  private Processors() {
+  }
+
+  static BeanProcessor<?> bean(Class<?> clazz) throws SQLException {
+    BeanProcessor<?> processor = BEANS.get(clazz);
+    if (processor == null) {
+      processor = new BeanProcessor<>(clazz);
+      BEANS.put(clazz, processor);
+    }
+    return processor;
+  }
+
+  static AnnotationProcessor<?> annotation(Class<?> clazz) throws SQLException {
+    AnnotationProcessor<?> processor = ANNOTATIONS.get(clazz);
+    if (processor == null) {
+      processor = new AnnotationProcessor<>(clazz);
+      ANNOTATIONS.put(clazz, processor);
+    }
+    return processor;
+  }
+
+  static boolean isAnnotated(Class<?> clazz) {
+    return ANNOTATED.computeIfAbsent(clazz, (c) -> {
+      for (Class<?> target = c; target != null && target != Object.class; target = target.getSuperclass()) {
+        for (Field field : target.getDeclaredFields()) {
+          if (field.isAnnotationPresent(Column.class) || field.isAnnotationPresent(Nest.class)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    });
+  }
+}
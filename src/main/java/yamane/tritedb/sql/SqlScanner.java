@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.sql;
+
+/**
+ * SQLを解析する際に、引用符で囲まれた部分とコメントを読み飛ばすための共通処理です.
+ */
+public final class SqlScanner {
+
+  private SqlScanner() {
+  }
+
+  /**
+   * 次に解析する位置を取得します.
+   * 指定位置が引用符かコメントの開始の場合は、その終わりの次の位置を返します.
+   * @param sql SQL
+   * @param index 現在の位置
+   * @return 次に解析する位置
+   */
+  public static int skip(String sql, int index) {
+    char c = sql.charAt(index);
+    if (c == '\'' || c == '"' || c == '`') {
+      int end = sql.indexOf(c, index + 1);
+      return end < 0 ? sql.length() : end + 1;
+    }
+    if (sql.startsWith("--", index)) {
+      int end = sql.indexOf('\n', index);
+      return end < 0 ? sql.length() : end + 1;
+    }
+    if (sql.startsWith("/*", index)) {
+      int end = sql.indexOf("*/", index + 2);
+      return end < 0 ? sql.length() : end + 2;
+    }
+    return index + 1;
+  }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.sql;
+
+import static yamane.tritedb.TriteDbBase.*;
+
+import java.lang.reflect.Array;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+import yamane.tritedb.TriteDbBase.SqlSet;
+import yamane.tritedb.cache.BoundedCache;
+import yamane.tritedb.utils.SqlFileReader;
+
+/**
+ * 条件によって一部を出力する、動的なSQLのテンプレートです.
+ * テンプレートは一度だけ解析して部品の木構造にし、実行時は部品をたどって ? のSQLとパラメータを出力します.
+ * 解析結果はテンプレートごとにキャッシュされます.
+ * <pre>
+ * select * from emp where 1 = 1
+ * /*%if name*&#47; and name = :name /*%end*&#47;
+ * /*%if ids*&#47; and id in (:ids) /*%else*&#47; and retired = false /*%end*&#47;
+ * </pre>
+ * <ul>
+ * <li>/*%if name*&#47; から /*%end*&#47; までは、値がnull、false、空文字、空のコレクション・配列でない場合に出力します.
+ * 値が見つからない場合も出力しません. /*%if !name*&#47; は条件を反転します.</li>
+ * <li>/*%else*&#47; を使用すると、条件を満たさない場合に出力する部分を指定できます. 入れ子にできます.</li>
+ * <li>:name は {@link NamedSql} と同じく ? に置き換えます.
+ * 値がコレクション・配列（byte[]、char[] を除く）の場合は ?, ?, ... に展開します.</li>
+ * <li>展開する ? の数は2のべき乗に切り上げ、余った分は最後の値で埋めます.
+ * 要素数が多少変わっても同じSQLになるため、ステートメントのキャッシュが効きます.
+ * ただし512を超える場合は、IN句の上限（Oracleでは1000）を超えないよう切り上げずに要素数のまま展開します.
+ * 空の場合はnullを1つ渡します.</li>
+ * </ul>
+ */
+public final class SqlTemplate {
+
+  private static final BoundedCache<String, SqlTemplate> CACHE = new BoundedCache<>(1024);
+  private static final int MAX_PADDING = 512;
+
+  private final String template;
+  private final Fragment[] fragments;
+  private final int sqlLength;
+  private final int paramCount;
+
+  private SqlTemplate(String template, Fragment[] fragments, int sqlLength, int paramCount) {
+    this.template = template;
+    this.fragments = fragments;
+    this.sqlLength = sqlLength;
+    this.paramCount = paramCount;
+  }
+
+  /**
+   * テンプレートを解析します. 同じテンプレートの解析結果はキャッシュされたものを返します.
+   * @param template テンプレート
+   * @return 解析結果
+   * @throws SQLException テンプレートの構文が正しくない場合、? のパラメータが含まれている場合
+   */
+  public static SqlTemplate compile(String template) throws SQLException {
+    SqlTemplate compiled = CACHE.get(template);
+    if (compiled == null) {
+      compiled = parse(template);
+      CACHE.put(template, compiled);
+    }
+    return compiled;
+  }
+
+  /**
+   * {@link SqlFileReader} でファイルを読み込み、テンプレートとして解析します.
+   * @param relative 相対パス
+   * @return 解析結果
+   * @throws SQLException ファイルの読み込みに失敗した場合、テンプレートの構文が正しくない場合
+   */
+  public static SqlTemplate load(String relative) throws SQLException {
+    return compile(SqlFileReader.instance().read(relative));
+  }
+
+  private static SqlTemplate parse(String template) throws SQLException {
+    Deque<Condition> stack = new ArrayDeque<>();
+    List<Fragment> current = new ArrayList<>();
+    StringBuilder text = new StringBuilder();
+    int sqlLength = 0;
+    int paramCount = 0;
+    int i = 0;
+    while (i < template.length()) {
+      char c = template.charAt(i);
+      if (template.startsWith("/*%", i)) {
+        int end = template.indexOf("*/", i + 3);
+        if (end < 0) {
+          throw new SQLException(format("template.syntax", template.substring(i), template));
+        }
+        String directive = template.substring(i + 3, end).trim();
+        flush(text, current);
+        if (directive.startsWith("if ") || directive.startsWith("if!")) {
+          String name = directive.substring(2).trim();
+          boolean negate = name.startsWith("!");
+          name = negate ? name.substring(1).trim() : name;
+          if (!isIdentifier(name)) {
+            throw new SQLException(format("template.syntax", directive, template));
+          }
+          Condition condition = new Condition(name, negate, current);
+          stack.push(condition);
+          current = condition.then;
+        } else if (directive.equals("else")) {
+          Condition condition = stack.peek();
+          if (condition == null || current != condition.then) {
+            throw new SQLException(format("template.syntax", directive, template));
+          }
+          current = condition.otherwise;
+        } else if (directive.equals("end")) {
+          Condition condition = stack.poll();
+          if (condition == null) {
+            throw new SQLException(format("template.syntax", directive, template));
+          }
+          current = condition.parent;
+          current.add(condition.build());
+        } else {
+          throw new SQLException(format("template.syntax", directive, template));
+        }
+        i = end + 2;
+        continue;
+      }
+      int next = SqlScanner.skip(template, i);
+      if (next > i + 1) {
+        text.append(template, i, next);
+        sqlLength += next - i;
+        i = next;
+      } else if (c == '?') {
+        throw new SQLException(format("named.positional", template));
+      } else if (c == ':' && i + 1 < template.length() && template.charAt(i + 1) == ':') {
+        text.append("::");
+        sqlLength += 2;
+        i += 2;
+      } else if (c == ':' && i + 1 < template.length() && Character.isJavaIdentifierStart(template.charAt(i + 1))) {
+        int end = i + 1;
+        while (end < template.length() && Character.isJavaIdentifierPart(template.charAt(end))) {
+          end++;
+        }
+        flush(text, current);
+        current.add(new Parameter(template.substring(i + 1, end)));
+        sqlLength++;
+        paramCount++;
+        i = end;
+      } else {
+        text.append(c);
+        sqlLength++;
+        i++;
+      }
+    }
+    if (!stack.isEmpty()) {
+      throw new SQLException(format("template.syntax", "if " + stack.peek().name, template));
+    }
+    flush(text, current);
+    return new SqlTemplate(template, current.toArray(new Fragment[current.size()]), sqlLength, paramCount);
+  }
+
+  private static void flush(StringBuilder text, List<Fragment> current) {
+    if (text.length() > 0) {
+      current.add(new Text(text.toString()));
+      text.setLength(0);
+    }
+  }
+
+  private static boolean isIdentifier(String name) {
+    if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) {
+      return false;
+    }
+    for (int i = 1; i < name.length(); i++) {
+      if (!Character.isJavaIdentifierPart(name.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 値を埋めたSQLセットを生成します.
+   * @param source パラメータの値を取得するクラス
+   * @return SQLセット
+   * @throws SQLException パラメータの値が見つからない場合、値の取得に失敗した場合
+   */
+  public SqlSet render(ParameterSource source) throws SQLException {
+    StringBuilder sql = new StringBuilder(sqlLength + 16);
+    List<Object> params = new ArrayList<>(paramCount + 8);
+    render(fragments, source, sql, params);
+    return new SqlSet(sql.toString(), params.toArray());
+  }
+
+  /**
+   * 値を埋めたSQLセットを生成します.
+   * 値は {@link ParameterSource#from(Object)} で、Map、JavaBean、<code>@Column</code> を設定したクラスから取得します.
+   * @param source パラメータの値を持つオブジェクト
+   * @return SQLセット
+   * @throws SQLException パラメータの値が見つからない場合、値の取得に失敗した場合
+   */
+  public SqlSet render(Object source) throws SQLException {
+    return render(ParameterSource.from(source));
+  }
+
+  private void render(Fragment[] fragments, ParameterSource source, StringBuilder sql, List<Object> params)
+      throws SQLException {
+    for (Fragment fragment : fragments) {
+      if (fragment instanceof Text) {
+        sql.append(((Text) fragment).text);
+      } else if (fragment instanceof Parameter) {
+        String name = ((Parameter) fragment).name;
+        if (!source.contains(name)) {
+          throw new SQLException(format("named.notfound", name, template));
+        }
+        expand(source.get(name), sql, params);
+      } else {
+        Condition condition = (Condition) fragment;
+        boolean test = source.contains(condition.name) && test(source.get(condition.name));
+        render(test != condition.negate ? condition.thenFragments : condition.otherwiseFragments, source, sql, params);
+      }
+    }
+  }
+
+  private static void expand(Object value, StringBuilder sql, List<Object> params) {
+    if (value instanceof Collection) {
+      Collection<?> values = (Collection<?>) value;
+      Object last = null;
+      for (Object v : values) {
+        params.add(v);
+        last = v;
+      }
+      pad(values.size(), last, sql, params);
+    } else if (isExpandable(value)) {
+      int length = Array.getLength(value);
+      for (int i = 0; i < length; i++) {
+        params.add(Array.get(value, i));
+      }
+      pad(length, length == 0 ? null : Array.get(value, length - 1), sql, params);
+    } else {
+      sql.append('?');
+      params.add(value);
+    }
+  }
+
+  private static void pad(int size, Object last, StringBuilder sql, List<Object> params) {
+    int shape = size <= 1 ? 1 : size > MAX_PADDING ? size : Integer.highestOneBit(size - 1) << 1;
+    for (int i = size; i < shape; i++) {
+      params.add(last);
+    }
+    sql.append('?');
+    for (int i = 1; i < shape; i++) {
+      sql.append(", ?");
+    }
+  }
+
+  private static boolean isExpandable(Object value) {
+    return value != null && value.getClass().isArray() && !(value instanceof byte[]) && !(value instanceof char[]);
+  }
+
+  private static boolean test(Object value) {
+    if (value == null) {
+      return false;
+    } else if (value instanceof Boolean) {
+      return (Boolean) value;
+    } else if (value instanceof CharSequence) {
+      return ((CharSequence) value).length() > 0;
+    } else if (value instanceof Collection) {
+      return !((Collection<?>) value).isEmpty();
+    } else if (value.getClass().isArray()) {
+      return Array.getLength(value) > 0;
+    }
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return template;
+  }
+
+  /**
+   * テンプレートの部品です.
+   */
+  private interface Fragment {
+  }
+
+  /**
+   * そのまま出力する文字列です.
+   */
+  private static final class Text implements Fragment {
+    final String text;
+
+    Text(String text) {
+      this.text = text;
+    }
+  }
+
+  /**
+   * ? に置き換えるパラメータです.
+   */
+  private static final class Parameter implements Fragment {
+    final String name;
+
+    Parameter(String name) {
+      this.name = name;
+    }
+  }
+
+  /**
+   * 値によって出力する部品を切り替える条件です.
+   */
+  private static final class Condition implements Fragment {
+    final String name;
+    final boolean negate;
+    final List<Fragment> parent;
+    final List<Fragment> then = new ArrayList<>();
+    final List<Fragment> otherwise = new ArrayList<>();
+    Fragment[] thenFragments;
+    Fragment[] otherwiseFragments;
+
+    Condition(String name, boolean negate, List<Fragment> parent) {
+      this.name = name;
+      this.negate = negate;
+      this.parent = parent;
+    }
+
+    Condition build() {
+      thenFragments = then.toArray(new Fragment[then.size()]);
+      otherwiseFragments = otherwise.toArray(new Fragment[otherwise.size()]);
+      return this;
+    }
+  }
+}
@@ -0,0 +1,10 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+/**
+ * 名前付きパラメータや動的なSQLのテンプレートなど、SQLを組み立てるための機能を提供します.
+ */
+package yamane.tritedb.sql;
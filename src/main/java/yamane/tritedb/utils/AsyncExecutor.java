@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 非同期処理で使用するデフォルトのExecutorを提供します.
+ * 仮想スレッドが利用できる実行環境では仮想スレッドを使用し、利用できない場合はデーモンスレッドのプールを使用します.
+ * JDBCの呼び出しはスレッドをブロックするため、ForkJoinPool.commonPool() は使用しません.
+ */
+public final class AsyncExecutor {
+
+  private AsyncExecutor() {
+  }
+
+  /**
+   * 共有のデフォルトExecutorを取得します.
+   * @return デフォルトのExecutor
+   */
+  public static Executor shared() {
+    return Holder.INSTANCE;
+  }
+
+  /**
+   * 仮想スレッドが利用できる実行環境かどうかを判定します.
+   * @return 仮想スレッドが利用できる場合true
+   */
+  public static boolean isVirtual() {
+    return Holder.VIRTUAL;
+  }
+
+  private static class Holder {
+    static final boolean VIRTUAL;
+    static final ExecutorService INSTANCE;
+
+    static {
+      ExecutorService virtual = virtual();
+      VIRTUAL = virtual != null;
+      INSTANCE = virtual != null ? virtual : platform();
+    }
+
+    private static ExecutorService virtual() {
+      try {
+        Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        return (ExecutorService) factory.invoke(null);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        return null;
+      }
+    }
+
+    private static ExecutorService platform() {
+      AtomicInteger count = new AtomicInteger();
+      return Executors.newCachedThreadPool((r) -> {
+        Thread t = new Thread(r, "TriteDb-async-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.utils;
+
+import java.util.Arrays;
+
+/**
+ * 要素数に応じて拡張されるdoubleの配列です.
+ * List&lt;Double&gt; と違い、値をボクシングせずに保持します.
+ * NULLは {@link #addNull()} で追加し、{@link #isNull(int)} で判定します.
+ */
+public class DoubleArray extends PrimitiveArray {
+
+  private double[] values;
+
+  /**
+   * コンストラクタ.
+   */
+  public DoubleArray() {
+    this(16);
+  }
+
+  /**
+   * 初期容量を指定してインスタンスを生成します.
+   * @param capacity 初期容量
+   */
+  public DoubleArray(int capacity) {
+    this.values = new double[Math.max(capacity, 1)];
+  }
+
+  /**
+   * 値を末尾に追加します.
+   * @param value 追加する値
+   */
+  public void add(double value) {
+    if (size == values.length) {
+      values = Arrays.copyOf(values, grow(size));
+    }
+    values[size++] = value;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void addNull() {
+    markNull();
+    add(0);
+  }
+
+  /**
+   * 指定位置の値を取得します.
+   * NULLの場合は0を返します.
+   * @param index インデックス
+   * @return 値
+   */
+  public double get(int index) {
+    checkIndex(index);
+    return values[index];
+  }
+
+  /**
+   * 格納されている値を、要素数ちょうどの配列として取得します.
+   * NULLの要素は0になります.
+   * @return 値の配列
+   */
+  public double[] toArray() {
+    return Arrays.copyOf(values, size);
+  }
+}
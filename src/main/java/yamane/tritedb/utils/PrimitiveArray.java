@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.utils;
+
+import java.util.BitSet;
+
+/**
+ * 要素数に応じて拡張されるプリミティブ型の配列の基底クラスです.
+ * NULLの位置はビットマップで保持し、NULLの要素には0を格納します.
+ */
+public abstract class PrimitiveArray {
+
+  /** 格納されている要素数 */
+  protected int size;
+
+  private BitSet nulls;
+
+  /**
+   * 格納されている要素数を取得します.
+   * @return 要素数
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * 指定位置の値がNULLかどうかを判定します.
+   * @param index インデックス
+   * @return NULLの場合true
+   */
+  public boolean isNull(int index) {
+    checkIndex(index);
+    return nulls != null && nulls.get(index);
+  }
+
+  /**
+   * NULLの要素を含んでいるかどうかを判定します.
+   * @return NULLの要素を含んでいる場合true
+   */
+  public boolean hasNull() {
+    return nulls != null && !nulls.isEmpty();
+  }
+
+  /**
+   * NULLを末尾に追加します.
+   */
+  public abstract void addNull();
+
+  /**
+   * 末尾に追加する要素の位置をNULLとして記録します.
+   * サブクラスの addNull() から、0を追加する前に呼び出してください.
+   */
+  protected void markNull() {
+    if (nulls == null) {
+      nulls = new BitSet();
+    }
+    nulls.set(size);
+  }
+
+  /**
+   * インデックスが範囲内かどうかを検証します.
+   * @param index インデックス
+   */
+  protected void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+  }
+
+  /**
+   * 配列を拡張する際の新しい容量を取得します.
+   * @param capacity 現在の容量
+   * @return 新しい容量
+   */
+  protected static int grow(int capacity) {
+    return Math.max(capacity * 2, 16);
+  }
+}
@@ -8,28 +8,87 @@ package yamane.tritedb.utils;
 
 import static yamane.tritedb.TriteDbBase.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 /*
  * Copyright (c) Yamamoto Yamane
  * Released under the MIT license
  * https://opensource.org/license/mit
  */
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import yamane.utils.TextFileReader;
 
 /**
  * 相対パスからテキストファイルの中身を取得する機能を持つクラスです.
  * 使用する前にルートとなるパスを指定して初期化する必要があります.
+ * 読み込んだ内容は {@link CacheMode} に従ってメモリ上にキャッシュできます.
+ * 起動時に {@link #preload(Path)}、{@link #preload(ClassLoader, String)} でSQLファイルをまとめて読み込んでおくと、
+ * 以降はファイルを読まずにメモリ上のカタログから返します.
+ * {@link CacheMode#WATCH} の場合、ディレクトリから読み込んだカタログのファイルも監視し、変更されたファイルはカタログから外して読み込み直します.
+ * 複数スレッドから同時に読み込むことができます.
  */
 public class SqlFileReader {
 
+  /**
+   * 読み込んだ内容のキャッシュ方法です.
+   */
+  public enum CacheMode {
+    /** キャッシュせず、毎回ファイルから読み込みます. */
+    NONE,
+    /** 一度読み込んだ内容を保持し続けます. ファイルが変更されない本番環境向けです. */
+    FIXED,
+    /** 一度読み込んだ内容を保持し、ファイルが変更された時点で破棄します. 開発環境向けです. */
+    WATCH
+  }
+
+  private static final Logger LOGGER = Logger.getLogger(SqlFileReader.class.getName());
   private static SqlFileReader INSTANCE = new SqlFileReader();
   private TextFileReader reader = new TextFileReader();
+  private final ConcurrentMap<Key, String> cache = new ConcurrentHashMap<>();
+  private final AtomicLong invalidations = new AtomicLong();
+  private volatile CacheMode cacheMode = CacheMode.NONE;
+  private volatile Path rootPath = FileSystems.getDefault().getPath("");
+  private volatile Map<String, String> catalog = Collections.emptyMap();
+  private volatile boolean catalogInRoot;
+  private Watcher watcher;
 
   /**
    * インスタンスを取得します.
@@ -56,10 +115,163 @@ public class SqlFileReader {
 
   /**
    * ファイルを読み込む際のルートとなるディレクトリを指定して初期化します.
+   * キャッシュされている内容と、事前に読み込んだカタログは破棄されます.
    * @param rootPath ファイルを読み込む際のルートとなるディレクトリ
    */
   public static void init(Path rootPath) {
     INSTANCE.reader.init(rootPath);
+    INSTANCE.rootPath = rootPath;
+    INSTANCE.catalog = Collections.emptyMap();
+    INSTANCE.catalogInRoot = false;
+    INSTANCE.clearCache();
+  }
+
+  /**
+   * 指定されたディレクトリをルートとして初期化し、配下の .sql ファイルをすべて並列に読み込んでカタログに保持します.
+   * @param rootPath ファイルを読み込む際のルートとなるディレクトリ
+   * @return 読み込んだファイル数
+   * @throws SQLException ファイルの読み込みに失敗した場合
+   */
+  public static int preload(Path rootPath) throws SQLException {
+    init(rootPath);
+    Map<String, Source> sources = new LinkedHashMap<>();
+    try {
+      collect(rootPath, sources);
+    } catch (IOException e) {
+      throw new SQLException(format("fileread.io", rootPath.toAbsolutePath()), e);
+    }
+    INSTANCE.catalogInRoot = true;
+    INSTANCE.watchCatalog(sources.keySet());
+    INSTANCE.catalog = load(sources);
+    return INSTANCE.catalog.size();
+  }
+
+  /**
+   * クラスパス上の指定されたディレクトリ配下にある .sql ファイルをすべて並列に読み込んでカタログに保持します.
+   * jarファイル内のSQLも読み込めます. 同じ名前のファイルが複数ある場合はクラスパスの先にあるものを使用します.
+   * カタログの名前は prefix からの相対パスです. ルートとなるディレクトリは変更しません.
+   * @param loader 検索に使用するクラスローダ
+   * @param prefix クラスパス上のディレクトリ（例: "sql"）
+   * @return 読み込んだファイル数
+   * @throws SQLException ファイルの読み込みに失敗した場合
+   */
+  public static int preload(ClassLoader loader, String prefix) throws SQLException {
+    String dir = prefix.replaceAll("^/+|/+$", "");
+    Map<String, Source> sources = new LinkedHashMap<>();
+    List<JarFile> jars = new ArrayList<>();
+    try {
+      Enumeration<URL> urls = loader.getResources(dir);
+      while (urls.hasMoreElements()) {
+        URL url = urls.nextElement();
+        try {
+          URLConnection conn = url.openConnection();
+          if (conn instanceof JarURLConnection) {
+            conn.setUseCaches(false);
+            JarFile jar = ((JarURLConnection) conn).getJarFile();
+            jars.add(jar);
+            collect(jar, ((JarURLConnection) conn).getEntryName(), sources);
+          } else if ("file".equals(url.getProtocol())) {
+            collect(Paths.get(url.toURI()), sources);
+          } else {
+            throw new SQLException(format("fileread.io", url));
+          }
+        } catch (IOException | URISyntaxException e) {
+          throw new SQLException(format("fileread.io", url), e);
+        }
+      }
+      INSTANCE.catalog = load(sources);
+      INSTANCE.catalogInRoot = false;
+      INSTANCE.clearCache();
+      return INSTANCE.catalog.size();
+    } catch (IOException e) {
+      throw new SQLException(format("fileread.io", dir), e);
+    } finally {
+      for (JarFile jar : jars) {
+        try {
+          jar.close();
+        } catch (IOException e) {
+          // 読み込みは完了しているため無視する
+        }
+      }
+    }
+  }
+
+  /**
+   * 指定されたファイルがすべてカタログに読み込まれていることを確認します.
+   * 起動時に呼び出すことで、ファイルの不足を最初の検索時ではなく起動時に検出できます.
+   * @param names 相対パス
+   * @throws SQLException カタログに存在しないファイルがある場合
+   */
+  public static void require(String... names) throws SQLException {
+    Map<String, String> current = INSTANCE.catalog;
+    List<String> missing = new ArrayList<>();
+    for (String name : names) {
+      if (!current.containsKey(normalize(name))) {
+        missing.add(name);
+      }
+    }
+    if (!missing.isEmpty()) {
+      throw new SQLException(format("fileread.notfound", String.join(", ", missing)));
+    }
+  }
+
+  /**
+   * 事前に読み込んだカタログに含まれるファイルの相対パスを取得します.
+   * @return 相対パスのセット
+   */
+  public Set<String> getPreloadedNames() {
+    return catalog.keySet();
+  }
+
+  /**
+   * ファイルを読み込む際のルートとなるディレクトリと、キャッシュ方法を指定して初期化します.
+   * @param rootPath ファイルを読み込む際のルートとなるディレクトリ
+   * @param cacheMode キャッシュ方法
+   * @throws SQLException ファイルの変更を監視できない場合
+   */
+  public static void init(Path rootPath, CacheMode cacheMode) throws SQLException {
+    init(rootPath);
+    INSTANCE.setCacheMode(cacheMode);
+  }
+
+  /**
+   * キャッシュ方法を設定します. キャッシュされている内容は破棄されます.
+   * @param cacheMode キャッシュ方法（デフォルトは {@link CacheMode#NONE}）
+   * @throws SQLException ファイルの変更を監視できない場合
+   */
+  public synchronized void setCacheMode(CacheMode cacheMode) throws SQLException {
+    if (watcher != null) {
+      watcher.close();
+      watcher = null;
+    }
+    if (cacheMode == CacheMode.WATCH) {
+      try {
+        watcher = new Watcher(rootPath.getFileSystem().newWatchService());
+      } catch (IOException e) {
+        throw new SQLException(format("fileread.watch", rootPath.toAbsolutePath()), e);
+      }
+      if (catalogInRoot) {
+        watchCatalog(catalog.keySet());
+      }
+    }
+    this.cacheMode = cacheMode;
+    clearCache();
+  }
+
+  /**
+   * キャッシュ方法を取得します.
+   * @return キャッシュ方法
+   */
+  public CacheMode getCacheMode() {
+    return cacheMode;
+  }
+
+  /**
+   * キャッシュされている内容をすべて破棄します.
+   */
+  public void clearCache() {
+    invalidations.incrementAndGet();
+    cache.clear();
   }
 
   /**
@@ -69,25 +281,248 @@ public class SqlFileReader {
    * @throws SQLException ファイルの読み込みに失敗した場合
    */
   public String read(String relative) throws SQLException {
-    try {
-      return reader.read(relative);
-    } catch (IOException e) {
-      throw new SQLException(format("fileread.io", reader.getAbsolutePath(relative)), e);
-    }
+    return read(relative, null);
   }
 
   /**
    * 相対パスを指定してテキストファイルの内容を読み込みます.
    * @param relative 相対パス
-   * @param decoder テキストファイルの文字コード
+   * @param decoder テキストファイルの文字コード. nullの場合はUTF-8
    * @return 指定されたテキストファイルの中身
    * @throws SQLException ファイルの読み込みに失敗した場合
    */
   public String read(String relative, CharsetDecoder decoder) throws SQLException {
+    Map<String, String> current = catalog;
+    if (!current.isEmpty() && (decoder == null || StandardCharsets.UTF_8.equals(decoder.charset()))) {
+      String text = current.get(normalize(relative));
+      if (text != null) {
+        return text;
+      }
+    }
+    CacheMode mode = cacheMode;
+    if (mode == CacheMode.NONE) {
+      return load(relative, decoder);
+    }
+    Key key = new Key(normalize(relative), decoder == null ? null : decoder.charset().name());
+    String text = cache.get(key);
+    if (text != null) {
+      return text;
+    }
+    long version = invalidations.get();
+    if (mode == CacheMode.WATCH) {
+      watch(reader.getAbsolutePath(relative).getParent());
+    }
+    text = load(relative, decoder);
+    if (invalidations.get() == version) {
+      cache.putIfAbsent(key, text);
+    }
+    return text;
+  }
+
+  private String load(String relative, CharsetDecoder decoder) throws SQLException {
     try {
-      return reader.read(relative, decoder);
+      return decoder == null ? reader.read(relative) : reader.read(relative, decoder);
     } catch (IOException e) {
       throw new SQLException(format("fileread.io", reader.getAbsolutePath(relative)), e);
     }
   }
+
+  private static void collect(Path dir, Map<String, Source> sources) throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        if (file.toString().endsWith(".sql") && Files.isRegularFile(file)) {
+          sources.putIfAbsent(normalize(dir.relativize(file).toString()), () -> Files.readAllBytes(file));
+        }
+      }
+    }
+  }
+
+  private static void collect(JarFile jar, String dir, Map<String, Source> sources) {
+    String prefix = dir == null || dir.isEmpty() ? "" : dir.endsWith("/") ? dir : dir + "/";
+    Enumeration<JarEntry> entries = jar.entries();
+    while (entries.hasMoreElements()) {
+      JarEntry entry = entries.nextElement();
+      String name = entry.getName();
+      if (!entry.isDirectory() && name.startsWith(prefix) && name.endsWith(".sql")) {
+        sources.putIfAbsent(normalize(name.substring(prefix.length())), () -> {
+          try (InputStream in = jar.getInputStream(entry)) {
+            return readAll(in);
+          }
+        });
+      }
+    }
+  }
+
+  private static Map<String, String> load(Map<String, Source> sources) throws SQLException {
+    Map<String, CompletableFuture<String>> futures = new LinkedHashMap<>();
+    for (Map.Entry<String, Source> e : sources.entrySet()) {
+      futures.put(e.getKey(),
+          CompletableFuture.supplyAsync(() -> decode(e.getKey(), e.getValue()), AsyncExecutor.shared()));
+    }
+    Map<String, String> loaded = new HashMap<>();
+    try {
+      for (Map.Entry<String, CompletableFuture<String>> e : futures.entrySet()) {
+        loaded.put(e.getKey(), e.getValue().join());
+      }
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw new SQLException(e.getCause().getMessage(), e.getCause().getCause());
+      }
+      throw e;
+    }
+    return Collections.unmodifiableMap(loaded);
+  }
+
+  private static String decode(String name, Source source) {
+    try {
+      return StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(source.read())).toString();
+    } catch (IOException e) {
+      throw new UncheckedIOException(format("fileread.io", name), e);
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[8192];
+    int n;
+    while ((n = in.read(buf)) != -1) {
+      out.write(buf, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * カタログに読み込むファイルの内容を取得する処理です.
+   */
+  @FunctionalInterface
+  private interface Source {
+    byte[] read() throws IOException;
+  }
+
+  private synchronized void watch(Path dir) throws SQLException {
+    if (watcher != null) {
+      try {
+        watcher.register(dir);
+      } catch (IOException e) {
+        throw new SQLException(format("fileread.watch", dir.toAbsolutePath()), e);
+      }
+    }
+  }
+
+  private synchronized void watchCatalog(Set<String> names) throws SQLException {
+    if (watcher != null) {
+      Set<Path> dirs = new HashSet<>();
+      for (String name : names) {
+        dirs.add(reader.getAbsolutePath(name).getParent());
+      }
+      for (Path dir : dirs) {
+        watch(dir);
+      }
+    }
+  }
+
+  private void invalidate(Path absolute) {
+    invalidations.incrementAndGet();
+    String name = normalize(rootPath.toAbsolutePath().normalize().relativize(absolute.toAbsolutePath().normalize())
+        .toString());
+    cache.keySet().removeIf((k) -> k.name.equals(name));
+    synchronized (this) {
+      Map<String, String> current = catalog;
+      if (catalogInRoot && current.containsKey(name)) {
+        Map<String, String> copy = new HashMap<>(current);
+        copy.remove(name);
+        catalog = Collections.unmodifiableMap(copy);
+      }
+    }
+  }
+
+  private static String normalize(String relative) {
+    return Paths.get(relative).normalize().toString().replace('\\', '/');
+  }
+
+  /**
+   * キャッシュのキーです. 同じファイルでも文字コードが異なる場合は別に保持します.
+   */
+  private static final class Key {
+    final String name;
+    final String charset;
+
+    Key(String name, String charset) {
+      this.name = name;
+      this.charset = charset;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return name.equals(other.name) && (charset == null ? other.charset == null : charset.equals(other.charset));
+    }
+
+    @Override
+    public int hashCode() {
+      return name.hashCode() * 31 + (charset == null ? 0 : charset.hashCode());
+    }
+  }
+
+  /**
+   * 読み込んだファイルのディレクトリを監視し、変更されたファイルのキャッシュを破棄するスレッドです.
+   */
+  private final class Watcher implements Runnable {
+    private final WatchService service;
+    private final Set<Path> dirs = ConcurrentHashMap.newKeySet();
+
+    Watcher(WatchService service) {
+      this.service = service;
+      Thread thread = new Thread(this, "tritedb-sql-watcher");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    void register(Path dir) throws IOException {
+      Path absolute = dir.toAbsolutePath().normalize();
+      if (dirs.add(absolute)) {
+        absolute.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          WatchKey key = service.take();
+          Path dir = (Path) key.watchable();
+          for (WatchEvent<?> event : key.pollEvents()) {
+            try {
+              if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                clearCache();
+              } else {
+                invalidate(dir.resolve((Path) event.context()));
+              }
+            } catch (RuntimeException e) {
+              // 変更されたファイルを特定できないため、古い内容を返さないようにすべて破棄して監視を続ける
+              LOGGER.log(Level.WARNING, format("fileread.watchevent", dir.resolve(String.valueOf(event.context()))), e);
+              clearCache();
+            }
+          }
+          if (!key.reset()) {
+            dirs.remove(dir);
+          }
+        }
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        // 監視を終了する
+      }
+    }
+
+    void close() {
+      try {
+        service.close();
+      } catch (IOException e) {
+        // 監視の終了に失敗しても読み込みには影響しない
+      }
+    }
+  }
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.utils;
+
+import java.sql.SQLException;
+
+/**
+ * SQLExceptionを非チェック例外として送出するためのラッパーです.
+ * Iterator や Stream のように、SQLExceptionを宣言できない箇所で使用しています.
+ */
+public class UncheckedSQLException extends RuntimeException {
+
+  static final long serialVersionUID = 1L;
+
+  /**
+   * コンストラクタ.
+   * @param cause 原因となったSQLException
+   */
+  public UncheckedSQLException(SQLException cause) {
+    super(cause.getMessage(), cause);
+  }
+
+  /**
+   * 原因となったSQLExceptionを取得します.
+   * @return 原因となったSQLException
+   */
+  @Override
+  public synchronized SQLException getCause() {
+    return (SQLException) super.getCause();
+  }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一定サイズのByteBufferを連結して、2GBを超えるデータを扱えるようにしたバッファです.
+ * ByteBufferはヒープ外に確保するか、一時ファイルにメモリマップして確保します.
+ * <ul>
+ * <li>位置はlongで指定し、読み書きは位置を指定する絶対指定のメソッドで行います.</li>
+ * <li>容量は {@link #ensure(long)} で必要な分だけ拡張します. 最後のセグメントは小さく確保して倍々に拡張し、
+ * セグメントのサイズに達してから次のセグメントを追加するため、小さなデータで大きなメモリを確保しません.</li>
+ * <li>読み出しは複数スレッドから同時に行えますが、書き込みは1スレッドから行ってください.</li>
+ * </ul>
+ * 使用後は {@link #close()} でメモリを解放し、一時ファイルを削除してください.
+ */
+public class SegmentedBuffer implements Closeable {
+
+  private static final Cleaner CLEANER = new Cleaner();
+
+  /** 最後のセグメントを最初に確保するサイズ */
+  private static final int INITIAL_SIZE = 64 * 1024;
+
+  private final int segmentSize;
+  private final Path file;
+  private final FileChannel channel;
+  private final List<ByteBuffer> segments = new ArrayList<>();
+  private volatile boolean closed;
+
+  /**
+   * ヒープ外にメモリを確保するバッファを生成します.
+   * @param segmentSize 1つのByteBufferのサイズ
+   */
+  public SegmentedBuffer(int segmentSize) {
+    this.segmentSize = segmentSize;
+    this.file = null;
+    this.channel = null;
+  }
+
+  /**
+   * 指定されたディレクトリの一時ファイルにメモリマップするバッファを生成します.
+   * 一時ファイルは {@link #close()} で削除されます.
+   * @param segmentSize 1つのByteBufferのサイズ
+   * @param directory 一時ファイルを作成するディレクトリ
+   * @throws IOException 一時ファイルを作成できない場合
+   */
+  public SegmentedBuffer(int segmentSize, Path directory) throws IOException {
+    this.segmentSize = segmentSize;
+    this.file = Files.createTempFile(directory, "tritedb", ".buf");
+    this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * 1つのByteBufferのサイズを取得します.
+   * @return 1つのByteBufferのサイズ
+   */
+  public int getSegmentSize() {
+    return segmentSize;
+  }
+
+  /**
+   * 確保済みの容量を取得します.
+   * @return 容量
+   */
+  public long capacity() {
+    int count = segments.size();
+    return count == 0 ? 0 : (long) (count - 1) * segmentSize + segments.get(count - 1).capacity();
+  }
+
+  /**
+   * 指定された容量まで使用できるように、必要に応じて最後のセグメントを拡張するか、セグメントを追加します.
+   * @param capacity 必要な容量
+   * @throws IOException メモリマップに失敗した場合
+   */
+  public void ensure(long capacity) throws IOException {
+    checkOpen();
+    while (capacity() < capacity) {
+      int last = segments.size() - 1;
+      if (last >= 0 && segments.get(last).capacity() < segmentSize) {
+        ByteBuffer old = segments.get(last);
+        segments.set(last, allocate(last, grow(old.capacity(), capacity - (long) last * segmentSize), old));
+      } else {
+        int index = segments.size();
+        segments.add(allocate(index, grow(0, capacity - (long) index * segmentSize), null));
+      }
+    }
+  }
+
+  private int grow(int current, long required) {
+    long size = Math.max(INITIAL_SIZE, current * 2L);
+    while (size < required && size < segmentSize) {
+      size *= 2;
+    }
+    return (int) Math.min(size, segmentSize);
+  }
+
+  private ByteBuffer allocate(int index, int size, ByteBuffer old) throws IOException {
+    ByteBuffer buf;
+    if (channel != null) {
+      // ファイルの同じ位置を大きくマップし直すため、内容のコピーは不要
+      buf = channel.map(MapMode.READ_WRITE, (long) index * segmentSize, size);
+    } else {
+      buf = ByteBuffer.allocateDirect(size);
+      if (old != null) {
+        ByteBuffer src = old.duplicate();
+        src.clear();
+        buf.put(src);
+        buf.clear();
+      }
+    }
+    if (old != null) {
+      CLEANER.clean(old);
+    }
+    return buf;
+  }
+
+  /**
+   * 指定位置にlongを書き込みます.
+   * @param pos 位置
+   * @param value 値
+   */
+  public void putLong(long pos, long value) {
+    int offset = offset(pos);
+    if (offset + 8 <= segmentSize) {
+      segment(pos).putLong(offset, value);
+    } else {
+      for (int i = 7; i >= 0; i--) {
+        putByte(pos++, (byte) (value >>> (i * 8)));
+      }
+    }
+  }
+
+  /**
+   * 指定位置のlongを読み出します.
+   * @param pos 位置
+   * @return 値
+   */
+  public long getLong(long pos) {
+    int offset = offset(pos);
+    if (offset + 8 <= segmentSize) {
+      return segment(pos).getLong(offset);
+    }
+    long value = 0;
+    for (int i = 0; i < 8; i++) {
+      value = (value << 8) | (getByte(pos++) & 0xff);
+    }
+    return value;
+  }
+
+  /**
+   * 指定位置にintを書き込みます.
+   * @param pos 位置
+   * @param value 値
+   */
+  public void putInt(long pos, int value) {
+    int offset = offset(pos);
+    if (offset + 4 <= segmentSize) {
+      segment(pos).putInt(offset, value);
+    } else {
+      for (int i = 3; i >= 0; i--) {
+        putByte(pos++, (byte) (value >>> (i * 8)));
+      }
+    }
+  }
+
+  /**
+   * 指定位置のintを読み出します.
+   * @param pos 位置
+   * @return 値
+   */
+  public int getInt(long pos) {
+    int offset = offset(pos);
+    if (offset + 4 <= segmentSize) {
+      return segment(pos).getInt(offset);
+    }
+    int value = 0;
+    for (int i = 0; i < 4; i++) {
+      value = (value << 8) | (getByte(pos++) & 0xff);
+    }
+    return value;
+  }
+
+  /**
+   * 指定位置に1バイト書き込みます.
+   * @param pos 位置
+   * @param value 値
+   */
+  public void putByte(long pos, byte value) {
+    segment(pos).put(offset(pos), value);
+  }
+
+  /**
+   * 指定位置の1バイトを読み出します.
+   * @param pos 位置
+   * @return 値
+   */
+  public byte getByte(long pos) {
+    return segment(pos).get(offset(pos));
+  }
+
+  /**
+   * 指定位置にバイト列を書き込みます. セグメントの境界をまたいでも構いません.
+   * @param pos 位置
+   * @param src 書き込むバイト列
+   */
+  public void put(long pos, byte[] src) {
+    int done = 0;
+    while (done < src.length) {
+      ByteBuffer buf = segment(pos).duplicate();
+      int offset = offset(pos);
+      int len = Math.min(src.length - done, segmentSize - offset);
+      buf.position(offset);
+      buf.put(src, done, len);
+      done += len;
+      pos += len;
+    }
+  }
+
+  /**
+   * 指定位置からバイト列を読み出します. セグメントの境界をまたいでも構いません.
+   * @param pos 位置
+   * @param dst 読み出し先
+   */
+  public void get(long pos, byte[] dst) {
+    int done = 0;
+    while (done < dst.length) {
+      ByteBuffer buf = segment(pos).duplicate();
+      int offset = offset(pos);
+      int len = Math.min(dst.length - done, segmentSize - offset);
+      buf.position(offset);
+      buf.get(dst, done, len);
+      done += len;
+      pos += len;
+    }
+  }
+
+  /**
+   * 確保したメモリを解放し、一時ファイルを削除します.
+   * 解放後のバッファは使用できません.
+   * @throws IOException 一時ファイルの削除に失敗した場合
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (ByteBuffer segment : segments) {
+      CLEANER.clean(segment);
+    }
+    segments.clear();
+    if (channel != null) {
+      try {
+        channel.close();
+      } finally {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  /**
+   * バッファが解放済みかどうかを判定します.
+   * @return 解放済みの場合true
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  private ByteBuffer segment(long pos) {
+    checkOpen();
+    return segments.get((int) (pos / segmentSize));
+  }
+
+  private int offset(long pos) {
+    return (int) (pos % segmentSize);
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("closed");
+    }
+  }
+
+  /**
+   * ヒープ外のByteBufferを、GCを待たずに解放します.
+   * Java 9以降は sun.misc.Unsafe#invokeCleaner、Java 8 は DirectByteBuffer#cleaner を使用します.
+   * どちらも使用できない場合は何もせず、GCによる解放に任せます.
+   */
+  private static final class Cleaner {
+    private Object unsafe;
+    private Method invokeCleaner;
+
+    Cleaner() {
+      try {
+        Class<?> clazz = Class.forName("sun.misc.Unsafe");
+        invokeCleaner = clazz.getMethod("invokeCleaner", ByteBuffer.class);
+        Field field = clazz.getDeclaredField("theUnsafe");
+        field.setAccessible(true);
+        unsafe = field.get(null);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        invokeCleaner = null;
+      }
+    }
+
+    void clean(ByteBuffer buffer) {
+      if (!buffer.isDirect()) {
+        return;
+      }
+      try {
+        if (invokeCleaner != null) {
+          invokeCleaner.invoke(unsafe, buffer);
+        } else {
+          Method cleaner = buffer.getClass().getMethod("cleaner");
+          cleaner.setAccessible(true);
+          Object c = cleaner.invoke(buffer);
+          if (c != null) {
+            c.getClass().getMethod("clean").invoke(c);
+          }
+        }
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        // 解放できない場合はGCに任せる
+      }
+    }
+  }
+}
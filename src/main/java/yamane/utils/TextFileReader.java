@@ -6,25 +6,25 @@
 
 package yamane.utils;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
 /**
  * 相対パスからテキストファイルの中身を取得する機能を持つクラスです.
  * 使用する前にルートとなるパスを指定して初期化する必要があります.
+ * 複数スレッドから同時に読み込むことができます.
  */
 public class TextFileReader {
 
-  private CharsetDecoder defaultDecoder = Charset.forName("UTF-8").newDecoder();
-  private Path rootPath;
+  private final Charset defaultCharset = StandardCharsets.UTF_8;
+  private volatile Path rootPath;
 
   /**
    * コンストラクタ.
@@ -64,7 +64,7 @@ public class TextFileReader {
    * @throws IOException ファイルの読み込みに失敗した場合
    */
   public String read(String relative) throws IOException {
-    return read(relative, defaultDecoder);
+    return read(relative, defaultCharset.newDecoder());
   }
   
   /**
@@ -78,6 +78,7 @@ public class TextFileReader {
 
   /**
    * 相対パスを指定してテキストファイルの内容を読み込みます.
+   * 同じdecoderを複数スレッドで共有している場合、デコードは1スレッドずつ行われます.
    * @param relative 相対パス
    * @param decoder テキストファイルの文字コード
    * @return 指定されたテキストファイルの中身
@@ -88,12 +89,9 @@ public class TextFileReader {
   }
 
   private String read(Path absolute, CharsetDecoder decoder) throws IOException {
-    File file = absolute.toFile();
-    if (file.exists()) {
-      try (FileInputStream stream = new FileInputStream(file); FileChannel channel = stream.getChannel();) {
-        ByteBuffer buf = ByteBuffer.allocateDirect((int) channel.size());
-        channel.read(buf);
-        buf.flip();
+    if (Files.exists(absolute)) {
+      ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(absolute));
+      synchronized (decoder) {
         return decoder.decode(buf).toString();
       }
     }
@@ -10,12 +10,22 @@ package yamane.tritedb;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import yamane.tritedb.TriteDb.QuerySet;
+import yamane.tritedb.TriteDbBase.SqlSet;
+import yamane.tritedb.utils.DoubleArray;
+import yamane.tritedb.utils.IntArray;
+import yamane.tritedb.utils.LongArray;
+
 @DisplayName("H2を使って一通りのアクセス")
 public class TriteDbH2Test extends AbstractTest {
 
@@ -59,6 +69,10 @@ public class TriteDbH2Test extends AbstractTest {
       TestDto d = list.get(i - 1);
       assertEquals(d.toString(), String.format("id:%d name1:h%d name2:test%d", i, i, i));
     }
+    // 逐次検索して
+    try (Stream<TestDto> stream = db.selectStream(mapper, sql("tritedb", "select_list"))) {
+      assertEquals(3, stream.count());
+    }
     // 1行更新して
     assertEquals(1, db.update(sql("tritedb", "update"), "h4", "test4", 1));
     // 1行取得する
@@ -68,4 +82,180 @@ public class TriteDbH2Test extends AbstractTest {
     // テーブル削除
     assertEquals(0, db.update(sql("tritedb", "drop")));
   }
+
+  @Test
+  public void batch() throws SQLException {
+    TriteDbImpl impl = new TriteDbImpl(ds);
+    impl.setBatchSize(2);
+    assertEquals(0, impl.update(sql("tritedb", "create")));
+    // バッチで3行追加して自動採番値を受け取る
+    List<Object[]> rows = Arrays.asList(new Object[] { "h1", "test1" }, new Object[] { "h2", "test2" },
+        new Object[] { "h3", "test3" });
+    assertArrayEquals(new long[] { 1L, 2L, 3L }, impl.insertBatchAndKeys(sql("tritedb", "insert"), rows));
+    // 1行ずつ実行する場合も同じ結果になる
+    impl.setBatchKeys(false);
+    assertArrayEquals(new long[] { 4L, 5L, 6L }, impl.insertBatchAndKeys(sql("tritedb", "insert"), rows));
+    // バッチで更新する
+    List<Object[]> updates = Arrays.asList(new Object[] { "u1", "x", 1 }, new Object[] { "u2", "x", 2 },
+        new Object[] { "u9", "x", 99 });
+    assertArrayEquals(new int[] { 1, 1, 0 }, impl.updateBatch(sql("tritedb", "update"), updates));
+    assertEquals("u2", impl.select(mapper, sql("tritedb", "select_single"), 2).name1);
+
+    assertEquals(0, impl.update(sql("tritedb", "drop")));
+  }
+
+  @Test
+  public void bulk() throws SQLException {
+    TriteDbImpl impl = new TriteDbImpl(ds);
+    impl.setStatementCacheSize(4);
+    impl.setBulkParameterLimit(10);
+    impl.update(sql("tritedb", "create"));
+    List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 23; i++) {
+      rows.add(new Object[] { "n" + i, i % 2 == 0 ? null : "m" + i });
+    }
+    // 5行ずつ複数行の VALUES 句で挿入し、端数の3行は2行と1行に分けて挿入する
+    assertEquals(23, impl.insertBulk(sql("tritedb", "insert"), rows));
+    List<TestDto> list = impl.selectList(mapper, sql("tritedb", "select_list"));
+    assertEquals(23, list.size());
+    assertEquals("id:23 name1:n22 name2:null", list.get(22).toString());
+    assertEquals("id:2 name1:n1 name2:m1", list.get(1).toString());
+    // 同じ行数のSQLは PreparedStatement が再利用される
+    impl.getStatementCacheStats().reset();
+    impl.inSession((s) -> s.insertBulk(sql("tritedb", "insert"), rows));
+    assertEquals(3, impl.getStatementCacheStats().getHitCount());
+    // 5行、2行、1行の3種類のSQLだけが使われる
+    assertEquals(3, impl.getStatementCacheStats().getMissCount());
+    // 書き換えられないSQLはバッチ実行する
+    assertEquals(2, impl.insertBulk("insert into tritedb(name1, name2) select name1, ? from tritedb where id = ?",
+        Arrays.asList(new Object[] { "x", 1 }, new Object[] { "y", 2 })));
+    assertEquals(Long.valueOf(48), impl.select(Mapper.create((r) -> r.getLong(1)), "select count(*) from tritedb"));
+    // パラメータ数が合わない行はエラー
+    assertThrows(SQLException.class, () -> impl.insertBulk(sql("tritedb", "insert"),
+        Arrays.asList(new Object[] { "a", "b" }, new Object[] { "c" })));
+
+    impl.update(sql("tritedb", "drop"));
+  }
+
+  @Test
+  public void multiRowInsert() {
+    MultiRowInsert shape = MultiRowInsert.parse("INSERT INTO t(a, b) VALUES (?, f(?, 'x?')) on conflict do nothing");
+    assertTrue(shape.isRewritable());
+    assertEquals(2, shape.getParameterCount());
+    assertEquals("INSERT INTO t(a, b) VALUES (?, f(?, 'x?')), (?, f(?, 'x?')) on conflict do nothing", shape.sql(2));
+    assertSame(shape.sql(3), shape.sql(3));
+    assertFalse(MultiRowInsert.parse("insert into t(a) select ? from dual").isRewritable());
+    assertFalse(MultiRowInsert.parse("insert into t(a) values (?), (?)").isRewritable());
+    assertFalse(MultiRowInsert.parse("insert into t(a) values (?) on duplicate key update a = ?").isRewritable());
+    assertFalse(MultiRowInsert.parse("update t set a = ?").isRewritable());
+  }
+
+  @Test
+  public void session() throws SQLException {
+    db.update(sql("tritedb", "create"));
+    // セッション内では同じコネクションを使う
+    int count = db.inSession((s) -> {
+      s.updateAndKey(sql("tritedb", "insert"), "h1", "test1");
+      s.updateAndKey(sql("tritedb", "insert"), "h2", "test2");
+      return s.selectList(mapper, sql("tritedb", "select_list")).size();
+    });
+    assertEquals(2, count);
+    // 例外が発生した場合はロールバックされる
+    assertThrows(SQLException.class, () -> db.inTransaction((s) -> {
+      s.updateAndKey(sql("tritedb", "insert"), "h3", "test3");
+      throw new SQLException("hoge");
+    }));
+    assertEquals(2, db.selectList(mapper, sql("tritedb", "select_list")).size());
+    // 正常に終了した場合はコミットされる
+    db.inTransaction((s) -> s.update(sql("tritedb", "update"), "h9", "test9", 1));
+    assertEquals("h9", db.select(mapper, sql("tritedb", "select_single"), 1).name1);
+
+    db.update(sql("tritedb", "drop"));
+  }
+
+  @Test
+  public void selectAll() throws SQLException {
+    db.update(sql("tritedb", "create"));
+    db.updateAndKey(sql("tritedb", "insert"), "h1", "test1");
+    db.updateAndKey(sql("tritedb", "insert"), "h2", "test2");
+    // 引数の順番どおりに結果が返される
+    List<List<?>> results = db.selectAll(2, Arrays.asList(
+        new QuerySet<>(mapper, sql("tritedb", "select_list")),
+        new QuerySet<>(mapper, sql("tritedb", "select_single"), 2),
+        new QuerySet<>(Mapper.create((r) -> r.getLong(1)), "select count(*) from tritedb")));
+    assertEquals(3, results.size());
+    assertEquals(2, results.get(0).size());
+    assertEquals("h2", ((TestDto) results.get(1).get(0)).name1);
+    assertEquals(2L, results.get(2).get(0));
+    // 失敗したSQLがあれば例外になる
+    SQLException e = assertThrows(SQLException.class, () -> db.selectAll(Arrays.asList(
+        new QuerySet<>(mapper, sql("tritedb", "select_list")),
+        new QuerySet<>(mapper, "select * from nothing1"),
+        new QuerySet<>(mapper, "select * from nothing2"))));
+    assertTrue(e.getMessage().contains("nothing1"));
+    assertTrue(e.getNextException().getNextException().getMessage().contains("nothing2"));
+
+    db.update(sql("tritedb", "drop"));
+  }
+
+  @Test
+  public void pipelined() throws SQLException {
+    TriteDbImpl impl = new TriteDbImpl(ds);
+    impl.setPipelineWorkers(3);
+    impl.setPipelineBatchSize(7);
+    impl.update(sql("tritedb", "create"));
+    List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      rows.add(new Object[] { "n" + i, i % 3 == 0 ? null : "m" + i });
+    }
+    impl.updateBatch(sql("tritedb", "insert"), rows);
+
+    // 順序を保つ場合は selectList と同じ結果になる
+    List<TestDto> expected = impl.selectList(mapper, sql("tritedb", "select_list"));
+    List<TestDto> actual = impl.selectListPipelined(mapper, sql("tritedb", "select_list"));
+    assertEquals(expected.toString(), actual.toString());
+    // 順序を保たない場合も件数と内容は同じ
+    List<TestDto> unordered = impl.selectListPipelined(mapper, false, sql("tritedb", "select_list"));
+    assertEquals(100, unordered.size());
+    assertEquals(expected.stream().map(TestDto::toString).sorted().collect(Collectors.toList()),
+        unordered.stream().map(TestDto::toString).sorted().collect(Collectors.toList()));
+    // 変換中の例外は呼び出し元に通知される
+    Mapper<TestDto> failing = Mapper.create((r) -> {
+      if (r.getInt("id") == 50) {
+        throw new SQLException("map error");
+      }
+      return null;
+    });
+    SQLException e = assertThrows(SQLException.class,
+        () -> impl.selectListPipelined(failing, sql("tritedb", "select_list")));
+    assertTrue(e.getMessage().contains("map error"));
+    // 呼び出し元のスレッドで実行するExecutorでも完了する
+    impl.setExecutor(Runnable::run);
+    assertEquals(expected.toString(), impl.selectListPipelined(mapper, sql("tritedb", "select_list")).toString());
+
+    impl.update(sql("tritedb", "drop"));
+  }
+
+  @Test
+  public void primitives() throws SQLException {
+    db.update(sql("tritedb", "create"));
+    db.updateAndKey(sql("tritedb", "insert"), "1", "test1");
+    db.updateAndKey(sql("tritedb", "insert"), null, "test2");
+    db.updateAndKey(sql("tritedb", "insert"), "3.5", "test3");
+
+    LongArray ids = db.selectLongs("select id from tritedb order by id");
+    assertArrayEquals(new long[] { 1L, 2L, 3L }, ids.toArray());
+    assertFalse(ids.hasNull());
+    IntArray ints = db.selectInts("select cast(name1 as decimal(5,1)) from tritedb where id < ? order by id", 3);
+    assertEquals(2, ints.size());
+    assertEquals(1, ints.get(0));
+    assertTrue(ints.isNull(1));
+    assertEquals(0, ints.get(1));
+    DoubleArray doubles = db.selectDoubles(new SqlSet("select cast(name1 as double) from tritedb order by id"));
+    assertArrayEquals(new double[] { 1.0, 0.0, 3.5 }, doubles.toArray());
+    assertTrue(doubles.hasNull());
+    assertFalse(doubles.isNull(2));
+
+    db.update(sql("tritedb", "drop"));
+  }
 }
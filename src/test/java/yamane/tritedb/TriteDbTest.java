@@ -10,14 +10,22 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.ParameterMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 import javax.sql.DataSource;
 
@@ -30,6 +38,8 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
+import yamane.tritedb.TriteDbBase.SqlSet;
+
 @DisplayName("JDBC API の呼び出し、クローズなど")
 @ExtendWith(MockitoExtension.class)
 @MockitoSettings(strictness = Strictness.LENIENT)
@@ -190,6 +200,158 @@ public class TriteDbTest {
     verify(conn, never()).close();
   }
 
+  @Test
+  @DisplayName("逐次検索(Connectionなし)")
+  public void stream1() throws Exception {
+    when(results.next()).thenReturn(true, true, false);
+    try (Stream<Integer> stream = db.selectStream(Mapper.create((r) -> 1), sql("select_list"))) {
+      assertEquals(2, stream.count());
+    }
+    verify(results, times(3)).next();
+    verify(results, times(1)).close();
+    verify(stmt, times(1)).close();
+    verify(conn, times(1)).close();
+  }
+
+  @Test
+  @DisplayName("逐次検索(途中でクローズ)")
+  public void stream2() throws Exception {
+    when(results.next()).thenReturn(true);
+    try (ResultIterator<Integer> it = db.selectIterator(Mapper.create((r) -> 1), sql("select_list"), 1, 2)) {
+      assertEquals(1, it.next());
+      assertEquals(1, it.next());
+    }
+    verify(results, times(2)).next();
+    verify(results, times(1)).close();
+    verify(prepStmt, times(1)).close();
+    verify(conn, times(1)).close();
+  }
+
+  @Test
+  @DisplayName("逐次検索(コールバック)")
+  public void forEach1() throws Exception {
+    when(results.next()).thenReturn(true, true, true, false);
+    List<Integer> list = new ArrayList<>();
+    new TriteDbImpl().forEach(conn, Mapper.create((r) -> 1), list::add, sql("select_list"), 1, 2);
+    assertEquals(3, list.size());
+    verify(results, times(1)).close();
+    verify(prepStmt, times(1)).close();
+    verify(conn, never()).close();
+  }
+
+  @Test
+  @DisplayName("バッチ更新(Connectionなし)")
+  public void batch1() throws Exception {
+    when(prepStmt.executeBatch()).thenReturn(new int[] { 1, 1 }, new int[] { 1 });
+    TriteDbImpl impl = new TriteDbImpl(ds);
+    impl.setBatchSize(2);
+    int[] result = impl.updateBatch(sql("update"),
+        Arrays.asList(new Object[] { 1, 2 }, new Object[] { 3, 4 }, new Object[] { 5, 6 }));
+    assertArrayEquals(new int[] { 1, 1, 1 }, result);
+    verify(conn, times(1)).prepareStatement(any(String.class), anyInt());
+    verify(prepStmt, times(3)).addBatch();
+    verify(prepStmt, times(2)).executeBatch();
+    verify(prepStmt, times(1)).close();
+    verify(conn, times(1)).close();
+  }
+
+  @Test
+  @DisplayName("バッチ更新(SQLセット)")
+  public void batch2() throws Exception {
+    when(prepStmt.executeBatch()).thenReturn(new int[] { 1, 1 }, new int[] { 1 });
+    int[] result = new TriteDbImpl().updateBatch(conn, Arrays.asList(new SqlSet("a", 1, 2), new SqlSet("a", 3, 4),
+        new SqlSet("b", 5, 6)));
+    assertArrayEquals(new int[] { 1, 1, 1 }, result);
+    verify(conn, times(2)).prepareStatement(any(String.class), anyInt());
+    verify(prepStmt, times(2)).executeBatch();
+    verify(prepStmt, times(2)).close();
+    verify(conn, never()).close();
+  }
+
+  @Test
+  @DisplayName("バッチ更新の失敗")
+  public void batchFailure() throws Exception {
+    when(prepStmt.executeBatch()).thenReturn(new int[] { 1, 1 })
+        .thenThrow(new BatchUpdateException("error", new int[] { 1, Statement.EXECUTE_FAILED }));
+    TriteDbImpl impl = new TriteDbImpl();
+    impl.setBatchSize(2);
+    BatchUpdateException e = assertThrows(BatchUpdateException.class, () -> impl.updateBatch(conn,
+        Arrays.asList(new SqlSet("a", 1, 2), new SqlSet("a", 3, 4), new SqlSet("a", 5, 6), new SqlSet("a", 7, 8))));
+    assertArrayEquals(new int[] { 1, 1, 1, Statement.EXECUTE_FAILED }, e.getUpdateCounts());
+    assertTrue(e.getMessage().contains("SQL : a"));
+    assertEquals("error", e.getNextException().getMessage());
+    verify(prepStmt, times(1)).close();
+  }
+
+  @Test
+  @DisplayName("PreparedStatementのキャッシュ")
+  public void statementCache() throws Exception {
+    TriteDbImpl impl = new TriteDbImpl(ds);
+    impl.setStatementCacheSize(10);
+    assertEquals(1, impl.update(conn, sql("update"), "hoge", "moge"));
+    assertEquals(1, impl.update(conn, sql("update"), "hoge", "moge"));
+    verify(conn, times(1)).prepareStatement(any(String.class), anyInt());
+    verify(prepStmt, times(2)).clearParameters();
+    verify(prepStmt, never()).close();
+    assertEquals(1, impl.getStatementCacheStats().getHitCount());
+    assertEquals(1, impl.getStatementCacheStats().getMissCount());
+    // コネクションのクローズ時にキャッシュもクローズされる
+    impl.close(conn);
+    verify(prepStmt, times(1)).close();
+    verify(conn, times(1)).close();
+    // 他の方法でクローズされたコネクションのキャッシュは、別のコネクションのキャッシュ作成時にクローズされる
+    Connection other = mock(Connection.class);
+    when(other.prepareStatement(any(String.class), anyInt())).thenReturn(prepStmt);
+    impl.update(conn, sql("update"), "hoge", "moge");
+    when(conn.isClosed()).thenReturn(true);
+    impl.update(other, sql("update"), "hoge", "moge");
+    verify(prepStmt, times(2)).close();
+  }
+
+  @Test
+  @DisplayName("オプションを指定して実行")
+  public void options() throws Exception {
+    when(conn.prepareStatement(any(String.class), anyInt(), anyInt())).thenReturn(prepStmt);
+    when(results.next()).thenReturn(true, false);
+    TriteDbImpl impl = new TriteDbImpl(ds);
+    impl.setFetchSize(100);
+    TriteDb scroll = impl.withOptions(QueryOptions.DEFAULT.withMaxRows(10).withQueryTimeout(5)
+        .withResultSetType(ResultSet.TYPE_SCROLL_INSENSITIVE));
+    scroll.selectList(conn, Mapper.create((r) -> 1), sql("select_list"), 1, 2);
+    verify(conn, times(1)).prepareStatement(sql("select_list"), ResultSet.TYPE_SCROLL_INSENSITIVE,
+        ResultSet.CONCUR_READ_ONLY);
+    verify(prepStmt, times(1)).setFetchSize(100);
+    verify(prepStmt, times(1)).setMaxRows(10);
+    verify(prepStmt, times(1)).setQueryTimeout(5);
+    // 元のインスタンスの設定は変わらない
+    impl.update(conn, sql("update"), "hoge", "moge");
+    verify(conn, times(1)).prepareStatement(any(String.class), anyInt());
+    verify(prepStmt, times(2)).setFetchSize(100);
+    verify(prepStmt, times(1)).setMaxRows(anyInt());
+  }
+
+  @Test
+  @DisplayName("非同期検索")
+  public void async1() throws Exception {
+    when(results.next()).thenReturn(true, true, false);
+    List<Integer> i = db.selectListAsync(Mapper.create((r) -> 1), sql("select_list"), 1, 2).get();
+    assertEquals(2, i.size());
+    verify(prepStmt, times(1)).close();
+    verify(conn, times(1)).close();
+  }
+
+  @Test
+  @DisplayName("非同期更新(開始前にキャンセル)")
+  public void async2() throws Exception {
+    List<Runnable> tasks = new ArrayList<>();
+    db.setExecutor(tasks::add);
+    CompletableFuture<Integer> future = db.updateAsync(sql("update"), "hoge", "moge");
+    future.cancel(false);
+    tasks.forEach(Runnable::run);
+    assertTrue(future.isCancelled());
+    verify(ds, never()).getConnection();
+  }
+
   @Test
   @DisplayName("ParameterMetaDataが取得できない場合")
   public void list3() throws Exception {
@@ -204,6 +366,95 @@ public class TriteDbTest {
     verify(conn, never()).close();
   }
 
+  @Test
+  @DisplayName("パラメータの型はSQLごとにキャッシュする")
+  public void parameterTypes() throws Exception {
+    when(meta.getParameterType(1)).thenReturn(Types.VARCHAR);
+    when(meta.getParameterType(2)).thenThrow(new SQLException("hoge"));
+    TriteDbImpl impl = new TriteDbImpl(ds);
+    impl.update(sql("update"), "hoge", null);
+    impl.update(sql("update"), null, null);
+    verify(prepStmt, times(1)).getParameterMetaData();
+    verify(prepStmt, times(1)).setNull(1, Types.VARCHAR);
+    verify(prepStmt, times(2)).setNull(2, Types.NULL);
+    // パラメータ数が一致しない場合はエラー
+    assertThrows(SQLException.class, () -> impl.update(sql("update"), "hoge"));
+    // メタデータを使用しない場合
+    impl.setParameterMetaData(false);
+    impl.update(sql("update"), (Object) null);
+    verify(prepStmt, times(1)).getParameterMetaData();
+    verify(prepStmt, times(1)).setNull(1, Types.NULL);
+  }
+
+  @Test
+  @DisplayName("DataSourceごとの機能の一覧")
+  public void capabilities() throws Exception {
+    DatabaseMetaData dbMeta = mock(DatabaseMetaData.class);
+    when(dbMeta.getDatabaseProductName()).thenReturn("Oracle");
+    when(dbMeta.supportsGetGeneratedKeys()).thenReturn(true);
+    when(dbMeta.supportsBatchUpdates()).thenReturn(true);
+    when(conn.getMetaData()).thenReturn(dbMeta);
+    when(prepStmt.getParameterMetaData()).thenThrow(new SQLFeatureNotSupportedException());
+    TriteDbImpl impl = new TriteDbImpl(ds);
+    impl.update(sql("update"), "hoge", null);
+    Capabilities caps = impl.getCapabilities(conn);
+    assertEquals("Oracle", caps.getProductName());
+    assertTrue(caps.supportsGeneratedKeys());
+    assertFalse(caps.supportsBatchKeys());
+    assertFalse(caps.supportsMultiRowValues());
+    assertFalse(caps.supportsParameterMetaData());
+    // 同じDataSourceを使う別のインスタンスでも、メタデータの取得を試みない
+    new TriteDbImpl(ds).update(sql("update"), "hoge", null);
+    assertSame(caps, new TriteDbImpl(ds).getCapabilities(conn));
+    verify(prepStmt, times(1)).getParameterMetaData();
+    verify(conn, times(1)).getMetaData();
+    // 複数行の VALUES 句をサポートしない場合はバッチ実行する
+    when(prepStmt.executeBatch()).thenReturn(new int[] { 1, 1 });
+    impl.insertBulk("insert into t values (?, ?)", Arrays.asList(new Object[] { 1, 2 }, new Object[] { 3, 4 }));
+    verify(conn, never()).prepareStatement(contains("), ("), anyInt());
+    verify(prepStmt, times(2)).addBatch();
+  }
+
+  @Test
+  @DisplayName("メタデータの取得に失敗しても機能の一覧を作成してキャッシュする")
+  public void capabilitiesFailure() throws Exception {
+    DatabaseMetaData dbMeta = mock(DatabaseMetaData.class);
+    when(dbMeta.getDatabaseProductName()).thenThrow(new SQLException("hoge"));
+    when(dbMeta.supportsBatchUpdates()).thenThrow(new SQLException("hoge"));
+    when(dbMeta.supportsGetGeneratedKeys()).thenReturn(true);
+    when(conn.getMetaData()).thenReturn(dbMeta);
+    TriteDbImpl impl = new TriteDbImpl(ds);
+    assertEquals(1, impl.update(sql("update"), "hoge", "moge"));
+    Capabilities caps = impl.getCapabilities(conn);
+    assertEquals("", caps.getProductName());
+    assertTrue(caps.supportsGeneratedKeys());
+    assertFalse(caps.supportsBatchKeys());
+    assertSame(caps, new TriteDbImpl(ds).getCapabilities(conn));
+    verify(conn, times(1)).getMetaData();
+
+    when(conn.getMetaData()).thenThrow(new SQLException("hoge"));
+    assertTrue(Capabilities.probe(conn).supportsBatchKeys());
+  }
+
+  @Test
+  @DisplayName("明示的に設定されたfetchSizeは逐次読み出しできないDBにも渡す")
+  public void explicitFetchSize() throws Exception {
+    DatabaseMetaData dbMeta = mock(DatabaseMetaData.class);
+    when(dbMeta.getDatabaseProductName()).thenReturn("MySQL");
+    when(conn.getMetaData()).thenReturn(dbMeta);
+    TriteDbImpl impl = new TriteDbImpl(ds);
+    impl.setStatementCacheSize(10);
+    assertFalse(impl.getCapabilities(conn).supportsFetchSizeStreaming());
+    impl.update(conn, sql("update"), "hoge", "moge");
+    verify(prepStmt, never()).setFetchSize(anyInt());
+    impl.withOptions(QueryOptions.DEFAULT.withFetchSize(Integer.MIN_VALUE)).update(conn, sql("update"), "hoge", "moge");
+    verify(prepStmt, times(1)).setFetchSize(Integer.MIN_VALUE);
+    // キャッシュしたStatementに残った fetchSize は、次の検索でデフォルトに戻す
+    when(prepStmt.getFetchSize()).thenReturn(Integer.MIN_VALUE);
+    impl.update(conn, sql("update"), "hoge", "moge");
+    verify(prepStmt, times(1)).setFetchSize(0);
+  }
+
   @Test
   @DisplayName("検索系SQLが失敗した場合")
   public void sqlFail1() throws Exception {
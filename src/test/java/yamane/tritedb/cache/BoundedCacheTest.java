@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("件数に上限のあるキャッシュ")
+public class BoundedCacheTest {
+
+  @Test
+  @DisplayName("上限を超えると参照されていないものから破棄する")
+  public void evict() {
+    BoundedCache<Integer, String> cache = new BoundedCache<>(4);
+    for (int i = 0; i < 4; i++) {
+      cache.put(i, "v" + i);
+    }
+    // 最初に保持したものを参照しておくと残る
+    assertEquals("v0", cache.get(0));
+    cache.put(4, "v4");
+    assertEquals(3, cache.size());
+    assertEquals("v0", cache.get(0));
+    assertEquals("v4", cache.get(4));
+    assertNull(cache.get(1));
+    assertNull(cache.get(2));
+
+    assertEquals("v5", cache.computeIfAbsent(5, (k) -> "v" + k));
+    assertEquals("v5", cache.computeIfAbsent(5, (k) -> "x"));
+    cache.remove(5);
+    assertNull(cache.get(5));
+    cache.clear();
+    assertEquals(0, cache.size());
+  }
+}
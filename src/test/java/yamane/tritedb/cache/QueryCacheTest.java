@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import yamane.tritedb.AbstractTest;
+import yamane.tritedb.Mapper;
+import yamane.tritedb.QueryOptions;
+
+@DisplayName("検索結果キャッシュ")
+public class QueryCacheTest extends AbstractTest {
+
+  Mapper<String> mapper = Mapper.create((r) -> r.getString("name1"));
+
+  @BeforeEach
+  public void before() throws SQLException {
+    init();
+    db.update(sql("tritedb", "create"));
+    db.updateAndKey(sql("tritedb", "insert"), "h1", "test1");
+    db.updateAndKey(sql("tritedb", "insert"), "h2", "test2");
+  }
+
+  @AfterEach
+  public void after() throws SQLException {
+    db.update(sql("tritedb", "drop"));
+  }
+
+  @Test
+  @DisplayName("SQLからテーブル名を解析する")
+  public void tables() throws SQLException {
+    QueryCache cache = new QueryCache(10, 0, TimeUnit.SECONDS);
+    assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")),
+        cache.tables("select * from s.A x, \"B\" as y inner join c on x.id=c.id where 1=1"));
+    assertEquals(new HashSet<>(Arrays.asList("tritedb")), cache.tables(sql("tritedb", "update")));
+    assertEquals(new HashSet<>(Arrays.asList("tritedb")), cache.tables(sql("tritedb", "insert")));
+    assertTrue(cache.tables("select 1").isEmpty());
+    cache.tag("call proc()", "T1");
+    assertEquals(new HashSet<>(Arrays.asList("t1")), cache.tables("call proc()"));
+  }
+
+  @Test
+  @DisplayName("更新したテーブルを参照している検索結果が破棄される")
+  public void invalidate() throws SQLException {
+    CachedTriteDbImpl cached = new CachedTriteDbImpl(ds, new QueryCache(10, 0, TimeUnit.SECONDS));
+    List<String> first = cached.selectList(mapper, sql("tritedb", "select_list"));
+    assertSame(first, cached.selectList(mapper, sql("tritedb", "select_list")));
+    assertEquals("h1", cached.select(mapper, sql("tritedb", "select_single"), 1));
+    assertEquals("h1", cached.select(mapper, sql("tritedb", "select_single"), 1));
+    assertNull(cached.select(mapper, sql("tritedb", "select_single"), 9));
+    assertNull(cached.select(mapper, sql("tritedb", "select_single"), 9));
+    CacheStats stats = cached.getCache().getStats();
+    assertEquals(3, stats.getHitCount());
+    assertEquals(3, stats.getMissCount());
+    assertEquals(0.5, stats.getHitRatio());
+
+    cached.update(sql("tritedb", "update"), "h9", "test9", 1);
+    assertEquals(0, cached.getCache().size());
+    assertEquals("h9", cached.select(mapper, sql("tritedb", "select_single"), 1));
+    assertEquals(Arrays.asList("h9", "h2"), cached.selectList(mapper, sql("tritedb", "select_list")));
+
+    cached.insertBatchAndKeys(sql("tritedb", "insert"), Arrays.asList(new Object[][] { { "h3", "test3" } }));
+    assertEquals(3, cached.selectList(mapper, sql("tritedb", "select_list")).size());
+  }
+
+  @Test
+  @DisplayName("上限を超えると最も古い検索結果から破棄される")
+  public void lru() throws SQLException {
+    CachedTriteDbImpl cached = new CachedTriteDbImpl(ds, new QueryCache(2, 0, TimeUnit.SECONDS));
+    cached.select(mapper, sql("tritedb", "select_single"), 1);
+    cached.select(mapper, sql("tritedb", "select_single"), 2);
+    cached.select(mapper, sql("tritedb", "select_single"), 1);
+    cached.select(mapper, sql("tritedb", "select_single"), 3);
+    assertEquals(2, cached.getCache().size());
+    assertEquals(1, cached.getCache().getStats().getEvictionCount());
+    // 直前に参照したid=1は残り、id=2が破棄されている
+    cached.select(mapper, sql("tritedb", "select_single"), 1);
+    assertEquals(2, cached.getCache().getStats().getHitCount());
+    cached.select(mapper, sql("tritedb", "select_single"), 2);
+    assertEquals(2, cached.getCache().getStats().getHitCount());
+  }
+
+  @Test
+  @DisplayName("有効期間を過ぎた検索結果は破棄される")
+  public void ttl() throws Exception {
+    CachedTriteDbImpl cached = new CachedTriteDbImpl(ds, new QueryCache(10, 20, TimeUnit.MILLISECONDS));
+    cached.select(mapper, sql("tritedb", "select_single"), 1);
+    Thread.sleep(50);
+    cached.select(mapper, sql("tritedb", "select_single"), 1);
+    assertEquals(0, cached.getCache().getStats().getHitCount());
+    assertEquals(1, cached.getCache().getStats().getEvictionCount());
+  }
+
+  @Test
+  @DisplayName("検索中に破棄された検索結果はキャッシュしない")
+  public void generation() throws SQLException {
+    QueryCache cache = new QueryCache(10, 0, TimeUnit.SECONDS);
+    String select = sql("tritedb", "select_single");
+    long generation = cache.generation(select);
+    cache.invalidate(sql("tritedb", "update"));
+    cache.put(mapper, false, QueryOptions.DEFAULT, select, new Object[] { 1 }, "h1", generation);
+    assertEquals(0, cache.size());
+    cache.put(mapper, false, QueryOptions.DEFAULT, select, new Object[] { 1 }, "h1", cache.generation(select));
+    assertEquals(1, cache.size());
+    cache.invalidateAll();
+    assertNotEquals(generation, cache.generation(select));
+  }
+
+  @Test
+  @DisplayName("トランザクション中にキャッシュされた更新前の検索結果はコミット後に破棄される")
+  public void transaction() throws SQLException {
+    CachedTriteDbImpl cached = new CachedTriteDbImpl(ds, new QueryCache(10, 0, TimeUnit.SECONDS));
+    cached.inTransaction((session) -> {
+      session.update(sql("tritedb", "update"), "h9", "test9", 1);
+      // 別のコネクションからはコミット前のデータが見えてキャッシュされる
+      assertEquals("h1", cached.select(mapper, sql("tritedb", "select_single"), 1));
+      // トランザクション内の検索はキャッシュを参照せず、自身の更新が見える
+      assertEquals("h9", session.select(mapper, sql("tritedb", "select_single"), 1));
+      return null;
+    });
+    assertEquals("h9", cached.select(mapper, sql("tritedb", "select_single"), 1));
+  }
+
+  @Test
+  @DisplayName("オプションが異なる検索結果は別にキャッシュされる")
+  public void options() throws SQLException {
+    CachedTriteDbImpl cached = new CachedTriteDbImpl(ds, new QueryCache(10, 0, TimeUnit.SECONDS));
+    assertEquals(1, cached.withOptions(QueryOptions.DEFAULT.withMaxRows(1))
+        .selectList(mapper, sql("tritedb", "select_list")).size());
+    assertEquals(2, cached.selectList(mapper, sql("tritedb", "select_list")).size());
+    assertEquals(1, cached.withOptions(QueryOptions.DEFAULT.withMaxRows(1))
+        .selectList(mapper, sql("tritedb", "select_list")).size());
+    assertEquals(1, cached.getCache().getStats().getHitCount());
+  }
+}
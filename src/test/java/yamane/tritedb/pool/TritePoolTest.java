@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.pool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+
+import org.h2.jdbc.JdbcConnection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import yamane.tritedb.AbstractTest;
+import yamane.tritedb.Mapper;
+import yamane.tritedb.TriteDb;
+import yamane.tritedb.TriteDbImpl;
+
+@DisplayName("コネクションプール")
+public class TritePoolTest extends AbstractTest {
+
+  TritePool pool;
+
+  @BeforeEach
+  public void before() {
+    init();
+    pool = new TritePool(ds, 2);
+  }
+
+  @AfterEach
+  public void after() {
+    pool.close();
+  }
+
+  @Test
+  @DisplayName("返却したコネクションが再利用される")
+  public void reuse() throws SQLException {
+    Connection first = pool.getConnection();
+    assertSame(first, first.unwrap(Connection.class));
+    Connection physical = first.unwrap(JdbcConnection.class);
+    first.close();
+    assertTrue(first.isClosed());
+    assertThrows(SQLException.class, () -> first.createStatement());
+
+    Connection second = pool.getConnection();
+    assertSame(physical, second.unwrap(JdbcConnection.class));
+    assertFalse(second.isClosed());
+    second.close();
+    assertEquals(1, pool.getStats().getCreatedCount());
+    assertEquals(2, pool.getStats().getBorrowCount());
+    assertEquals(1, pool.getIdleCount());
+    assertEquals(0, pool.getActiveCount());
+  }
+
+  @Test
+  @DisplayName("最大数を超えると待ち時間の上限でエラーになる")
+  public void timeout() throws SQLException {
+    pool.setMaxWait(50);
+    Connection c1 = pool.getConnection();
+    Connection c2 = pool.getConnection();
+    assertEquals(2, pool.getActiveCount());
+    assertThrows(SQLException.class, () -> pool.getConnection());
+    assertEquals(1, pool.getStats().getTimeoutCount());
+    c1.close();
+    pool.getConnection().close();
+    c2.close();
+  }
+
+  @Test
+  @DisplayName("無効なコネクションは貸し出し時に破棄される")
+  public void validate() throws SQLException {
+    pool.setValidationInterval(0);
+    Connection c = pool.getConnection();
+    Connection physical = c.unwrap(JdbcConnection.class);
+    c.close();
+    assertEquals(1, pool.getIdleCount());
+    // プール内で物理コネクションが切断された
+    physical.close();
+
+    Connection next = pool.getConnection();
+    assertNotSame(physical, next.unwrap(JdbcConnection.class));
+    next.close();
+    assertEquals(2, pool.getStats().getCreatedCount());
+    assertEquals(1, pool.getStats().getDestroyedCount());
+  }
+
+  @Test
+  @DisplayName("未使用時間が上限を超えたコネクションは破棄される")
+  public void evict() throws Exception {
+    pool.setIdleTimeout(10);
+    pool.getConnection().close();
+    assertEquals(1, pool.getIdleCount());
+    long limit = System.currentTimeMillis() + 5000;
+    while (pool.getIdleCount() > 0 && System.currentTimeMillis() < limit) {
+      Thread.sleep(50);
+    }
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  @DisplayName("TriteDbから利用する")
+  public void triteDb() throws SQLException {
+    TriteDb pooled = new TriteDbImpl(pool);
+    pooled.update(sql("tritedb", "create"));
+    pooled.updateAndKey(sql("tritedb", "insert"), "h1", "test1");
+    pooled.updateAndKey(sql("tritedb", "insert"), "h2", "test2");
+    List<String> names = pooled.selectList(Mapper.create((r) -> r.getString("name1")), sql("tritedb", "select_list"));
+    assertEquals(2, names.size());
+    pooled.update(sql("tritedb", "drop"));
+    assertEquals(1, pool.getStats().getCreatedCount());
+    assertEquals(5, pool.getStats().getBorrowCount());
+    assertEquals(0, pool.getActiveCount());
+  }
+
+  @Test
+  @DisplayName("返却時にStatementがクローズされ、変更された状態が戻される")
+  public void reset() throws SQLException {
+    Connection c = pool.getConnection();
+    int isolation = c.getTransactionIsolation();
+    PreparedStatement ps = c.prepareStatement("select 1");
+    Statement st = c.createStatement();
+    assertSame(c, ps.getConnection());
+    assertSame(c, st.getConnection());
+    assertSame(c, c.getMetaData().getConnection());
+    assertSame(ps, ps.unwrap(PreparedStatement.class));
+    ResultSet rs = ps.executeQuery();
+    assertSame(ps, rs.getStatement());
+    assertSame(c, rs.getStatement().getConnection());
+    ResultSet tables = c.getMetaData().getTables(null, null, "%", null);
+    assertNull(tables.getStatement());
+    c.setReadOnly(true);
+    c.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+    st.close();
+    c.close();
+    assertTrue(ps.isClosed());
+    assertThrows(SQLException.class, () -> ps.executeQuery());
+
+    Connection next = pool.getConnection();
+    assertFalse(next.isReadOnly());
+    assertEquals(isolation, next.getTransactionIsolation());
+    next.close();
+    assertEquals(1, pool.getStats().getCreatedCount());
+    assertTrue(rs.isClosed());
+    assertThrows(SQLException.class, () -> rs.next());
+  }
+
+  @Test
+  @DisplayName("戻せない状態が変更されたコネクションは返却時に破棄される")
+  public void destroy() throws SQLException {
+    Connection c = pool.getConnection();
+    c.setHoldability(ResultSet.CLOSE_CURSORS_AT_COMMIT);
+    c.close();
+    c = pool.getConnection();
+    c.setTypeMap(new HashMap<>());
+    c.close();
+    assertEquals(1, pool.getStats().getCreatedCount());
+    assertEquals(1, pool.getStats().getDestroyedCount());
+  }
+}
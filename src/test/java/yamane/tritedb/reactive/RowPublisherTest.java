@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.reactive;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import yamane.tritedb.AbstractTest;
+import yamane.tritedb.Mapper;
+import yamane.tritedb.TriteDbImpl;
+import yamane.tritedb.pool.TritePool;
+
+@DisplayName("Publisherによる検索結果の配信")
+public class RowPublisherTest extends AbstractTest {
+
+  TritePool pool;
+  List<Runnable> tasks = new ArrayList<>();
+
+  class TestSubscriber implements Flow.Subscriber<String> {
+    Flow.Subscription subscription;
+    List<String> items = new ArrayList<>();
+    Throwable error;
+    boolean completed;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(String item) {
+      items.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+
+  @BeforeEach
+  public void before() throws SQLException {
+    init();
+    pool = new TritePool(ds, 2);
+    db = new TriteDbImpl(pool);
+    // 配信処理をテストスレッドで順に実行する
+    db.setExecutor(tasks::add);
+    db.update(sql("tritedb", "create"));
+    for (int i = 1; i <= 5; i++) {
+      db.updateAndKey(sql("tritedb", "insert"), "h" + i, "test" + i);
+    }
+  }
+
+  @AfterEach
+  public void after() throws SQLException {
+    db.update(sql("tritedb", "drop"));
+    pool.close();
+  }
+
+  void run() {
+    while (!tasks.isEmpty()) {
+      tasks.remove(0).run();
+    }
+  }
+
+  @Test
+  @DisplayName("要求された行数だけ配信される")
+  public void request() throws SQLException {
+    TestSubscriber s = new TestSubscriber();
+    db.publish(Mapper.create((r) -> r.getString("name1")), sql("tritedb", "select_list")).subscribe(s);
+    run();
+    assertEquals(0, pool.getActiveCount());
+
+    s.subscription.request(2);
+    run();
+    assertEquals(2, s.items.size());
+    assertEquals(1, pool.getActiveCount());
+
+    s.subscription.request(10);
+    run();
+    assertEquals(5, s.items.size());
+    assertTrue(s.completed);
+    assertEquals(0, pool.getActiveCount());
+  }
+
+  @Test
+  @DisplayName("キャンセルするとコネクションが返却される")
+  public void cancel() throws SQLException {
+    TestSubscriber s = new TestSubscriber();
+    db.publish(Mapper.create((r) -> r.getString("name1")), sql("tritedb", "select_list")).subscribe(s);
+    s.subscription.request(1);
+    run();
+    assertEquals(1, s.items.size());
+    assertEquals(1, pool.getActiveCount());
+
+    s.subscription.cancel();
+    s.subscription.request(1);
+    run();
+    assertEquals(1, s.items.size());
+    assertFalse(s.completed);
+    assertEquals(0, pool.getActiveCount());
+  }
+
+  @Test
+  @DisplayName("SQLのエラーが通知される")
+  public void error() {
+    TestSubscriber s = new TestSubscriber();
+    db.publish(Mapper.create((r) -> r.getString(1)), "select * from nothing").subscribe(s);
+    s.subscription.request(1);
+    run();
+    assertTrue(s.error instanceof SQLException);
+    assertEquals(0, pool.getActiveCount());
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.result;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import yamane.tritedb.AbstractTest;
+
+@DisplayName("列指向の検索結果")
+public class ColumnarResultTest extends AbstractTest {
+
+  @BeforeEach
+  public void before() throws SQLException {
+    init();
+    db.update("create table columnar(id bigint, num int, rate double, flag boolean, name varchar(20),"
+        + " price decimal(10,2))");
+    db.update("insert into columnar values(1, 10, 1.5, true, 'a', 1.25)");
+    db.update("insert into columnar values(2, null, 2.5, false, 'b', null)");
+    db.update("insert into columnar values(3, 30, null, null, 'a', 3.75)");
+    db.update("insert into columnar values(4, 40, 4.5, true, null, 4.00)");
+  }
+
+  @AfterEach
+  public void after() throws SQLException {
+    db.update("drop table columnar");
+  }
+
+  @Test
+  @DisplayName("列の型ごとに保持する")
+  public void read() throws SQLException {
+    ColumnarResult result = db.selectColumnar("select * from columnar where id > ? order by id", 0);
+    assertEquals(4, result.getRowCount());
+    assertEquals(6, result.getColumnCount());
+    assertEquals(ColumnKind.LONG, result.getKind(1));
+    assertEquals(ColumnKind.INT, result.getKind(2));
+    assertEquals(ColumnKind.DOUBLE, result.getKind(3));
+    assertEquals(ColumnKind.BOOLEAN, result.getKind(4));
+    assertEquals(ColumnKind.STRING, result.getKind(5));
+    assertEquals(ColumnKind.OBJECT, result.getKind(6));
+
+    assertArrayEquals(new long[] { 1, 2, 3, 4 }, result.getLongs(result.findColumn("ID")).toArray());
+    assertEquals(30, result.getInt(2, 2));
+    assertTrue(result.isNull(1, 2));
+    assertEquals(30.0, result.getDouble(2, 2));
+    assertTrue(result.isNull(2, 3));
+    assertEquals(4.5, result.getDoubles(3).get(3));
+    assertTrue(result.getBoolean(0, 4));
+    assertFalse(result.getBoolean(1, 4));
+    assertNull(result.getObject(2, 4));
+    assertEquals("a", result.getString(2, 5));
+    assertNull(result.getString(3, 5));
+    assertEquals(Arrays.asList("a", "b"), result.getDictionary(5));
+    assertEquals(0, result.getCodes(5).get(2));
+    assertEquals(new BigDecimal("3.75"), result.getObject(2, 6));
+    assertEquals("1", result.getString(0, 1));
+
+    assertThrows(IllegalStateException.class, () -> result.getInt(0, 5));
+    assertThrows(IndexOutOfBoundsException.class, () -> result.getLong(4, 1));
+  }
+}
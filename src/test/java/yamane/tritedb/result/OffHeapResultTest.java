@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.result;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import yamane.tritedb.AbstractTest;
+import yamane.tritedb.TriteDbImpl;
+import yamane.tritedb.result.OffHeapResult.Cursor;
+import yamane.utils.SegmentedBuffer;
+
+@DisplayName("ヒープ外の検索結果")
+public class OffHeapResultTest extends AbstractTest {
+
+  @TempDir
+  Path dir;
+
+  TriteDbImpl impl;
+
+  @BeforeEach
+  public void before() throws SQLException {
+    init();
+    impl = new TriteDbImpl(ds);
+    // セグメントの境界をまたぐように小さくする
+    impl.setOffHeapSegmentSize(100);
+    impl.update("create table offheap(id bigint, num int, rate double, flag boolean, name varchar(100),"
+        + " price decimal(10,2), data varbinary(10))");
+    for (int i = 1; i <= 20; i++) {
+      impl.update("insert into offheap values(?, ?, ?, ?, ?, ?, ?)", i, i % 4 == 0 ? null : i * 10, i / 2.0,
+          i % 2 == 0, i % 5 == 0 ? null : "名前" + i + "-0123456789", new BigDecimal(i + ".25"),
+          new byte[] { (byte) i });
+    }
+  }
+
+  @AfterEach
+  public void after() throws SQLException {
+    impl.update("drop table offheap");
+  }
+
+  @Test
+  @DisplayName("最後のセグメントは必要な分だけ拡張する")
+  public void segments() throws IOException {
+    for (Path directory : new Path[] { null, dir }) {
+      try (SegmentedBuffer buf = directory == null ? new SegmentedBuffer(1024 * 1024)
+          : new SegmentedBuffer(1024 * 1024, directory)) {
+        buf.ensure(10);
+        assertEquals(64 * 1024, buf.capacity());
+        buf.putLong(0, 42);
+        buf.ensure(200 * 1024);
+        assertEquals(256 * 1024, buf.capacity());
+        buf.ensure(1024 * 1024 + 1);
+        assertEquals(1024 * 1024 + 64 * 1024, buf.capacity());
+        buf.putLong(1024 * 1024 - 4, 7);
+        assertEquals(42, buf.getLong(0));
+        assertEquals(7, buf.getLong(1024 * 1024 - 4));
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("ヒープ外のメモリに保持して読み出す")
+  public void direct() throws SQLException {
+    try (OffHeapResult result = impl.selectOffHeap("select * from offheap where id > ? order by id", 0)) {
+      verify(result);
+      // 何度でも読み出せる
+      verify(result);
+    }
+  }
+
+  @Test
+  @DisplayName("一時ファイルにメモリマップして保持する")
+  public void mapped() throws SQLException {
+    impl.setOffHeapDirectory(dir);
+    OffHeapResult result = impl.selectOffHeap("select * from offheap order by id");
+    assertEquals(2, dir.toFile().listFiles().length);
+    verify(result);
+    result.close();
+    File[] files = dir.toFile().listFiles();
+    assertEquals(0, files.length);
+    assertThrows(IllegalStateException.class, () -> result.cursor().next());
+  }
+
+  private void verify(OffHeapResult result) {
+    assertEquals(20, result.getRowCount());
+    assertEquals(ColumnKind.LONG, result.getKind(1));
+    assertEquals(ColumnKind.OBJECT, result.getKind(6));
+    Cursor cursor = result.cursor();
+    assertThrows(IllegalStateException.class, () -> cursor.getLong(1));
+    int count = 0;
+    while (cursor.next()) {
+      int i = ++count;
+      assertEquals(i, cursor.getLong(result.findColumn("ID")));
+      assertEquals(i % 4 == 0, cursor.isNull(2));
+      assertEquals(i % 4 == 0 ? 0 : i * 10, cursor.getInt(2));
+      assertEquals(i / 2.0, cursor.getDouble(3));
+      assertEquals(i % 2 == 0, cursor.getBoolean(4));
+      assertEquals(i % 5 == 0 ? null : "名前" + i + "-0123456789", cursor.getString(5));
+      assertEquals(new BigDecimal(i + ".25"), cursor.getObject(6));
+      assertArrayEquals(new byte[] { (byte) i }, cursor.getBytes(7));
+    }
+    assertEquals(20, count);
+    cursor.moveTo(2);
+    assertEquals(3L, cursor.getObject(1));
+    assertThrows(IllegalStateException.class, () -> cursor.getInt(1));
+  }
+}
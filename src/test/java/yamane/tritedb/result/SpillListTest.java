@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.result;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import yamane.tritedb.AbstractTest;
+import yamane.tritedb.Mapper;
+
+@DisplayName("一時ファイルに書き出すList")
+public class SpillListTest extends AbstractTest {
+
+  @TempDir
+  Path dir;
+
+  Mapper<String> mapper = Mapper.create((r) -> r.getInt("id") + ":" + r.getString("name1"));
+
+  @BeforeEach
+  public void before() throws SQLException {
+    init();
+    db.update(sql("tritedb", "create"));
+    List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      rows.add(new Object[] { "name" + i, "test" });
+    }
+    db.updateBatch(sql("tritedb", "insert"), rows);
+  }
+
+  @AfterEach
+  public void after() throws SQLException {
+    db.update(sql("tritedb", "drop"));
+  }
+
+  @Test
+  @DisplayName("件数の上限を超えた行は一時ファイルに書き出す")
+  public void rows() throws SQLException, IOException {
+    List<String> expected = db.selectList(mapper, sql("tritedb", "select_list"));
+    try (SpillList<String> list = db.selectInto(new SpillList<>(RowCodec.serializable(), 10, Long.MAX_VALUE, dir),
+        mapper, sql("tritedb", "select_list"))) {
+      assertEquals(100, list.size());
+      assertEquals(90, list.getSpilledCount());
+      assertEquals(expected, list);
+      assertEquals("51:name50", list.get(50));
+      assertThrows(IndexOutOfBoundsException.class, () -> list.get(100));
+      assertThrows(UnsupportedOperationException.class, () -> list.remove(0));
+      assertEquals(1, count(dir));
+    }
+    // 閉じると一時ファイルは削除される
+    assertEquals(0, count(dir));
+  }
+
+  @Test
+  @DisplayName("推定サイズの上限を超えた行は一時ファイルに書き出す")
+  public void bytes() throws SQLException, IOException {
+    RowCodec<String> codec = new RowCodec<String>() {
+      @Override
+      public void write(String value, DataOutputStream out) throws IOException {
+        out.writeUTF(value);
+      }
+
+      @Override
+      public String read(DataInputStream in) throws IOException {
+        return in.readUTF();
+      }
+    };
+    try (SpillList<String> list = new SpillList<>(codec, Integer.MAX_VALUE, 100, dir)) {
+      db.selectInto(list, mapper, sql("tritedb", "select_list"));
+      assertEquals(100, list.size());
+      // 1行あたり約10バイトなので、10行程度でメモリ上の上限に達する
+      assertTrue(list.getSpilledCount() >= 85, String.valueOf(list.getSpilledCount()));
+      assertEquals("100:name99", list.get(99));
+      int i = 0;
+      for (String value : list) {
+        assertEquals((i + 1) + ":name" + i, value);
+        i++;
+      }
+    }
+    assertEquals(0, count(dir));
+  }
+
+  @Test
+  @DisplayName("上限に達しなければ一時ファイルを作らない")
+  public void memory() throws SQLException, IOException {
+    try (SpillList<String> list = db.selectInto(new SpillList<>(RowCodec.serializable(), 1000, 1L << 20, dir),
+        mapper, sql("tritedb", "select_list"))) {
+      assertEquals(100, list.size());
+      assertEquals(0, list.getSpilledCount());
+      assertEquals(0, count(dir));
+    }
+  }
+
+  @Test
+  @DisplayName("検索に失敗した場合は一時ファイルを削除する")
+  public void failure() throws SQLException, IOException {
+    SpillList<String> list = new SpillList<>(RowCodec.serializable(), 10, Long.MAX_VALUE, dir);
+    Mapper<String> failing = Mapper.create((rs, meta) -> {
+      if (rs.getInt("id") == 50) {
+        throw new SQLException("error");
+      }
+      return mapper.map(rs, meta);
+    });
+    assertThrows(SQLException.class, () -> db.selectInto(list, failing, sql("tritedb", "select_list")));
+    assertEquals(0, count(dir));
+  }
+
+  private long count(Path path) throws IOException {
+    try (Stream<Path> files = Files.list(path)) {
+      return files.count();
+    }
+  }
+}
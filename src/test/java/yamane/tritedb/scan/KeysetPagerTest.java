@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.scan;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import yamane.tritedb.AbstractTest;
+import yamane.tritedb.Mapper;
+import yamane.tritedb.scan.KeysetPager.PageIterator;
+import yamane.tritedb.utils.UncheckedSQLException;
+
+@DisplayName("キーセットページング")
+public class KeysetPagerTest extends AbstractTest {
+
+  Mapper<String> mapper = Mapper.create((r) -> r.getInt("id") + ":" + r.getString("name2"));
+
+  @BeforeEach
+  public void before() throws SQLException {
+    init();
+    db.update(sql("tritedb", "create"));
+    List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      rows.add(new Object[] { "name" + i, "g" + (i % 3) });
+    }
+    db.updateBatch(sql("tritedb", "insert"), rows);
+  }
+
+  @AfterEach
+  public void after() throws SQLException {
+    db.update(sql("tritedb", "drop"));
+  }
+
+  @Test
+  @DisplayName("1列のキーで全行を順に読み出す")
+  public void single() throws SQLException {
+    List<String> expected = db.selectList(mapper, "select * from tritedb where id > ? order by id", 5);
+    for (boolean prefetch : new boolean[] { true, false }) {
+      KeysetPager<String> pager = new KeysetPager<>(db, mapper, "t.id", 7, "select * from tritedb t where id > ?", 5);
+      pager.setPrefetch(prefetch);
+      try (Stream<String> stream = pager.stream()) {
+        assertEquals(expected, stream.collect(Collectors.toList()));
+      }
+    }
+    // 行数がページサイズで割り切れる場合
+    KeysetPager<String> pager = new KeysetPager<>(db, mapper, "id", 10, "select * from tritedb");
+    pager.setLimitClause("fetch first ? rows only");
+    List<String> all = new ArrayList<>();
+    pager.forEach(all::add);
+    assertEquals(50, all.size());
+  }
+
+  @Test
+  @DisplayName("複数列のキーの組み合わせ順に読み出す")
+  public void composite() throws SQLException {
+    List<String> expected = db.selectList(mapper, "select * from tritedb order by name2, id");
+    KeysetPager<String> pager = new KeysetPager<>(db, mapper, new String[] { "name2", "id" }, 4,
+        "select * from tritedb");
+    try (Stream<String> stream = pager.stream()) {
+      assertEquals(expected, stream.collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  @DisplayName("途中で終了したりエラーになった場合")
+  public void close() throws SQLException {
+    KeysetPager<String> pager = new KeysetPager<>(db, mapper, "id", 5, "select * from tritedb");
+    PageIterator it = pager.iterator();
+    assertEquals("1:g0", it.next());
+    it.close();
+    assertFalse(it.hasNext());
+
+    KeysetPager<String> error = new KeysetPager<>(db, mapper, "nothing", 5, "select * from tritedb");
+    UncheckedSQLException e = assertThrows(UncheckedSQLException.class, () -> error.iterator().hasNext());
+    assertTrue(e.getMessage().toUpperCase().contains("NOTHING"));
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.scan;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import yamane.tritedb.AbstractTest;
+import yamane.tritedb.Mapper;
+
+@DisplayName("キーの範囲で分割した並列検索")
+public class ParallelScanTest extends AbstractTest {
+
+  Mapper<Integer> mapper = Mapper.create((r) -> r.getInt("id"));
+
+  @BeforeEach
+  public void before() throws SQLException {
+    init();
+    db.update(sql("tritedb", "create"));
+    List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      rows.add(new Object[] { "name" + i, "test" });
+    }
+    db.updateBatch(sql("tritedb", "insert"), rows);
+  }
+
+  @AfterEach
+  public void after() throws SQLException {
+    db.update(sql("tritedb", "drop"));
+  }
+
+  @Test
+  @DisplayName("MIN/MAXから範囲を求めて並列に検索する")
+  public void scan() throws SQLException {
+    ParallelScan<Integer> scan = new ParallelScan<>(db, mapper, "id", "select * from tritedb where name2 = ?", "test");
+    scan.setPartitions(4);
+    assertEquals("[[1, 13), [13, 25), [25, 37), [37, 50]]", scan.ranges().toString());
+    List<Integer> expected = db.selectList(mapper, "select * from tritedb order by id");
+    // キーの順
+    assertEquals(expected, scan.list(true));
+    // 順不同
+    assertEquals(expected, scan.list(false).stream().sorted().collect(Collectors.toList()));
+  }
+
+  @Test
+  @DisplayName("範囲を指定して検索する")
+  public void range() throws SQLException {
+    ParallelScan<Integer> scan = new ParallelScan<>(db, mapper, "t.id", "select * from tritedb t");
+    scan.setPartitions(20);
+    scan.setRange(10L, 14L);
+    // 分割数より範囲が狭い場合は、重複しない範囲だけにする
+    assertEquals(4, scan.ranges().size());
+    assertEquals(Arrays.asList(10, 11, 12, 13, 14), scan.list(true));
+    // 検索対象がない場合
+    ParallelScan<Integer> empty = new ParallelScan<>(db, mapper, "id", "select * from tritedb where id < 0");
+    assertTrue(empty.ranges().isEmpty());
+    assertTrue(empty.list(false).isEmpty());
+  }
+
+  @Test
+  @DisplayName("キーの型ごとの分割")
+  public void split() throws SQLException {
+    assertEquals(Arrays.asList(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 16), LocalDate.of(2024, 1, 31)),
+        ParallelScan.split(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), 2));
+    assertEquals(Arrays.asList(0.0, 0.5, 1.0), ParallelScan.split(0.0, 1.0, 2));
+    assertEquals(Arrays.asList(Long.MIN_VALUE, -1L, Long.MAX_VALUE),
+        ParallelScan.split(Long.MIN_VALUE, Long.MAX_VALUE, 2));
+    assertThrows(SQLException.class, () -> ParallelScan.split("a", "z", 2));
+
+    ParallelScan<Integer> scan = new ParallelScan<>(db, mapper, "name1", "select * from tritedb");
+    assertThrows(SQLException.class, () -> scan.list(false));
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.sql;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import yamane.tritedb.AbstractTest;
+import yamane.tritedb.Mapper;
+import yamane.tritedb.mapper.reflect.Column;
+
+@DisplayName("名前付きパラメータ")
+public class NamedSqlTest extends AbstractTest {
+
+  public static class Bean {
+    private String firstName;
+    private String name2;
+
+    public String getFirstName() {
+      return firstName;
+    }
+
+    public String getName2() {
+      return name2;
+    }
+  }
+
+  public static class Annotated {
+    @Column("id")
+    public Integer key;
+    @Column("n1")
+    public String value;
+  }
+
+  @Test
+  @DisplayName("SQLの解析")
+  public void compile() throws SQLException {
+    String sql = "select ':no', a::text from t /* :no */ where a = :id and b in (:id, :name) -- :no\n and c = :c_1";
+    NamedSql named = NamedSql.compile(sql);
+    assertEquals("select ':no', a::text from t /* :no */ where a = ? and b in (?, ?) -- :no\n and c = ?",
+        named.getSql());
+    assertEquals(Arrays.asList("id", "name", "c_1"), named.getNames());
+    assertSame(named, NamedSql.compile(sql));
+    Map<String, Object> map = new HashMap<>();
+    map.put("id", 1);
+    map.put("name", "x");
+    map.put("c_1", null);
+    assertArrayEquals(new Object[] { 1, 1, "x", null }, named.params(ParameterSource.of(map)));
+    // 値がない場合はエラー
+    map.remove("c_1");
+    assertThrows(SQLException.class, () -> named.bind(map));
+    // ? との併用はできない
+    assertThrows(SQLException.class, () -> NamedSql.compile("select * from t where a = :a and b = ?"));
+  }
+
+  @Test
+  @DisplayName("Map、JavaBean、@Column から値を取得して実行する")
+  public void execute() throws SQLException {
+    init();
+    db.update(sql("tritedb", "create"));
+    Map<String, Object> map = new HashMap<>();
+    map.put("n1", "h1");
+    map.put("n2", "test1");
+    NamedSql insert = NamedSql.compile("insert into tritedb(name1, name2) values(:n1, :n2)");
+    assertEquals(1, db.update(insert.bind(map)));
+
+    Bean bean = new Bean();
+    bean.firstName = "h2";
+    bean.name2 = "test2";
+    assertEquals(1, db.update(NamedSql.compile("update tritedb set name1 = :first_name, name2 = :name2").bind(bean)));
+
+    Annotated annotated = new Annotated();
+    annotated.key = 1;
+    annotated.value = "h2";
+    Mapper<String> mapper = Mapper.create((r) -> r.getString("name2"));
+    assertEquals("test2", db.select(mapper,
+        NamedSql.compile("select * from tritedb where id = :id and name1 = :n1").bind(annotated)));
+
+    db.update(sql("tritedb", "drop"));
+  }
+}
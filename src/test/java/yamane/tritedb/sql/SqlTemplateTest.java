@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Yamamoto Yamane
+ * Released under the MIT license
+ * https://opensource.org/license/mit
+ */
+
+package yamane.tritedb.sql;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import yamane.tritedb.AbstractTest;
+import yamane.tritedb.Mapper;
+import yamane.tritedb.TriteDbBase.SqlSet;
+
+@DisplayName("動的なSQLのテンプレート")
+public class SqlTemplateTest extends AbstractTest {
+
+  @Test
+  @DisplayName("条件とコレクションの展開")
+  public void render() throws SQLException {
+    String template = "select * from t where a = :a /*%if b*/and b = :b /*%else*/and b is null /*%end*/"
+        + "/*%if !c*/and c = 0 /*%end*/and d in (:d) -- :no";
+    SqlTemplate compiled = SqlTemplate.compile(template);
+    assertSame(compiled, SqlTemplate.compile(template));
+
+    Map<String, Object> map = new HashMap<>();
+    map.put("a", 1);
+    map.put("b", "x");
+    map.put("d", Arrays.asList(1, 2, 3));
+    SqlSet set = compiled.render(map);
+    assertEquals("select * from t where a = ? and b = ? and c = 0 and d in (?, ?, ?, ?) -- :no", set.getSql());
+    assertArrayEquals(new Object[] { 1, "x", 1, 2, 3, 3 }, set.getParams());
+
+    // 要素数が変わっても2のべき乗までは同じSQLになる
+    map.put("b", "");
+    map.put("c", true);
+    map.put("d", new int[] { 5, 6, 7, 8 });
+    set = compiled.render(map);
+    assertEquals("select * from t where a = ? and b is null and d in (?, ?, ?, ?) -- :no", set.getSql());
+    assertArrayEquals(new Object[] { 1, 5, 6, 7, 8 }, set.getParams());
+
+    map.put("d", Collections.emptyList());
+    set = compiled.render(map);
+    assertEquals("select * from t where a = ? and b is null and d in (?) -- :no", set.getSql());
+    assertArrayEquals(new Object[] { 1, null }, set.getParams());
+
+    // 512を超える場合は切り上げない
+    map.put("d", new int[300]);
+    assertEquals(513, compiled.render(map).getParams().length);
+    map.put("d", new int[600]);
+    assertEquals(601, compiled.render(map).getParams().length);
+
+    // 条件の値はなくてもよいが、パラメータの値は必要
+    map.remove("b");
+    compiled.render(map);
+    map.remove("a");
+    assertThrows(SQLException.class, () -> compiled.render(map));
+  }
+
+  @Test
+  @DisplayName("構文エラー")
+  public void syntax() {
+    assertThrows(SQLException.class, () -> SqlTemplate.compile("select 1 /*%if a*/"));
+    assertThrows(SQLException.class, () -> SqlTemplate.compile("select 1 /*%end*/"));
+    assertThrows(SQLException.class, () -> SqlTemplate.compile("select 1 /*%else*/"));
+    assertThrows(SQLException.class, () -> SqlTemplate.compile("select 1 /*%if a*/ /*%else*/ /*%else*/ /*%end*/"));
+    assertThrows(SQLException.class, () -> SqlTemplate.compile("select 1 /*%for a*/"));
+    assertThrows(SQLException.class, () -> SqlTemplate.compile("select 1 /*%if a"));
+    assertThrows(SQLException.class, () -> SqlTemplate.compile("select 1 where a = ?"));
+  }
+
+  @Test
+  @DisplayName("ファイルから読み込んで実行する")
+  public void execute() throws SQLException {
+    init();
+    db.update(sql("tritedb", "create"));
+    for (int i = 1; i <= 5; i++) {
+      db.update(sql("tritedb", "insert"), "h" + i, "test" + i);
+    }
+    SqlTemplate template = SqlTemplate.load("tritedb/select_filter.sql");
+    Mapper<String> mapper = Mapper.create((r) -> r.getString("name2"));
+
+    Map<String, Object> map = new HashMap<>();
+    assertEquals(5, db.selectList(mapper, template.render(map)).size());
+
+    map.put("ids", Arrays.asList(2, 4, 5));
+    List<String> list = db.selectList(mapper, template.render(map));
+    assertEquals(Arrays.asList("test2", "test4", "test5"), list);
+
+    map.put("name1", "h4");
+    assertEquals(Arrays.asList("test4"), db.selectList(mapper, template.render(map)));
+
+    db.update(sql("tritedb", "drop"));
+  }
+}
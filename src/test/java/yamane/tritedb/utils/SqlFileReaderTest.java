@@ -9,12 +9,23 @@ package yamane.tritedb.utils;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import yamane.tritedb.utils.SqlFileReader.CacheMode;
 
 @DisplayName("テキストファイルの読み出し")
 public class SqlFileReaderTest {
@@ -28,6 +39,11 @@ public class SqlFileReaderTest {
     SqlFileReader.init(FileSystems.getDefault().getPath("src/test/resources/sql"));
     reader = SqlFileReader.instance();
   }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    SqlFileReader.init(FileSystems.getDefault().getPath("src/test/resources/sql"), CacheMode.NONE);
+  }
   
   @Test
   public void test()throws Exception {
@@ -43,4 +59,97 @@ public class SqlFileReaderTest {
       fail("例外が出るのが正しい");
     }
   }
+
+  @Test
+  @DisplayName("FIXEDは一度読み込んだ内容を返し続ける")
+  public void fixed(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("a.sql");
+    Files.write(file, "select 1".getBytes(StandardCharsets.UTF_8));
+    SqlFileReader.init(dir, CacheMode.FIXED);
+    assertEquals("select 1", reader.read("a.sql"));
+
+    Files.write(file, "select 2".getBytes(StandardCharsets.UTF_8));
+    assertEquals("select 1", reader.read("a.sql"));
+    assertEquals("select 1", reader.read("./a.sql"));
+
+    reader.clearCache();
+    assertEquals("select 2", reader.read("a.sql"));
+  }
+
+  @Test
+  @DisplayName("WATCHはファイルの変更を検知して読み込み直す")
+  public void watch(@TempDir Path dir) throws Exception {
+    Files.createDirectories(dir.resolve("sub"));
+    Path file = dir.resolve("sub/a.sql");
+    Files.write(file, "select 1".getBytes(StandardCharsets.UTF_8));
+    SqlFileReader.init(dir, CacheMode.WATCH);
+    assertEquals("select 1", reader.read("sub/a.sql"));
+
+    Files.write(file, "select 2".getBytes(StandardCharsets.UTF_8));
+    long deadline = System.currentTimeMillis() + 30000;
+    while (!"select 2".equals(reader.read("sub/a.sql")) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertEquals("select 2", reader.read("sub/a.sql"));
+  }
+
+  @Test
+  @DisplayName("ディレクトリ配下のSQLを事前に読み込む")
+  public void preloadDirectory(@TempDir Path dir) throws Exception {
+    Files.createDirectories(dir.resolve("sub"));
+    Files.write(dir.resolve("a.sql"), "select 1".getBytes(StandardCharsets.UTF_8));
+    Files.write(dir.resolve("sub/b.sql"), "select 2".getBytes(StandardCharsets.UTF_8));
+    Files.write(dir.resolve("c.txt"), "text".getBytes(StandardCharsets.UTF_8));
+    assertEquals(2, SqlFileReader.preload(dir));
+    SqlFileReader.require("a.sql", "sub/b.sql");
+
+    Files.delete(dir.resolve("sub/b.sql"));
+    assertEquals("select 2", reader.read("sub/b.sql"));
+    assertEquals("text", reader.read("c.txt"));
+
+    SQLException e = assertThrows(SQLException.class, () -> SqlFileReader.require("a.sql", "d.sql"));
+    assertTrue(e.getMessage().contains("d.sql"));
+    assertFalse(e.getMessage().contains("a.sql"));
+  }
+
+  @Test
+  @DisplayName("WATCHは事前に読み込んだファイルの変更も検知する")
+  public void preloadWatch(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("a.sql");
+    Files.write(file, "select 1".getBytes(StandardCharsets.UTF_8));
+    SqlFileReader.init(dir, CacheMode.WATCH);
+    assertEquals(1, SqlFileReader.preload(dir));
+    assertEquals("select 1", reader.read("a.sql"));
+
+    Files.write(file, "select 2".getBytes(StandardCharsets.UTF_8));
+    long deadline = System.currentTimeMillis() + 30000;
+    while (!"select 2".equals(reader.read("a.sql")) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertEquals("select 2", reader.read("a.sql"));
+    assertFalse(reader.getPreloadedNames().contains("a.sql"));
+  }
+
+  @Test
+  @DisplayName("クラスパスとjarファイル内のSQLを事前に読み込む")
+  public void preloadClasspath(@TempDir Path dir) throws Exception {
+    assertTrue(SqlFileReader.preload(getClass().getClassLoader(), "sql") >= 2);
+    SqlFileReader.require("tritedb/insert.sql", "reader/select.sql");
+
+    Path jar = dir.resolve("sql.jar");
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new JarEntry("queries/"));
+      out.putNextEntry(new JarEntry("queries/user/find.sql"));
+      out.write("select * from user".getBytes(StandardCharsets.UTF_8));
+      out.putNextEntry(new JarEntry("other/skip.sql"));
+      out.write("select 0".getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+    try (URLClassLoader loader = new URLClassLoader(new URL[] { jar.toUri().toURL() }, null)) {
+      assertEquals(1, SqlFileReader.preload(loader, "/queries/"));
+    }
+    SqlFileReader.require("user/find.sql");
+    assertEquals("select * from user", reader.read("user/find.sql"));
+    assertFalse(reader.getPreloadedNames().contains("other/skip.sql"));
+  }
 }
@@ -0,0 +1,4 @@
+select * from tritedb where 1 = 1
+/*%if ids*/ and id in (:ids) /*%end*/
+/*%if name1*/ and name1 = :name1 /*%end*/
+order by id